@@ -0,0 +1,165 @@
+package net.frog_parrot.checkers;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * This class checks that generating moves creates no
+ * objects, so that the game logic and the search never
+ * make work for the garbage collector.  It runs a fixed
+ * generation loop over the Perft test positions (once to
+ * load and warm up everything it uses) and counts the 
+ * bytes that the thread allocates during the loop.  (The
+ * free memory isn't a reliable count:  a desktop VM hands
+ * each thread a buffer to allocate from, so small objects
+ * often don't change it, and a garbage collection in the
+ * middle hides them.)  The count comes from the thread
+ * bean of HotSpot and the VMs based on it 
+ * (com.sun.management.ThreadMXBean).
+ *
+ * Run it on a desktop machine with the main method, which
+ * prints the result and exits with status 1 if anything
+ * was allocated or if the VM can't count the allocations.
+ */
+public class AllocationCheck {
+
+  //-------------------------------------------------------
+  //   static fields
+
+  /**
+   * The number of times the loop goes through the
+   * test positions.
+   */
+  public static final int ROUNDS = 2000;
+
+  /**
+   * The depth to count each position to with Perft (so the
+   * engine's generation is run over every position that
+   * can be reached in that many turns).
+   */
+  public static final int DEPTH = 3;
+
+  /**
+   * The thread bean, or null if the VM can't count the 
+   * bytes a thread allocates.
+   */
+  private static com.sun.management.ThreadMXBean THREADS;
+
+  //-------------------------------------------------------
+  //   instance fields
+
+  /**
+   * The game whose selection moves are generated.
+   */
+  private CheckersGame myGame = new CheckersGame();
+
+  /**
+   * The counter that runs the engine's move generation.
+   */
+  private Perft myPerft = new Perft();
+
+  /**
+   * The list to generate the game's moves into.
+   */
+  private MoveList myMoves = new MoveList();
+
+  /**
+   * The test positions, parsed in advance.
+   */
+  private int[][] myPositions = new int[Perft.POSITIONS.length][];
+
+  /**
+   * The sum of the counts (so the loop's work is used).
+   */
+  private long myTotal;
+
+  //-------------------------------------------------------
+  //   checking
+
+  /**
+   * Parse the test positions.
+   */
+  AllocationCheck() {
+    for(int i = 0; i < myPositions.length; i++) {
+      myPositions[i] = Perft.parsePosition(Perft.POSITIONS[i]);
+    }
+  }
+
+  /**
+   * Generates the moves of every test position the given
+   * number of times:  both sides' moves with the game,
+   * and all of the turns to DEPTH with the engine.
+   */
+  void run(int rounds) {
+    for(int round = 0; round < rounds; round++) {
+      for(int i = 0; i < myPositions.length; i++) {
+        int[] pieces = myPositions[i];
+        myGame.setPosition(pieces[0], pieces[1], pieces[2], pieces[3]);
+        myGame.getAllMoves(true, false, myMoves);
+        myTotal += myMoves.size();
+        myGame.getAllMoves(false, false, myMoves);
+        myTotal += myMoves.size();
+        myGame.getAllMoves(true, true, myMoves);
+        myTotal += myMoves.size();
+        myTotal += myPerft.count(pieces[0], pieces[1], pieces[2],
+                                 pieces[3], true, DEPTH);
+      }
+    }
+  }
+
+  /**
+   * @return the number of bytes the current thread has
+   *         allocated so far.
+   */
+  static long getAllocatedBytes() {
+    return(THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()));
+  }
+
+  //-------------------------------------------------------
+  //   main
+
+  /**
+   * Runs the generation loop and prints the number of 
+   * bytes it allocated.
+   */
+  public static void main(String[] args) {
+    Object bean = ManagementFactory.getThreadMXBean();
+    if(bean instanceof com.sun.management.ThreadMXBean) {
+      THREADS = (com.sun.management.ThreadMXBean)bean;
+    }
+    if((THREADS == null) || (! THREADS.isThreadAllocatedMemorySupported())) {
+      System.out.println("this VM can't count the bytes a thread allocates");
+      System.exit(1);
+    }
+    THREADS.setThreadAllocatedMemoryEnabled(true);
+    AllocationCheck check = new AllocationCheck();
+    // the first run loads the classes, allocates the move
+    // lists, and gives a desktop VM the time to compile
+    // the loop (which may allocate a little the first time):
+    check.run(ROUNDS);
+    check.myTotal = 0;
+    // reading the count allocates the first time, and may
+    // allocate a little every time, so it's read once 
+    // first, and the cost of one reading is taken off:
+    // (and the clock is read outside, since its first
+    // reading allocates too):
+    getAllocatedBytes();
+    long before = getAllocatedBytes();
+    long overhead = getAllocatedBytes() - before;
+    long start = System.currentTimeMillis();
+    before = getAllocatedBytes();
+    check.run(ROUNDS);
+    long allocated = getAllocatedBytes() - before - overhead;
+    long time = System.currentTimeMillis() - start;
+    String result = "ok";
+    if(allocated > 0) {
+      result = "WRONG";
+    }
+    System.out.println("allocated: " + allocated + " bytes in " + ROUNDS
+        + " rounds (" + check.myTotal + " moves, " + time + " ms): "
+        + result);
+    if(allocated > 0) {
+      System.exit(1);
+    }
+  }
+
+}
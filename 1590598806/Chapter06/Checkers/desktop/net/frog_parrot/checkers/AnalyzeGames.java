@@ -0,0 +1,39 @@
+package net.frog_parrot.checkers;
+
+import java.io.*;
+
+/**
+ * This class runs GameAnalyzer on a desktop machine:
+ * AnalyzeGames [threads] [depth] [margin] [games] > results
+ * The games are read from the named file, or from
+ * System.in if no file is given.  This class is kept out
+ * of the MIDlet's source tree because CLDC has neither
+ * System.in nor files, so the analyzer itself just takes
+ * the stream it's given.
+ */
+public class AnalyzeGames {
+
+  /**
+   * Analyze the games and print the results.
+   */
+  public static void main(String[] args) throws IOException {
+    int[] values = { GameAnalyzer.DEFAULT_THREAD_COUNT,
+                     GameAnalyzer.DEFAULT_DEPTH,
+                     GameAnalyzer.DEFAULT_MARGIN };
+    for(int i = 0; (i < args.length) && (i < values.length); i++) {
+      values[i] = Integer.parseInt(args[i]);
+    }
+    InputStream in = System.in;
+    if(args.length > values.length) {
+      in = new FileInputStream(args[values.length]);
+    }
+    GameAnalyzer analyzer = new GameAnalyzer(
+        new DataInputStream(new BufferedInputStream(in)), System.out,
+        values[1], values[2]);
+    long time = analyzer.analyze(values[0]);
+    System.out.flush();
+    analyzer.printTotals(System.err, time);
+    in.close();
+  }
+
+}
@@ -0,0 +1,22 @@
+package net.frog_parrot.checkers;
+
+import java.io.*;
+
+/**
+ * This class builds the endgame tables on a desktop 
+ * machine:  BuildEndgames [pieces] > res/endgame.dat
+ * The argument is the number of pieces (of both sides
+ * together) to cover.  The file goes in the jar as the
+ * resource that ComputerPlayer reads the tables from (see
+ * ComputerPlayer.ENDGAME_RESOURCE).
+ */
+public class BuildEndgames {
+
+  /**
+   * Build the tables and write them to standard out.
+   */
+  public static void main(String[] args) throws IOException {
+    EndgameDatabase.generate(Integer.parseInt(args[0])).write(System.out);
+  }
+
+}
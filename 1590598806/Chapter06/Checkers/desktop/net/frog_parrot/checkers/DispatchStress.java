@@ -0,0 +1,585 @@
+package net.frog_parrot.checkers;
+
+import java.util.Random;
+
+import net.frog_parrot.net.LoopbackNetwork;
+import net.frog_parrot.net.SMSManager;
+
+/**
+ * This class stress-tests the event queue of MoveManager
+ * by playing random games between pairs of real
+ * MoveManagers and SMSManagers over a LoopbackNetwork,
+ * with the timing shaken up at random:  the network delays
+ * and reorders the messages, each player pauses between
+ * the hops of its turn, and showing the board takes a
+ * random time on the MoveManager's thread (as it can on a
+ * handset), so the local hops, the remote hops, and the
+ * notices that a message was sent reach the queue in a
+ * different order every time.  It also plays random games
+ * against the ComputerPlayer, whose hops reach the queue
+ * while the local player's are still waiting in it.
+ *
+ * Every hop that each player makes is written down, and
+ * once the game is over, the turns are played again one
+ * after the other on a plain set of bitboards (see
+ * replay).  Both players' boards must match the result.
+ * (The computer's hops are taken from the MoveManager's
+ * GameJournal, since the computer has no board of its
+ * own to compare.)
+ *
+ * Run it on a desktop machine with the main method:
+ * DispatchStress [network games] [computer games] [max pause]
+ * (pause in milliseconds).  It prints the result and
+ * exits with status 1 if any game ended with a wrong
+ * board or didn't end at all.
+ */
+public class DispatchStress implements GameScreen, Runnable {
+
+  //--------------------------------------------------------
+  //  static fields
+
+  /**
+   * The most turns a player takes before ending the game.
+   */
+  public static final int MAX_TURNS = 60;
+
+  /**
+   * The most hops in one turn (one for each piece that
+   * can be jumped).
+   */
+  public static final int MAX_HOPS = 12;
+
+  /**
+   * The most times the right key is pressed to choose
+   * where the selected piece goes.
+   */
+  public static final int MAX_PRESSES = 4;
+
+  /**
+   * The percentage of the messages that the network
+   * holds back (so they arrive out of order).
+   */
+  public static final int REORDER_PERCENT = 20;
+
+  /**
+   * How long a game may take (in milliseconds) before
+   * it's counted as stalled.
+   */
+  public static final long TIMEOUT = 60000;
+
+  /**
+   * How long the computer may think about each move
+   * (in milliseconds).
+   */
+  public static final long COMPUTER_TIME = 20;
+
+  //--------------------------------------------------------
+  //  instance fields
+
+  /**
+   * The game logic, which this player presses the keys of.
+   */
+  private CheckersGame myGame = new CheckersGame();
+
+  /**
+   * The class that takes turns with the opponent.
+   */
+  private MoveManager myManager;
+
+  /**
+   * The longest pause, in milliseconds.
+   */
+  private int myMaxPause;
+
+  /**
+   * The hops played, in order, each one stored as the
+   * source square plus 32 times the destination square.
+   */
+  private int[] myHops = new int[(MAX_TURNS + 1)*MAX_HOPS];
+
+  /**
+   * The number of hops played.
+   */
+  private int myHopCount;
+
+  /**
+   * The index in myHops where each turn starts.
+   */
+  private int[] myTurnStarts = new int[MAX_TURNS + 1];
+
+  /**
+   * The number of turns taken.
+   */
+  private int myTurnCount;
+
+  /**
+   * Whether the board has changed since this player last
+   * looked at it.
+   */
+  private boolean myIsChanged;
+
+  /**
+   * Whether this player's game is over.
+   */
+  private boolean myIsFinished;
+
+  /**
+   * The source of the random moves and pauses.
+   */
+  private Random myRandom = new Random();
+
+  //--------------------------------------------------------
+  //  lifecycle
+
+  /**
+   * Initialize the main data, and start listening for
+   * messages.
+   */
+  DispatchStress(LoopbackNetwork network, String phoneNum, int maxPause) {
+    myMaxPause = maxPause;
+    // the MoveManager calls this player once the handle
+    // is set (see repaintBoard):
+    synchronized(this) {
+      myManager = new MoveManager(this, myGame,
+          new SMSManager(network.getTransport(phoneNum)));
+    }
+    new Thread(this).start();
+  }
+
+  /**
+   * @return whether this player's game is over.
+   */
+  synchronized boolean isFinished() {
+    return(myIsFinished);
+  }
+
+  //--------------------------------------------------------
+  //  GameScreen methods
+
+  /**
+   * Take a random time to show the wait screen (or take
+   * it down), on the MoveManager's thread.
+   */
+  public void setWaitScreen(boolean wait) {
+    pause();
+  }
+
+  /**
+   * Have this player's thread look at the board, then
+   * take a random time to finish drawing it, so that the
+   * player's keystrokes pile up behind it.
+   */
+  public void repaintBoard() {
+    synchronized(this) {
+      // (this is also called while the MoveManager is
+      // created, before there's any game)
+      if(myManager == null) {
+        return;
+      }
+      myIsChanged = true;
+      notify();
+    }
+    pause();
+  }
+
+  public String getTauntMessage() {
+    return(null);
+  }
+
+  public void setWinTaunt() {
+    // no taunts are sent.
+  }
+
+  public void displayTauntMessage(String taunt) {
+    // the opponent's taunts are ignored.
+  }
+
+  public void errorMsg(String msg) {
+    System.err.println("error: " + msg);
+    finish();
+  }
+
+  public void quit() {
+    finish();
+  }
+
+  //--------------------------------------------------------
+  //  moving
+
+  /**
+   * Look at the board each time it changes:  play a turn
+   * if it's this player's turn, until the game is over.
+   */
+  public void run() {
+    while(true) {
+      synchronized(this) {
+        while((! myIsChanged) && (! myIsFinished)) {
+          try {
+            wait();
+          } catch(InterruptedException e) {
+          }
+        }
+        myIsChanged = false;
+        if(myIsFinished) {
+          return;
+        }
+      }
+      int state = myManager.getState();
+      if(state == MoveManager.GAME_OVER) {
+        finish();
+      } else if(state == MoveManager.LOCAL_TURN) {
+        playTurn();
+      }
+    }
+  }
+
+  /**
+   * Play one turn of random moves, including any further
+   * jumps, with the keys that the user would press (and
+   * a random pause before each hop).  Each hop is
+   * written down.
+   */
+  private void playTurn() {
+    if(myTurnCount == MAX_TURNS) {
+      myManager.endGame();
+      return;
+    }
+    myTurnStarts[myTurnCount] = myHopCount;
+    myTurnCount++;
+    // start over from the piece that the ponderer may
+    // have selected:
+    myGame.deselect();
+    int movers = CheckersGame.countSquares(myGame.getLocalMovers());
+    // if no piece can move, pressing a key ends the game
+    // (as the local player's loss):
+    int presses = 1;
+    if(movers > 0) {
+      presses += randomInt(movers);
+    }
+    for(int i = 0; i < presses; i++) {
+      myGame.rightPressed();
+    }
+    if(movers == 0) {
+      return;
+    }
+    myGame.upPressed();
+    do {
+      pause();
+      presses = randomInt(MAX_PRESSES);
+      for(int i = 0; i < presses; i++) {
+        myGame.rightPressed();
+      }
+      // the hop is read off the selection before it's 
+      // played, since the last hop ends the turn, and then
+      // the opponent may change the board at any time:
+      int local = myGame.getLocalMen() | myGame.getLocalKings();
+      int source = -1;
+      int destination = -1;
+      for(int i = 0; i < CheckersGame.SQUARE_COUNT; i++) {
+        if(myGame.isSelected((byte)(i & 3), (byte)(i >> 2))) {
+          if((local & (1 << i)) != 0) {
+            source = i;
+          } else {
+            destination = i;
+          }
+        }
+      }
+      myGame.upPressed();
+      if((source != -1) && (destination != -1)) {
+        myHops[myHopCount] = source 
+            + CheckersGame.SQUARE_COUNT*destination;
+        myHopCount++;
+      }
+    } while(myGame.getJumpingSquare() != -1);
+  }
+
+  /**
+   * Sleep for a random time up to the longest pause.
+   */
+  private void pause() {
+    try {
+      Thread.sleep(randomInt(myMaxPause + 1));
+    } catch(InterruptedException e) {
+    }
+  }
+
+  /**
+   * @return a random number from 0 to limit - 1.
+   */
+  private synchronized int randomInt(int limit) {
+    return((myRandom.nextInt() >>> 1) % limit);
+  }
+
+  /**
+   * Report that the game is over.
+   */
+  private synchronized void finish() {
+    myIsFinished = true;
+    notify();
+  }
+
+  //--------------------------------------------------------
+  //  checking
+
+  /**
+   * Plays the two players' turns again, one after the
+   * other, on the first player's bitboards, starting from
+   * the first player's board at the start of the game.
+   * @param first the player who moved first.
+   * @param position the board to play on:  the local men,
+   *        local kings, remote men and remote kings.
+   */
+  static void replay(DispatchStress first, DispatchStress second,
+                     int[] position) {
+    for(int turn = 0; turn < first.myTurnCount; turn++) {
+      first.replayTurn(turn, true, position);
+      if(turn < second.myTurnCount) {
+        second.replayTurn(turn, false, position);
+      }
+    }
+  }
+
+  /**
+   * Plays one of this player's turns on the first
+   * player's bitboards.
+   * @param local whether this player is the first player
+   *        (otherwise its board is upside down).
+   */
+  private void replayTurn(int turn, boolean local, int[] position) {
+    int end = myHopCount;
+    if(turn + 1 < myTurnCount) {
+      end = myTurnStarts[turn + 1];
+    }
+    for(int i = myTurnStarts[turn]; i < end; i++) {
+      int source = myHops[i] % CheckersGame.SQUARE_COUNT;
+      int destination = myHops[i]/CheckersGame.SQUARE_COUNT;
+      if(! local) {
+        source = CheckersGame.SQUARE_COUNT - 1 - source;
+        destination = CheckersGame.SQUARE_COUNT - 1 - destination;
+      }
+      playHop(position, local, source, destination);
+    }
+  }
+
+  /**
+   * Plays this player's turns and the computer's replies
+   * (the runs of remote hops in the journal) one after
+   * the other on this player's bitboards.
+   */
+  private void replayComputerGame(int[] position) {
+    GameJournal journal = myManager.getJournal();
+    int hop = 0;
+    for(int turn = 0; turn < myTurnCount; turn++) {
+      replayTurn(turn, true, position);
+      while((hop < journal.getHopCount())
+            && (! GameJournal.isRemote(journal.getHop(hop)))) {
+        hop++;
+      }
+      while((hop < journal.getHopCount())
+            && GameJournal.isRemote(journal.getHop(hop))) {
+        playHop(position, false, 
+                GameJournal.getSource(journal.getHop(hop)),
+                GameJournal.getDestination(journal.getHop(hop)));
+        hop++;
+      }
+    }
+  }
+
+  /**
+   * Plays one hop on the first player's bitboards:  the
+   * piece moves (and is crowned if it's a man that reaches
+   * the far side), and the piece it jumps over (if any)
+   * is removed.
+   * @param local whether it's the first player's piece.
+   */
+  private static void playHop(int[] position, boolean local, 
+                              int source, int destination) {
+    int men = 0;
+    int opponents = 2;
+    int farRow = CheckersGame.TOP_ROW;
+    if(! local) {
+      men = 2;
+      opponents = 0;
+      farRow = CheckersGame.BOTTOM_ROW;
+    }
+    int jumped = CheckersGame.getJumpedSquare(source, destination);
+    if(jumped != -1) {
+      position[opponents] &= ~(1 << jumped);
+      position[opponents + 1] &= ~(1 << jumped);
+    }
+    int kind = men;
+    if((position[men + 1] & (1 << source)) != 0) {
+      kind = men + 1;
+    }
+    position[kind] ^= (1 << source) | (1 << destination);
+    if((kind == men) && ((farRow & (1 << destination)) != 0)) {
+      position[men] ^= 1 << destination;
+      position[men + 1] |= 1 << destination;
+    }
+  }
+
+  /**
+   * @return whether this player's board is the given one
+   *         (turned upside down if it's the second player).
+   */
+  boolean hasPosition(int[] position, boolean first) {
+    if(first) {
+      return((myGame.getLocalMen() == position[0])
+             && (myGame.getLocalKings() == position[1])
+             && (myGame.getRemoteMen() == position[2])
+             && (myGame.getRemoteKings() == position[3]));
+    }
+    return((myGame.getLocalMen() == flip(position[2]))
+           && (myGame.getLocalKings() == flip(position[3]))
+           && (myGame.getRemoteMen() == flip(position[0]))
+           && (myGame.getRemoteKings() == flip(position[1])));
+  }
+
+  /**
+   * @return the player's board and the replayed one, in hex.
+   */
+  String describe(int[] position) {
+    return("board " + Integer.toHexString(myGame.getLocalMen()) + " "
+           + Integer.toHexString(myGame.getLocalKings()) + " "
+           + Integer.toHexString(myGame.getRemoteMen()) + " "
+           + Integer.toHexString(myGame.getRemoteKings())
+           + ", replayed " + Integer.toHexString(position[0]) + " "
+           + Integer.toHexString(position[1]) + " "
+           + Integer.toHexString(position[2]) + " "
+           + Integer.toHexString(position[3]));
+  }
+
+  /**
+   * @return the bitboard seen from the other side of the
+   *         board.
+   */
+  private static int flip(int bitboard) {
+    int flipped = 0;
+    for(int i = 0; i < CheckersGame.SQUARE_COUNT; i++) {
+      if((bitboard & (1 << i)) != 0) {
+        flipped |= 1 << (CheckersGame.SQUARE_COUNT - 1 - i);
+      }
+    }
+    return(flipped);
+  }
+
+  //--------------------------------------------------------
+  //  main
+
+  /**
+   * Play one game over the network and check both boards.
+   * @return "ok", or what went wrong.
+   */
+  static String playGame(int game, int maxPause)
+      throws InterruptedException {
+    LoopbackNetwork network = new LoopbackNetwork(0, maxPause, 0,
+                                                  REORDER_PERCENT);
+    network.start();
+    String inviterNum = String.valueOf(5550000 + 2*game);
+    String inviteeNum = String.valueOf(5550001 + 2*game);
+    DispatchStress inviter = new DispatchStress(network, inviterNum,
+                                                maxPause);
+    DispatchStress invitee = new DispatchStress(network, inviteeNum,
+                                                maxPause);
+    inviter.myManager.sendInvitation(inviteeNum);
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    while(((! inviter.isFinished()) || (! invitee.isFinished()))
+          && (System.currentTimeMillis() < deadline)) {
+      Thread.sleep(10);
+    }
+    String result = "ok";
+    if((! inviter.isFinished()) || (! invitee.isFinished())) {
+      result = "stalled";
+    } else {
+      // the invited player moves first:
+      CheckersGame start = new CheckersGame();
+      start.start();
+      int[] position = { start.getLocalMen(), start.getLocalKings(),
+                         start.getRemoteMen(), start.getRemoteKings() };
+      replay(invitee, inviter, position);
+      if(! invitee.hasPosition(position, true)) {
+        result = "WRONG board for the first player: "
+            + invitee.describe(position);
+      } else if(! inviter.hasPosition(position, false)) {
+        result = "WRONG board for the second player: "
+            + inviter.describe(position);
+      }
+    }
+    inviter.finish();
+    invitee.finish();
+    inviter.myManager.shutDown();
+    invitee.myManager.shutDown();
+    network.shutDown();
+    return(result);
+  }
+
+  /**
+   * Play one game against the computer and check the board.
+   * @return "ok", or what went wrong.
+   */
+  static String playComputerGame(int game, int maxPause)
+      throws InterruptedException {
+    // (the network is only there to give the SMSManager a
+    // transport, nothing is sent)
+    LoopbackNetwork network = new LoopbackNetwork(0, 0, 0, 0);
+    network.start();
+    DispatchStress player = new DispatchStress(network, 
+        String.valueOf(5560000 + game), maxPause);
+    player.myManager.playComputer(COMPUTER_TIME, 1);
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    while((! player.isFinished())
+          && (System.currentTimeMillis() < deadline)) {
+      Thread.sleep(10);
+    }
+    String result = "ok";
+    if(! player.isFinished()) {
+      result = "stalled";
+    } else {
+      // the local player moves first:
+      CheckersGame start = new CheckersGame();
+      start.start();
+      int[] position = { start.getLocalMen(), start.getLocalKings(),
+                         start.getRemoteMen(), start.getRemoteKings() };
+      player.replayComputerGame(position);
+      if(! player.hasPosition(position, true)) {
+        result = "WRONG " + player.describe(position);
+      }
+    }
+    player.finish();
+    player.myManager.shutDown();
+    network.shutDown();
+    return(result);
+  }
+
+  /**
+   * Run the stress test and print the results.
+   */
+  public static void main(String[] args) throws InterruptedException {
+    int[] values = { 20, 10, 10 };
+    for(int i = 0; (i < args.length) && (i < values.length); i++) {
+      values[i] = Integer.parseInt(args[i]);
+    }
+    int failures = 0;
+    long start = System.currentTimeMillis();
+    for(int i = 0; i < values[0] + values[1]; i++) {
+      String result;
+      if(i < values[0]) {
+        result = playGame(i, values[2]);
+      } else {
+        result = playComputerGame(i, values[2]);
+      }
+      if(! result.equals("ok")) {
+        System.out.println("game " + i + ": " + result);
+        failures++;
+      }
+    }
+    System.out.println("games: " + values[0] + " over the network and "
+                       + values[1] + " against the computer, " 
+                       + failures + " wrong or stalled, in "
+                       + (System.currentTimeMillis() - start) + " ms");
+    if(failures > 0) {
+      System.exit(1);
+    }
+  }
+
+}
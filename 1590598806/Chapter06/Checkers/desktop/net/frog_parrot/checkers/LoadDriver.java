@@ -0,0 +1,298 @@
+package net.frog_parrot.checkers;
+
+import net.frog_parrot.net.LoopbackNetwork;
+import net.frog_parrot.util.WorkQueue;
+
+/**
+ * This class load-tests the game's turn taking and SMS
+ * messaging code by having pairs of players play random 
+ * games against each other over a LoopbackNetwork, inside
+ * one Java virtual machine.  Each player is a real 
+ * MoveManager and SMSManager, with a LoadTestPlayer 
+ * pressing the keys in place of the user.  It reports the
+ * number of moves per second and the time from the end of
+ * each turn until the opponent can play.
+ *
+ * Run it on a desktop machine with the main method:
+ * LoadDriver [games] [min delay] [max delay] [loss percent]
+ *            [reorder percent] [timeout] [resync timeout]
+ * (delays and timeouts in milliseconds).  Each player uses
+ * four worker threads (see MoveManager and SMSManager), 
+ * and the thinking that MoveManager does during the remote 
+ * player's turns takes time from all of them, so a hundred
+ * or so games at once for each processor is about the 
+ * limit.  A game whose message was lost never finishes, 
+ * so it's counted as stalled once the timeout runs out
+ * -- unless a resync timeout is given:  then a 
+ * player that has waited that long for its opponent asks
+ * for the opponent's board (as a user would with the 
+ * resync command), which recovers a lost turn.
+ */
+public class LoadDriver {
+
+  //--------------------------------------------------------
+  //  static fields
+
+  /**
+   * The longest latency (in milliseconds) that is recorded
+   * exactly.  Longer latencies are counted as this long.
+   */
+  public static final int MAX_LATENCY = 60000;
+
+  //--------------------------------------------------------
+  //  instance fields
+
+  /**
+   * The network the games are played on.
+   */
+  private LoopbackNetwork myNetwork;
+
+  /**
+   * The thread that presses the keys for all of the 
+   * players, one turn at a time, as the users would.
+   */
+  private WorkQueue myPlayerQueue = new WorkQueue(1);
+
+  /**
+   * The number of players that have finished their games.
+   */
+  private int myFinishedCount;
+
+  /**
+   * The number of hops played.
+   */
+  private int myMoveCount;
+
+  /**
+   * The number of turns with each latency, in milliseconds.
+   * (Counting instead of keeping every latency keeps the 
+   * memory use the same no matter how long the test runs.)
+   */
+  private int[] myLatencies = new int[MAX_LATENCY + 1];
+
+  /**
+   * The number of latencies recorded.
+   */
+  private int myLatencyCount;
+
+  /**
+   * The number of times a player asked for its
+   * opponent's board.
+   */
+  private int myResyncCount;
+
+  /**
+   * The number of taunts sent.
+   */
+  private int myTauntCount;
+
+  /**
+   * The number of bytes saved by encoding the taunts.
+   */
+  private int myTauntBytesSaved;
+
+  //--------------------------------------------------------
+  //  lifecycle
+
+  /**
+   * Initialize the main data.
+   */
+  public LoadDriver(LoopbackNetwork network) {
+    myNetwork = network;
+  }
+
+  /**
+   * Play the games.
+   * @param resyncTimeout how long a player waits before
+   *        asking for its opponent's board (or 0 for never).
+   * @return the number of milliseconds it took.
+   */
+  public long play(int gameCount, long timeout, long resyncTimeout) {
+    myPlayerQueue.start();
+    LoadTestPlayer[] players = new LoadTestPlayer[2*gameCount];
+    for(int i = 0; i < players.length; i++) {
+      players[i] = new LoadTestPlayer(this, 
+          myNetwork.getTransport(getPhoneNum(i)));
+    }
+    long start = System.currentTimeMillis();
+    for(int i = 0; i < gameCount; i++) {
+      players[2*i].invite(players[2*i + 1], getPhoneNum(2*i + 1));
+    }
+    long deadline = start + timeout;
+    while(true) {
+      synchronized(this) {
+        long wait = deadline - System.currentTimeMillis();
+        if((myFinishedCount == players.length) || (wait <= 0)) {
+          break;
+        }
+        if((resyncTimeout > 0) && (wait > resyncTimeout)) {
+          wait = resyncTimeout;
+        }
+        try {
+          wait(wait);
+        } catch(InterruptedException e) {
+        }
+      }
+      // this is done without holding the lock since
+      // a request for a board may have to wait to be sent:
+      if(resyncTimeout > 0) {
+        long now = System.currentTimeMillis();
+        for(int i = 0; i < players.length; i++) {
+          players[i].checkStalled(now, resyncTimeout);
+        }
+      }
+    }
+    long time = System.currentTimeMillis() - start;
+    // stop the stalled games too:
+    for(int i = 0; i < players.length; i++) {
+      players[i].shutDown();
+      synchronized(this) {
+        myTauntCount += players[i].getTauntCount();
+        myTauntBytesSaved += players[i].getTauntBytesSaved();
+      }
+    }
+    myPlayerQueue.shutDown();
+    return(time);
+  }
+
+  /**
+   * Have a player look at its board on the thread that
+   * presses the keys.
+   */
+  void execute(Runnable player) {
+    myPlayerQueue.execute(player);
+  }
+
+  /**
+   * @return the made-up phone number of a player.
+   */
+  private static String getPhoneNum(int player) {
+    return(String.valueOf(5550000 + player));
+  }
+
+  //--------------------------------------------------------
+  //  statistics
+
+  /**
+   * Count one hop.
+   */
+  synchronized void recordMove() {
+    myMoveCount++;
+  }
+
+  /**
+   * Record the time it took a turn to reach the opponent.
+   */
+  synchronized void recordLatency(long latency) {
+    if(latency > MAX_LATENCY) {
+      latency = MAX_LATENCY;
+    }
+    myLatencies[(int)latency]++;
+    myLatencyCount++;
+  }
+
+  /**
+   * Count one request for the opponent's board.
+   */
+  synchronized void recordResync() {
+    myResyncCount++;
+  }
+
+  /**
+   * Count one player whose game is over.
+   */
+  synchronized void gameFinished() {
+    myFinishedCount++;
+    notify();
+  }
+
+  /**
+   * @return the number of players whose games are over.
+   */
+  public synchronized int getFinishedCount() {
+    return(myFinishedCount);
+  }
+
+  /**
+   * @return the number of hops played.
+   */
+  public synchronized int getMoveCount() {
+    return(myMoveCount);
+  }
+
+  /**
+   * @return the number of requests for the opponent's board.
+   */
+  public synchronized int getResyncCount() {
+    return(myResyncCount);
+  }
+
+  /**
+   * @return the number of taunts sent.
+   */
+  public synchronized int getTauntCount() {
+    return(myTauntCount);
+  }
+
+  /**
+   * @return the number of bytes saved by encoding the taunts.
+   */
+  public synchronized int getTauntBytesSaved() {
+    return(myTauntBytesSaved);
+  }
+
+  /**
+   * @return the latency that the given percentage of the
+   *         turns were within.
+   */
+  public synchronized int getLatency(int percent) {
+    int target = (int)(((long)myLatencyCount*percent + 99)/100);
+    int count = 0;
+    for(int i = 0; i < myLatencies.length; i++) {
+      count += myLatencies[i];
+      if((count >= target) && (count > 0)) {
+        return(i);
+      }
+    }
+    return(0);
+  }
+
+  //--------------------------------------------------------
+  //  main
+
+  /**
+   * Run the load test and print the results.
+   */
+  public static void main(String[] args) {
+    int[] values = { 100, 50, 500, 0, 0, 60000, 0 };
+    for(int i = 0; (i < args.length) && (i < values.length); i++) {
+      values[i] = Integer.parseInt(args[i]);
+    }
+    LoopbackNetwork network = new LoopbackNetwork(values[1], values[2],
+                                                  values[3], values[4]);
+    network.start();
+    LoadDriver driver = new LoadDriver(network);
+    long time = driver.play(values[0], values[5], values[6]);
+    network.shutDown();
+    int games = driver.getFinishedCount()/2;
+    System.out.println("games: " + games + " finished, " 
+                       + (values[0] - games) + " stalled, in "
+                       + time + " ms");
+    System.out.println("moves: " + driver.getMoveCount() + ", "
+                       + (driver.getMoveCount()*1000L/(time + 1)) 
+                       + " moves/s");
+    System.out.println("turn latency: p50 " + driver.getLatency(50)
+                       + " ms, p90 " + driver.getLatency(90)
+                       + " ms, p99 " + driver.getLatency(99)
+                       + " ms, max " + driver.getLatency(100) + " ms");
+    System.out.println("messages: " + network.getSentCount() + " sent, "
+                       + network.getLostCount() + " lost, "
+                       + network.getDeliveredCount() + " delivered, "
+                       + driver.getResyncCount() + " resync requests");
+    System.out.println("taunts: " + driver.getTauntCount() + " sent, "
+                       + driver.getTauntBytesSaved() + " bytes saved ("
+                       + (driver.getTauntBytesSaved()/Math.max(values[0], 1))
+                       + " per game)");
+  }
+
+}
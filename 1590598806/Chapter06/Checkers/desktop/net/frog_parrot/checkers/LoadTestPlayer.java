@@ -0,0 +1,316 @@
+package net.frog_parrot.checkers;
+
+import java.util.Random;
+
+import net.frog_parrot.net.MessageTransport;
+import net.frog_parrot.net.SMSManager;
+
+/**
+ * This class stands in for the user in the load test in
+ * LoadDriver.  Each player has a real MoveManager and
+ * SMSManager, and plays random moves by pressing the keys
+ * of its CheckersGame, just as CheckersCanvas passes on
+ * the user's keystrokes.  It takes the place of the user
+ * interface (see GameScreen), so the MoveManager tells it
+ * whenever the board changes, and then it plays its turn
+ * on the load test's own thread (as the user would),
+ * not on the MoveManager's.
+ */
+class LoadTestPlayer implements GameScreen, Runnable {
+
+  //--------------------------------------------------------
+  //  static fields
+
+  /**
+   * The most turns a player takes before ending the game.
+   */
+  public static final int MAX_TURNS = 100;
+
+  /**
+   * The most times the right key is pressed to choose
+   * where the selected piece goes.
+   */
+  public static final int MAX_PRESSES = 4;
+
+  /**
+   * The taunts to send (some standard ones and some custom
+   * ones, see TauntCodec), each with one turn in four.
+   */
+  public static final String[] TAUNTS = {
+    "Good move!",
+    "Ha ha!",
+    "King me!",
+    "Is that all you've got?",
+    "My cat plays better than that",
+    "Hurry up!",
+  };
+
+  //--------------------------------------------------------
+  //  instance fields
+
+  /**
+   * The load test to report to.
+   */
+  private LoadDriver myDriver;
+
+  /**
+   * The class that sends and receives the messages.
+   */
+  private SMSManager mySMSManager;
+
+  /**
+   * The game logic, which this player presses the keys of.
+   */
+  private CheckersGame myGame = new CheckersGame();
+
+  /**
+   * The class that takes turns with the opponent.
+   */
+  private MoveManager myManager;
+
+  /**
+   * The player on the other end.
+   */
+  private LoadTestPlayer myOpponent;
+
+  /**
+   * The number of turns taken.
+   */
+  private int myTurnCount;
+
+  /**
+   * When the last turn (or the invitation) was sent.
+   */
+  private long myTurnSentTime;
+
+  /**
+   * When this player started waiting for its opponent
+   * (or last asked for the opponent's board).
+   */
+  private long myWaitTime;
+
+  /**
+   * Whether this player is waiting for the load test's
+   * thread to look at the board.
+   */
+  private boolean myIsQueued;
+
+  /**
+   * Whether this player has reported that its game is over.
+   */
+  private boolean myIsFinished;
+
+  /**
+   * The message to send with the next turn (set when this
+   * player loses), or null for a random one.
+   */
+  private String myTaunt;
+
+  /**
+   * The source of the random moves.
+   */
+  private Random myRandom = new Random();
+
+  //--------------------------------------------------------
+  //  lifecycle
+
+  /**
+   * Initialize the main data, and start listening for
+   * messages.
+   */
+  LoadTestPlayer(LoadDriver driver, MessageTransport transport) {
+    myDriver = driver;
+    mySMSManager = new SMSManager(transport);
+    // the MoveManager's threads call this player once the
+    // handle is set (see repaintBoard):
+    synchronized(this) {
+      myManager = new MoveManager(this, myGame, mySMSManager);
+    }
+  }
+
+  /**
+   * Invite the opponent to play.
+   */
+  void invite(LoadTestPlayer opponent, String phoneNum) {
+    myOpponent = opponent;
+    opponent.myOpponent = this;
+    synchronized(this) {
+      myTurnSentTime = System.currentTimeMillis();
+      myWaitTime = myTurnSentTime;
+    }
+    myManager.sendInvitation(phoneNum);
+  }
+
+  /**
+   * Stop sending and receiving.
+   */
+  void shutDown() {
+    myManager.shutDown();
+  }
+
+  /**
+   * @return when the last turn was sent.
+   */
+  synchronized long getTurnSentTime() {
+    return(myTurnSentTime);
+  }
+
+  /**
+   * @return the number of taunts sent.
+   */
+  int getTauntCount() {
+    return(mySMSManager.getTaunts().getTauntCount());
+  }
+
+  /**
+   * @return the number of bytes saved by encoding the taunts.
+   */
+  int getTauntBytesSaved() {
+    return(mySMSManager.getTaunts().getBytesSaved());
+  }
+
+  //--------------------------------------------------------
+  //  GameScreen methods
+
+  public void setWaitScreen(boolean wait) {
+    // there's no screen to show it on.
+  }
+
+  /**
+   * Have the load test's thread look at the board (and
+   * play a turn if it's this player's turn).
+   */
+  public synchronized void repaintBoard() {
+    // (this is also called while the MoveManager is
+    // created, before there's any game)
+    if((myManager != null) && (! myIsQueued)) {
+      myIsQueued = true;
+      myDriver.execute(this);
+    }
+  }
+
+  public synchronized String getTauntMessage() {
+    String retVal = myTaunt;
+    myTaunt = null;
+    if(retVal == null) {
+      int index = (myRandom.nextInt() >>> 1) % (4*TAUNTS.length);
+      if(index < TAUNTS.length) {
+        retVal = TAUNTS[index];
+      }
+    }
+    return(retVal);
+  }
+
+  public synchronized void setWinTaunt() {
+    myTaunt = "You Win!";
+  }
+
+  public void displayTauntMessage(String taunt) {
+    // the opponent's taunts are ignored.
+  }
+
+  public void errorMsg(String msg) {
+    System.err.println("error: " + msg);
+    finish();
+  }
+
+  public void quit() {
+    finish();
+  }
+
+  //--------------------------------------------------------
+  //  moving
+
+  /**
+   * Look at the board:  play a turn if it's this player's
+   * turn, or report that the game is over.  This is run
+   * by the load test's thread.
+   */
+  public void run() {
+    synchronized(this) {
+      myIsQueued = false;
+    }
+    int state = myManager.getState();
+    if(state == MoveManager.GAME_OVER) {
+      finish();
+    } else if(state == MoveManager.LOCAL_TURN) {
+      playTurn();
+    }
+  }
+
+  /**
+   * Ask the opponent for its board if this player has 
+   * been waiting for too long.
+   */
+  void checkStalled(long now, long timeout) {
+    synchronized(this) {
+      if(myIsFinished || (myManager.getState() != MoveManager.REMOTE_TURN)
+         || (now - myWaitTime <= timeout)) {
+        return;
+      }
+      myWaitTime = now;
+    }
+    myDriver.recordResync();
+    myManager.requestResync();
+  }
+
+  /**
+   * Play one turn of random moves, including any further
+   * jumps, with the keys that the user would press.  The
+   * MoveManager sends the turn once it's over.
+   */
+  private void playTurn() {
+    myDriver.recordLatency(System.currentTimeMillis() 
+                           - myOpponent.getTurnSentTime());
+    myTurnCount++;
+    if(myTurnCount > MAX_TURNS) {
+      myManager.endGame();
+      return;
+    }
+    // start over from the piece that the ponderer may
+    // have selected:
+    myGame.deselect();
+    int movers = CheckersGame.countSquares(myGame.getLocalMovers());
+    // if no piece can move, pressing a key ends the game
+    // (as the local player's loss):
+    int presses = 1;
+    if(movers > 0) {
+      presses += (myRandom.nextInt() >>> 1) % movers;
+    }
+    for(int i = 0; i < presses; i++) {
+      myGame.rightPressed();
+    }
+    if(movers == 0) {
+      return;
+    }
+    // fix the selection, then choose a destination and
+    // move, until the piece can't jump any further:
+    myGame.upPressed();
+    do {
+      presses = (myRandom.nextInt() >>> 1) % MAX_PRESSES;
+      for(int i = 0; i < presses; i++) {
+        myGame.rightPressed();
+      }
+      myGame.upPressed();
+      myDriver.recordMove();
+    } while(myGame.getJumpingSquare() != -1);
+    synchronized(this) {
+      myTurnSentTime = System.currentTimeMillis();
+      myWaitTime = myTurnSentTime;
+    }
+  }
+
+  /**
+   * Report that the game is over.
+   */
+  private void finish() {
+    synchronized(this) {
+      if(myIsFinished) {
+        return;
+      }
+      myIsFinished = true;
+    }
+    myDriver.gameFinished();
+  }
+
+}
@@ -0,0 +1,224 @@
+package net.frog_parrot.checkers;
+
+/**
+ * This class checks the move generation by counting all
+ * of the possible games to a given number of turns
+ * ("perft") and comparing the counts to known values.
+ * It follows the rules of CheckersGame:  jumps aren't
+ * required, a piece that has just jumped may jump again
+ * (as a king if it has just been crowned) or stop, and
+ * a man that reaches the far side is crowned.
+ *
+ * Run it on a desktop machine with the main method, which
+ * prints the counts and the speed and exits with status 1
+ * if any count is wrong.
+ *
+ * Positions are written as the side to move ('l' for the
+ * local player, whose men move toward the top, or 'r'),
+ * a colon, and then the 32 squares from the top left,
+ * row by row:  'l' and 'L' for the local player's men
+ * and kings, 'r' and 'R' for the remote player's, and '.'
+ * for an empty square.  The '/' between rows is optional.
+ */
+public class Perft {
+
+  //-------------------------------------------------------
+  //   static fields
+
+  /**
+   * The test positions.  The first one is the start
+   * of the game (see the CheckersGame constructor).
+   */
+  public static final String[] POSITIONS = {
+    "l:rrrr/rrrr/rrrr/..../..../llll/llll/llll",
+    "l:..../.r.r/..../.r.r/..l./..../.R../L...",
+    "r:.r../..r./.l.l/..../.l../r.../.l.L/....",
+    "l:rr.r/r.rr/.r.r/l.../..l./.l.l/l.ll/llll",
+  };
+
+  /**
+   * The correct counts for each position, for one turn,
+   * two turns, etc.
+   */
+  public static final long[][] EXPECTED = {
+    { 7, 49, 379, 2872, 23582, 190647, 1607272 },
+    { 5, 37, 157, 1109, 4899, 34038 },
+    { 6, 68, 377, 3620, 18629, 160560 },
+    { 11, 78, 842, 6656, 71512, 579806 },
+  };
+
+  /**
+   * The most jumps that one turn can have (one for each
+   * of the other side's pieces) plus the first move.
+   */
+  private static final int MAX_HOPS = 13;
+
+  //-------------------------------------------------------
+  //   instance fields
+
+  /**
+   * The move lists, one for each level of the recursion.
+   */
+  private MoveList[] myMoveLists = new MoveList[0];
+
+  //-------------------------------------------------------
+  //   counting
+
+  /**
+   * Counts the different ways that the given number of
+   * turns can be played from the given position.
+   * @param towardTop whether the moving side's men move
+   *        toward the top of the board.
+   */
+  public long count(int men, int kings, int oppMen, int oppKings,
+                    boolean towardTop, int depth) {
+    int levels = depth*MAX_HOPS + 1;
+    if(myMoveLists.length < levels) {
+      myMoveLists = new MoveList[levels];
+      for(int i = 0; i < levels; i++) {
+        myMoveLists[i] = new MoveList();
+      }
+    }
+    return(countTurns(men, kings, oppMen, oppKings, towardTop, -1,
+                      depth, 0));
+  }
+
+  /**
+   * Counts the ways to finish the current turn (which is
+   * in the middle of a multiple jump if continueSquare
+   * isn't -1) and then play depth - 1 more turns.
+   */
+  private long countTurns(int men, int kings, int oppMen, int oppKings,
+                          boolean towardTop, int continueSquare,
+                          int depth, int level) {
+    if(depth == 0) {
+      return(1);
+    }
+    MoveList moves = myMoveLists[level];
+    CheckersEngine.generate(men, kings, oppMen, oppKings, towardTop,
+                            continueSquare, false, moves);
+    int crownRow = CheckersGame.BOTTOM_ROW;
+    if(towardTop) {
+      crownRow = CheckersGame.TOP_ROW;
+    }
+    long total = 0;
+    for(int i = 0; i < moves.size(); i++) {
+      int move = moves.get(i);
+      int destination = 1 << MoveList.getDestination(move);
+      int fromTo = (1 << MoveList.getSource(move)) | destination;
+      int newMen = men;
+      int newKings = kings;
+      if((kings & fromTo) != 0) {
+        newKings ^= fromTo;
+      } else {
+        newMen ^= fromTo;
+        if((destination & crownRow) != 0) {
+          newMen ^= destination;
+          newKings |= destination;
+        }
+      }
+      int newOppMen = oppMen;
+      int newOppKings = oppKings;
+      int captured = MoveList.getCaptured(move);
+      if(captured != -1) {
+        newOppMen &= ~(1 << captured);
+        newOppKings &= ~(1 << captured);
+        // the piece may jump again instead of stopping:
+        if(CheckersEngine.canJump(newMen & destination,
+               newKings & destination, newOppMen | newOppKings,
+               ~(newMen | newKings | newOppMen | newOppKings),
+               towardTop)) {
+          total += countTurns(newMen, newKings, newOppMen, newOppKings,
+                              towardTop, MoveList.getDestination(move),
+                              depth, level + 1);
+        }
+      }
+      total += countTurns(newOppMen, newOppKings, newMen, newKings,
+                          ! towardTop, -1, depth - 1, level + 1);
+    }
+    return(total);
+  }
+
+  //-------------------------------------------------------
+  //   positions
+
+  /**
+   * Reads a position (see the class comment).
+   * @return an array holding the local men, local kings,
+   *         remote men, and remote kings, then 1 if the
+   *         local player is to move or else 0.
+   */
+  public static int[] parsePosition(String position) {
+    int[] retArray = new int[5];
+    if(position.charAt(0) == 'l') {
+      retArray[4] = 1;
+    }
+    int square = 0;
+    for(int i = 2; i < position.length(); i++) {
+      char c = position.charAt(i);
+      if(c == '/') {
+        continue;
+      }
+      int index = "lLrR".indexOf(c);
+      if(index != -1) {
+        retArray[index] |= 1 << square;
+      } else if(c != '.') {
+        throw(new IllegalArgumentException("bad square: " + c));
+      }
+      square++;
+    }
+    if(square != CheckersGame.SQUARE_COUNT) {
+      throw(new IllegalArgumentException("bad position: " + position));
+    }
+    return(retArray);
+  }
+
+  //-------------------------------------------------------
+  //   main
+
+  /**
+   * Counts every test position to the depth of its
+   * known values and prints the results.
+   */
+  public static void main(String[] args) {
+    Perft perft = new Perft();
+    boolean failed = false;
+    for(int i = 0; i < POSITIONS.length; i++) {
+      int[] pieces = parsePosition(POSITIONS[i]);
+      if(i == 0) {
+        // check that the game really starts this way:
+        CheckersGame game = new CheckersGame();
+        if((game.getLocalMen() != pieces[0])
+           || (game.getRemoteMen() != pieces[2])) {
+          System.out.println("start position differs from CheckersGame");
+          failed = true;
+        }
+      }
+      System.out.println(POSITIONS[i]);
+      for(int depth = 1; depth <= EXPECTED[i].length; depth++) {
+        long start = System.currentTimeMillis();
+        long nodes;
+        if(pieces[4] == 1) {
+          nodes = perft.count(pieces[0], pieces[1], pieces[2], pieces[3],
+                              true, depth);
+        } else {
+          nodes = perft.count(pieces[2], pieces[3], pieces[0], pieces[1],
+                              false, depth);
+        }
+        long time = System.currentTimeMillis() - start;
+        String result = "ok";
+        if(nodes != EXPECTED[i][depth - 1]) {
+          result = "WRONG (expected " + EXPECTED[i][depth - 1] + ")";
+          failed = true;
+        }
+        System.out.println("  depth " + depth + ": " + nodes + " "
+            + result + ", " + time + " ms, "
+            + (nodes*1000/(time + 1)) + " nodes/s");
+      }
+    }
+    if(failed) {
+      System.exit(1);
+    }
+  }
+
+}
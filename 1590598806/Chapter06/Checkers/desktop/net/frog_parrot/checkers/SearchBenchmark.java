@@ -0,0 +1,133 @@
+package net.frog_parrot.checkers;
+
+/**
+ * This class measures how the computer player's search
+ * scales with the number of threads (see ParallelSearch).
+ * It searches each of the Perft test positions for the
+ * same length of time with 1, 2, 4 and 8 threads (or the
+ * given numbers of threads), and reports the positions
+ * visited by all of the threads, the deepest iteration
+ * completed, and the time taken.  Each number of threads
+ * starts with a new (empty) transposition table.
+ *
+ * Run it on a desktop machine with the main method:
+ * SearchBenchmark [time budget] [threads] [threads] ...
+ * (the time budget in milliseconds for each position).
+ * The threads only help as far as there are processors
+ * for them:  on a single processor, more threads just
+ * share the same time, and the deeper start of half of
+ * the helpers (see ParallelSearch) can even cost depth.
+ */
+public class SearchBenchmark {
+
+  //--------------------------------------------------------
+  //  static fields
+
+  /**
+   * The numbers of threads to search with if none are given.
+   */
+  public static final int[] THREAD_COUNTS = { 1, 2, 4, 8 };
+
+  //--------------------------------------------------------
+  //  instance fields
+
+  /**
+   * The positions visited in the searches so far.
+   */
+  private long myNodes;
+
+  /**
+   * The completed depths of the searches so far, added up.
+   */
+  private int myDepths;
+
+  /**
+   * The milliseconds the searches so far took.
+   */
+  private long myTime;
+
+  //--------------------------------------------------------
+  //  benchmark
+
+  /**
+   * Searches every test position with the given number of
+   * threads and prints the results of each.
+   */
+  public void run(int threadCount, long timeBudget) {
+    ParallelSearch search = new ParallelSearch(threadCount,
+        CheckersEngine.DEFAULT_TABLE_BITS);
+    for(int i = 0; i < Perft.POSITIONS.length; i++) {
+      int[] pieces = Perft.parsePosition(Perft.POSITIONS[i]);
+      long start = System.currentTimeMillis();
+      if(pieces[4] == 1) {
+        search.findMove(pieces[0], pieces[1], pieces[2], pieces[3],
+                        true, -1, timeBudget);
+      } else {
+        search.findMove(pieces[2], pieces[3], pieces[0], pieces[1],
+                        false, -1, timeBudget);
+      }
+      long time = System.currentTimeMillis() - start;
+      int nodes = search.getNodes();
+      int depth = search.getCompletedDepth();
+      myNodes += nodes;
+      myDepths += depth;
+      myTime += time;
+      System.out.println("  " + Perft.POSITIONS[i] + ": depth " + depth
+                         + ", " + nodes + " nodes, " + time + " ms");
+    }
+    search.shutDown();
+  }
+
+  /**
+   * @return the positions visited in all of the searches.
+   */
+  public long getNodes() {
+    return(myNodes);
+  }
+
+  /**
+   * @return the completed depths of all of the searches,
+   *         added up.
+   */
+  public int getDepths() {
+    return(myDepths);
+  }
+
+  /**
+   * @return the milliseconds all of the searches took.
+   */
+  public long getTime() {
+    return(myTime);
+  }
+
+  /**
+   * Run the benchmark for each number of threads and
+   * print the totals.
+   */
+  public static void main(String[] args) {
+    long timeBudget = ComputerPlayer.DEFAULT_TIME_BUDGET;
+    if(args.length > 0) {
+      timeBudget = Long.parseLong(args[0]);
+    }
+    int[] threadCounts = THREAD_COUNTS;
+    if(args.length > 1) {
+      threadCounts = new int[args.length - 1];
+      for(int i = 0; i < threadCounts.length; i++) {
+        threadCounts[i] = Integer.parseInt(args[i + 1]);
+      }
+    }
+    int positions = Perft.POSITIONS.length;
+    for(int i = 0; i < threadCounts.length; i++) {
+      System.out.println(threadCounts[i] + " threads:");
+      SearchBenchmark benchmark = new SearchBenchmark();
+      benchmark.run(threadCounts[i], timeBudget);
+      // the average depth to one decimal place:
+      int depth = (10*benchmark.getDepths() + positions/2)/positions;
+      System.out.println("  total: " + benchmark.getNodes() + " nodes, "
+          + (benchmark.getNodes()*1000/(benchmark.getTime() + 1))
+          + " nodes/s, average depth " + (depth/10) + "." + (depth%10)
+          + ", " + benchmark.getTime() + " ms");
+    }
+  }
+
+}
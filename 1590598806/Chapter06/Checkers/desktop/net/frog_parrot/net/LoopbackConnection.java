@@ -0,0 +1,185 @@
+package net.frog_parrot.net;
+
+import java.io.*;
+import java.util.Vector;
+import javax.wireless.messaging.*;
+
+/**
+ * This class is a message connection on a LoopbackNetwork.
+ * It only handles binary messages, which are all that the
+ * game sends.
+ */
+class LoopbackConnection implements MessageConnection {
+
+  //--------------------------------------------------------
+  //  instance fields
+
+  /**
+   * The network that carries the messages.
+   */
+  private LoopbackNetwork myNetwork;
+
+  /**
+   * The phone number of the player that owns the connection.
+   */
+  private String myPhoneNum;
+
+  /**
+   * Whether this is the connection that receives the 
+   * player's messages.
+   */
+  private boolean myIsServer;
+
+  /**
+   * The messages that have arrived and haven't been read.
+   */
+  private Vector myInbox = new Vector();
+
+  /**
+   * The listener to tell about new messages.
+   */
+  private MessageListener myListener;
+
+  /**
+   * Whether the connection has been closed.
+   */
+  private boolean myIsClosed;
+
+  //--------------------------------------------------------
+  //  lifecycle
+
+  /**
+   * Initialize the main data.
+   */
+  LoopbackConnection(LoopbackNetwork network, String phoneNum, 
+                     boolean isServer) {
+    myNetwork = network;
+    myPhoneNum = phoneNum;
+    myIsServer = isServer;
+  }
+
+  /**
+   * Close the connection, and wake any thread that is
+   * waiting to receive a message.
+   */
+  public void close() {
+    synchronized(this) {
+      myIsClosed = true;
+      notifyAll();
+    }
+    if(myIsServer) {
+      myNetwork.unregister(myPhoneNum, this);
+    }
+  }
+
+  //--------------------------------------------------------
+  //  sending
+
+  /**
+   * Create a binary message.
+   */
+  public Message newMessage(String type) {
+    return(newMessage(type, null));
+  }
+
+  /**
+   * Create a binary message for the given address.
+   */
+  public Message newMessage(String type, String address) {
+    if(! BINARY_MESSAGE.equals(type)) {
+      throw(new IllegalArgumentException("only binary messages"));
+    }
+    return(new LoopbackMessage(address, null));
+  }
+
+  /**
+   * Send the message over the network.
+   */
+  public void send(Message msg) throws IOException {
+    if(myIsClosed) {
+      throw(new IOException("connection closed"));
+    }
+    if((msg.getAddress() == null) 
+       || (((BinaryMessage)msg).getPayloadData() == null)) {
+      throw(new IllegalArgumentException("no address or data"));
+    }
+    myNetwork.send(myPhoneNum, msg.getAddress(), 
+                   ((BinaryMessage)msg).getPayloadData());
+  }
+
+  /**
+   * @return the number of SMS messages the message would 
+   *         take.
+   */
+  public int numberOfSegments(Message msg) {
+    byte[] data = ((BinaryMessage)msg).getPayloadData();
+    if((data == null) || (data.length == 0)) {
+      return(1);
+    }
+    return((data.length + SMSSender.MAX_PAYLOAD - 1) 
+           / SMSSender.MAX_PAYLOAD);
+  }
+
+  //--------------------------------------------------------
+  //  receiving
+
+  /**
+   * Set the listener, and tell it about any messages that
+   * are already waiting.
+   */
+  public void setMessageListener(MessageListener listener) 
+      throws IOException {
+    int waiting = 0;
+    synchronized(this) {
+      if(myIsClosed) {
+        throw(new IOException("connection closed"));
+      }
+      myListener = listener;
+      waiting = myInbox.size();
+    }
+    if(listener != null) {
+      for(int i = 0; i < waiting; i++) {
+        listener.notifyIncomingMessage(this);
+      }
+    }
+  }
+
+  /**
+   * Wait for the next message and return it.
+   */
+  public synchronized Message receive() throws IOException {
+    while((myInbox.size() == 0) && (! myIsClosed)) {
+      try {
+        wait();
+      } catch(InterruptedException e) {
+        throw(new InterruptedIOException());
+      }
+    }
+    if(myIsClosed) {
+      throw(new IOException("connection closed"));
+    }
+    Message msg = (Message)myInbox.elementAt(0);
+    myInbox.removeElementAt(0);
+    return(msg);
+  }
+
+  /**
+   * Add a message to the inbox without telling the listener.
+   */
+  synchronized void addMessage(LoopbackMessage msg) {
+    myInbox.addElement(msg);
+    notify();
+  }
+
+  /**
+   * Add a message to the inbox and tell the listener.
+   */
+  void deliver(LoopbackMessage msg) {
+    addMessage(msg);
+    MessageListener listener = myListener;
+    if(listener != null) {
+      listener.notifyIncomingMessage(this);
+    }
+  }
+
+}
@@ -0,0 +1,87 @@
+package net.frog_parrot.net;
+
+import java.util.Date;
+import javax.wireless.messaging.*;
+
+/**
+ * This class is a binary message on a LoopbackNetwork.
+ */
+class LoopbackMessage implements BinaryMessage {
+
+  /**
+   * The destination of a message being sent, or the
+   * sender of a message that has arrived.
+   */
+  private String myAddress;
+
+  /**
+   * The data.
+   */
+  private byte[] myPayload;
+
+  /**
+   * When the message was created.
+   */
+  private long myTimestamp = System.currentTimeMillis();
+
+  /**
+   * The phone number the network delivers the message to.
+   */
+  private String myDestination;
+
+  /**
+   * When the network delivers the message.
+   */
+  private long myDeliveryTime;
+
+  /**
+   * Initialize the main data.
+   */
+  LoopbackMessage(String address, byte[] payload) {
+    myAddress = address;
+    myPayload = payload;
+  }
+
+  public String getAddress() {
+    return(myAddress);
+  }
+
+  public void setAddress(String address) {
+    myAddress = address;
+  }
+
+  public Date getTimestamp() {
+    return(new Date(myTimestamp));
+  }
+
+  public byte[] getPayloadData() {
+    return(myPayload);
+  }
+
+  public void setPayloadData(byte[] payload) {
+    myPayload = payload;
+  }
+
+  /**
+   * Set where and when the network delivers the message.
+   */
+  void setDestination(String phoneNum, long deliveryTime) {
+    myDestination = phoneNum;
+    myDeliveryTime = deliveryTime;
+  }
+
+  /**
+   * @return the phone number the message is delivered to.
+   */
+  String getDestination() {
+    return(myDestination);
+  }
+
+  /**
+   * @return when the message is delivered.
+   */
+  long getDeliveryTime() {
+    return(myDeliveryTime);
+  }
+
+}
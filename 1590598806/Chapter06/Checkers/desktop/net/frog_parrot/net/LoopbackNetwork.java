@@ -0,0 +1,299 @@
+package net.frog_parrot.net;
+
+import java.util.Hashtable;
+import java.util.Random;
+import java.util.Vector;
+
+/**
+ * This class is a pretend SMS network that runs inside
+ * one Java virtual machine, so that many games can be
+ * played against each other at once to test the messaging
+ * code under load.  Each player gets a MessageTransport
+ * for its own phone number, and the messages are delivered
+ * by one thread after a random delay.  Messages can also
+ * be lost or held back so that later messages overtake
+ * them, as happens on a real SMS network.
+ */
+public class LoopbackNetwork implements Runnable {
+
+  //--------------------------------------------------------
+  //  settings
+
+  /**
+   * The shortest time (in milliseconds) to deliver a message.
+   */
+  private int myMinDelay;
+
+  /**
+   * The longest time to deliver a message (unless it's 
+   * held back).
+   */
+  private int myMaxDelay;
+
+  /**
+   * The percentage of the messages that are lost.
+   */
+  private int myLossPercent;
+
+  /**
+   * The percentage of the messages that are held back 
+   * (for an extra myMaxDelay) so that they arrive out of 
+   * order.
+   */
+  private int myReorderPercent;
+
+  /**
+   * The source of randomness for the delays and losses.
+   */
+  private Random myRandom = new Random();
+
+  //--------------------------------------------------------
+  //  instance fields
+
+  /**
+   * The open receiving connections, by phone number.
+   */
+  private Hashtable myConnections = new Hashtable();
+
+  /**
+   * The messages that have arrived for a phone number 
+   * that has no receiving connection open, by phone number.
+   * (They wait as they would in the push registry.)
+   */
+  private Hashtable myWaitingMessages = new Hashtable();
+
+  /**
+   * The messages on their way, sorted by delivery time.
+   */
+  private Vector myInFlight = new Vector();
+
+  /**
+   * Whether it's time for the delivery thread to stop.
+   */
+  private boolean myShouldStop;
+
+  //--------------------------------------------------------
+  //  statistics fields
+
+  /**
+   * The number of messages sent.
+   */
+  private int mySentCount;
+
+  /**
+   * The number of messages lost.
+   */
+  private int myLostCount;
+
+  /**
+   * The number of messages delivered.
+   */
+  private int myDeliveredCount;
+
+  //--------------------------------------------------------
+  //  lifecycle
+
+  /**
+   * Set the behavior of the network.
+   * @param minDelay the shortest delivery time in milliseconds.
+   * @param maxDelay the longest delivery time in milliseconds
+   *        (of the messages that aren't held back).
+   * @param lossPercent the percentage of messages to lose.
+   * @param reorderPercent the percentage of messages to 
+   *        hold back.
+   */
+  public LoopbackNetwork(int minDelay, int maxDelay, int lossPercent,
+                         int reorderPercent) {
+    myMinDelay = minDelay;
+    myMaxDelay = Math.max(minDelay, maxDelay);
+    myLossPercent = lossPercent;
+    myReorderPercent = reorderPercent;
+  }
+
+  /**
+   * Start the delivery thread.
+   */
+  public void start() {
+    Thread thread = new Thread(this);
+    thread.start();
+  }
+
+  /**
+   * Stop delivering.  (Messages still on their way are lost.)
+   */
+  public synchronized void shutDown() {
+    myShouldStop = true;
+    notify();
+  }
+
+  /**
+   * Get the transport for the player with the given phone 
+   * number.
+   */
+  public MessageTransport getTransport(String phoneNum) {
+    return(new LoopbackTransport(this, phoneNum));
+  }
+
+  //--------------------------------------------------------
+  //  connections
+
+  /**
+   * Make the connection the one that receives the messages
+   * for its phone number, and give it any messages that
+   * were waiting.
+   */
+  synchronized void register(String phoneNum, LoopbackConnection connection) {
+    myConnections.put(phoneNum, connection);
+    Vector waiting = (Vector)myWaitingMessages.remove(phoneNum);
+    if(waiting != null) {
+      for(int i = 0; i < waiting.size(); i++) {
+        connection.addMessage((LoopbackMessage)waiting.elementAt(i));
+      }
+    }
+  }
+
+  /**
+   * Stop sending the phone number's messages to the 
+   * connection.
+   */
+  synchronized void unregister(String phoneNum, 
+                               LoopbackConnection connection) {
+    if(myConnections.get(phoneNum) == connection) {
+      myConnections.remove(phoneNum);
+    }
+  }
+
+  /**
+   * @return whether messages are waiting for the phone number.
+   */
+  synchronized boolean hasWaitingMessage(String phoneNum) {
+    return(myWaitingMessages.get(phoneNum) != null);
+  }
+
+  //--------------------------------------------------------
+  //  sending and delivering
+
+  /**
+   * Send a message.
+   * @param phoneNum the phone number of the sender.
+   * @param address the destination, of the form
+   *        sms://<phonenum>:<port>.
+   */
+  synchronized void send(String phoneNum, String address, byte[] payload) {
+    mySentCount++;
+    if(randomInt(100) < myLossPercent) {
+      myLostCount++;
+      return;
+    }
+    // the address may or may not have the port number:
+    String destination = address.substring(SMSSender.SMS_PROTOCOL.length());
+    int colon = destination.indexOf(':');
+    if(colon != -1) {
+      destination = destination.substring(0, colon);
+    }
+    long delay = myMinDelay + randomInt(myMaxDelay - myMinDelay + 1);
+    if(randomInt(100) < myReorderPercent) {
+      delay += myMaxDelay;
+    }
+    // the message from the network has the sender's
+    // address, and its own copy of the data:
+    byte[] data = new byte[payload.length];
+    System.arraycopy(payload, 0, data, 0, payload.length);
+    LoopbackMessage msg = new LoopbackMessage(
+        SMSSender.SMS_PROTOCOL + phoneNum, data);
+    msg.setDestination(destination, System.currentTimeMillis() + delay);
+    // keep the messages sorted by delivery time:
+    int index = myInFlight.size();
+    while((index > 0) && (((LoopbackMessage)myInFlight.elementAt(
+        index - 1)).getDeliveryTime() > msg.getDeliveryTime())) {
+      index--;
+    }
+    myInFlight.insertElementAt(msg, index);
+    if(index == 0) {
+      notify();
+    }
+  }
+
+  /**
+   * Deliver each message when its time comes.
+   */
+  public void run() {
+    while(true) {
+      LoopbackMessage msg = null;
+      LoopbackConnection connection = null;
+      synchronized(this) {
+        while(! myShouldStop) {
+          if(myInFlight.size() == 0) {
+            try {
+              wait();
+            } catch(InterruptedException e) {
+            }
+            continue;
+          }
+          long wait = ((LoopbackMessage)myInFlight.elementAt(0))
+              .getDeliveryTime() - System.currentTimeMillis();
+          if(wait <= 0) {
+            break;
+          }
+          try {
+            wait(wait);
+          } catch(InterruptedException e) {
+          }
+        }
+        if(myShouldStop) {
+          return;
+        }
+        msg = (LoopbackMessage)myInFlight.elementAt(0);
+        myInFlight.removeElementAt(0);
+        myDeliveredCount++;
+        connection = (LoopbackConnection)myConnections.get(
+            msg.getDestination());
+        if(connection == null) {
+          Vector waiting = (Vector)myWaitingMessages.get(
+              msg.getDestination());
+          if(waiting == null) {
+            waiting = new Vector();
+            myWaitingMessages.put(msg.getDestination(), waiting);
+          }
+          waiting.addElement(msg);
+        }
+      }
+      // the listener is called without holding the lock:
+      if(connection != null) {
+        connection.deliver(msg);
+      }
+    }
+  }
+
+  /**
+   * @return a random number from 0 to limit - 1.
+   */
+  private int randomInt(int limit) {
+    return((myRandom.nextInt() >>> 1) % limit);
+  }
+
+  //--------------------------------------------------------
+  //  statistics
+
+  /**
+   * @return the number of messages sent.
+   */
+  public synchronized int getSentCount() {
+    return(mySentCount);
+  }
+
+  /**
+   * @return the number of messages lost.
+   */
+  public synchronized int getLostCount() {
+    return(myLostCount);
+  }
+
+  /**
+   * @return the number of messages delivered.
+   */
+  public synchronized int getDeliveredCount() {
+    return(myDeliveredCount);
+  }
+
+}
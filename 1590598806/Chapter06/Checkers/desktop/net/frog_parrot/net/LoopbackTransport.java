@@ -0,0 +1,55 @@
+package net.frog_parrot.net;
+
+import java.io.*;
+import javax.wireless.messaging.*;
+
+/**
+ * This class gets the message connections of one 
+ * player from a LoopbackNetwork.
+ */
+class LoopbackTransport implements MessageTransport {
+
+  /**
+   * The network that carries the messages.
+   */
+  private LoopbackNetwork myNetwork;
+
+  /**
+   * The phone number of the player.
+   */
+  private String myPhoneNum;
+
+  /**
+   * Initialize the main data.
+   */
+  LoopbackTransport(LoopbackNetwork network, String phoneNum) {
+    myNetwork = network;
+    myPhoneNum = phoneNum;
+  }
+
+  /**
+   * Check whether messages are waiting for this player.
+   */
+  public boolean hasWaitingMessage() {
+    return(myNetwork.hasWaitingMessage(myPhoneNum));
+  }
+
+  /**
+   * Open the connection that receives this player's messages.
+   */
+  public MessageConnection openServer() throws IOException {
+    LoopbackConnection connection 
+        = new LoopbackConnection(myNetwork, myPhoneNum, true);
+    myNetwork.register(myPhoneNum, connection);
+    return(connection);
+  }
+
+  /**
+   * Open a connection to send from this player.
+   */
+  public MessageConnection openClient(String address) 
+      throws IOException {
+    return(new LoopbackConnection(myNetwork, myPhoneNum, false));
+  }
+
+}
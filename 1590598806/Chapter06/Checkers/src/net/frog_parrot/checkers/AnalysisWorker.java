@@ -0,0 +1,257 @@
+package net.frog_parrot.checkers;
+
+/**
+ * This class is one of the threads of a GameAnalyzer.
+ * It takes games from the analyzer one at a time until
+ * there are none left, and analyzes each one with its own
+ * search engine, so the workers never wait for each other
+ * except to read the next game and write the results.
+ */
+class AnalysisWorker implements Runnable {
+
+  //--------------------------------------------------------
+  //  static fields
+
+  /**
+   * The size of each worker's transposition table
+   * (2^16 entries = 1M bytes).
+   */
+  static final int TABLE_BITS = 16;
+
+  /**
+   * The number of pieces on the board above which the
+   * game is in its early phase.
+   */
+  static final int EARLY_PIECE_COUNT = 16;
+
+  /**
+   * The number of pieces on the board at or below which
+   * the game is in its endgame.
+   */
+  static final int END_PIECE_COUNT = 8;
+
+  //--------------------------------------------------------
+  //  instance fields
+
+  /**
+   * The analyzer that hands out the games and collects
+   * the results.
+   */
+  private GameAnalyzer myAnalyzer;
+
+  /**
+   * The depth of the search at each position.
+   */
+  private int myDepth;
+
+  /**
+   * The score a move has to lose to be a blunder.
+   */
+  private int myMargin;
+
+  /**
+   * The search engine's cache of positions.
+   */
+  private TranspositionTable myTable = new TranspositionTable(TABLE_BITS);
+
+  /**
+   * The search engine.
+   */
+  private CheckersEngine myEngine = new CheckersEngine(myTable);
+
+  /**
+   * The moves of the current position.
+   */
+  private MoveList myMoves = new MoveList();
+
+  /**
+   * The index of the game being analyzed.
+   */
+  private int myGameIndex;
+
+  /**
+   * The game being analyzed.
+   */
+  private GameJournal myJournal;
+
+  /**
+   * The current position:  the local men, the local
+   * kings, the remote men, and the remote kings.
+   */
+  private int[] myPosition = new int[4];
+
+  /**
+   * The statistics of the game being analyzed (see
+   * GameAnalyzer for the indices).
+   */
+  private int[] myStats = new int[GameAnalyzer.STAT_COUNT];
+
+  /**
+   * The biggest loss in the game being analyzed.
+   */
+  private int myWorstLoss;
+
+  /**
+   * The index of the hop with the biggest loss.
+   */
+  private int myWorstHop;
+
+  //--------------------------------------------------------
+  //  lifecycle
+
+  /**
+   * Initialize the main data.
+   */
+  AnalysisWorker(GameAnalyzer analyzer, int depth, int margin) {
+    myAnalyzer = analyzer;
+    myDepth = depth;
+    myMargin = margin;
+  }
+
+  /**
+   * Sets the next game to analyze.
+   */
+  void setGame(int index, GameJournal journal) {
+    myGameIndex = index;
+    myJournal = journal;
+  }
+
+  /**
+   * Analyze games until there are none left.
+   */
+  public void run() {
+    try {
+      while(myAnalyzer.nextGame(this)) {
+        analyzeGame();
+      }
+    } finally {
+      myAnalyzer.workerFinished();
+    }
+  }
+
+  //--------------------------------------------------------
+  //  analysis
+
+  /**
+   * Replays the current game, analyzing every position,
+   * and reports the results.
+   */
+  private void analyzeGame() {
+    for(int i = 0; i < myStats.length; i++) {
+      myStats[i] = 0;
+    }
+    myWorstLoss = 0;
+    myWorstHop = -1;
+    // start each game with an empty table, so that the
+    // results don't depend on which worker gets the game:
+    myTable.clear();
+    StringBuffer opening = new StringBuffer();
+    int hopCount = myJournal.getHopCount();
+    myJournal.getPosition(0, myPosition);
+    int previous = 0;
+    for(int i = 0; i < hopCount; i++) {
+      int hop = myJournal.getHop(i);
+      int source = GameJournal.getSource(hop);
+      // a piece in the middle of a multiple jump has to
+      // keep jumping, so it's the only one that can move:
+      int continueSquare = -1;
+      if((i > 0) && ((previous & GameJournal.JUMP_FLAG) != 0)
+         && (GameJournal.isRemote(previous) == GameJournal.isRemote(hop))
+         && (GameJournal.getDestination(previous) == source)) {
+        continueSquare = source;
+      }
+      if(i < GameAnalyzer.OPENING_LENGTH) {
+        if(i > 0) {
+          opening.append(" ");
+        }
+        opening.append(source);
+        if((hop & GameJournal.JUMP_FLAG) != 0) {
+          opening.append("x");
+        } else {
+          opening.append("-");
+        }
+        opening.append(GameJournal.getDestination(hop));
+      }
+      analyzePosition(i, hop, continueSquare);
+      GameJournal.applyHop(myPosition, hop);
+      previous = hop;
+    }
+    int finalScore = CheckersEngine.evaluate(myPosition[0], myPosition[1],
+        myPosition[2], myPosition[3], true);
+    myAnalyzer.report(myGameIndex, hopCount, myStats, myWorstLoss,
+                      myWorstHop, finalScore, opening.toString());
+  }
+
+  /**
+   * Compares the hop that was played in the current
+   * position with the best move found by the search.
+   * @param index the index of the hop.
+   * @param hop the hop that was played.
+   * @param continueSquare the square of the piece that has
+   *        to keep jumping, or -1.
+   */
+  private void analyzePosition(int index, int hop, int continueSquare) {
+    myStats[GameAnalyzer.POSITIONS]++;
+    int side = 0;
+    if(GameJournal.isRemote(hop)) {
+      side = 2;
+    }
+    int men = myPosition[side];
+    int kings = myPosition[side + 1];
+    int oppMen = myPosition[2 - side];
+    int oppKings = myPosition[3 - side];
+    boolean towardTop = (side == 0);
+    CheckersEngine.generate(men, kings, oppMen, oppKings, towardTop,
+                            continueSquare, false, myMoves);
+    int played = -1;
+    for(int i = 0; i < myMoves.size(); i++) {
+      int move = myMoves.get(i);
+      if((MoveList.getSource(move) == GameJournal.getSource(hop))
+         && (MoveList.getDestination(move)
+             == GameJournal.getDestination(hop))) {
+        played = move;
+      }
+    }
+    // a forced move can't be a mistake (and a move that
+    // isn't legal can't be judged):
+    if((myMoves.size() < 2) || (played == -1)) {
+      return;
+    }
+    myStats[GameAnalyzer.DECISIONS]++;
+    int best = myEngine.findMoveToDepth(men, kings, oppMen, oppKings,
+                                        towardTop, continueSquare, myDepth);
+    int bestScore = myEngine.getScore();
+    int evaluation = CheckersEngine.evaluate(men, kings, oppMen, oppKings,
+                                             towardTop);
+    if((bestScore - evaluation >= myMargin)
+       || (evaluation - bestScore >= myMargin)) {
+      myStats[GameAnalyzer.TACTICAL]++;
+    }
+    if(played == best) {
+      return;
+    }
+    int loss = bestScore - myEngine.scoreMove(men, kings, oppMen, oppKings,
+        towardTop, continueSquare, played, myDepth);
+    if(loss <= 0) {
+      return;
+    }
+    myStats[GameAnalyzer.LOSS + side/2] += loss;
+    if(loss > myWorstLoss) {
+      myWorstLoss = loss;
+      myWorstHop = index;
+    }
+    if(loss >= myMargin) {
+      int pieceCount = CheckersGame.countSquares(men | kings | oppMen
+                                                 | oppKings);
+      int phase = 1;
+      if(pieceCount > EARLY_PIECE_COUNT) {
+        phase = 0;
+      } else if(pieceCount <= END_PIECE_COUNT) {
+        phase = 2;
+      }
+      myStats[GameAnalyzer.BLUNDERS
+              + (side/2)*GameAnalyzer.PHASE_NAMES.length + phase]++;
+    }
+  }
+
+}
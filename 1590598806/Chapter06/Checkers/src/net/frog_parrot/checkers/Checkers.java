@@ -3,12 +3,15 @@ package net.frog_parrot.checkers;
 import javax.microedition.midlet.*;
 import javax.microedition.lcdui.*;
 
+import net.frog_parrot.net.SMSManager;
+
 /**
  * This is the main class of the checkers game.
  *
  * @author Carol Hamer
  */
-public class Checkers extends MIDlet implements CommandListener {
+public class Checkers extends MIDlet
+    implements CommandListener, GameScreen {
 
   //-----------------------------------------------------
   //    game object fields
@@ -58,6 +61,20 @@ public class Checkers extends MIDlet implements CommandListener {
   private Command myTauntCommand = new Command("add message", 
       Command.SCREEN, 1);
 
+  /**
+   * The button to play against the computer instead of 
+   * inviting a remote player.
+   */
+  private Command myComputerCommand = new Command("play computer", 
+      Command.SCREEN, 1);
+
+  /**
+   * The button to ask the remote player for its board 
+   * when its turn seems to have been lost.
+   */
+  private Command myResyncCommand = new Command("resync", 
+      Command.SCREEN, 2);
+
   //-----------------------------------------------------
   //    initialization and data
 
@@ -70,14 +87,17 @@ public class Checkers extends MIDlet implements CommandListener {
       myCanvas = new CheckersCanvas(Display.getDisplay(this));
       myCanvas.addCommand(myExitCommand);
       myCanvas.addCommand(myTauntCommand);
+      myCanvas.addCommand(myResyncCommand);
       myCanvas.setCommandListener(this);
-      CheckersGame game = myCanvas.getGame();
-      myMoveManager = new MoveManager(this, myCanvas, game);
-      game.setMoveManager(myMoveManager);
       myTauntBox = new TextBox("message", null, 100, TextField.ANY);
       myTauntBox.addCommand(myOkCommand);
       myTauntBox.addCommand(myCancelCommand);
       myTauntBox.setCommandListener(this);
+      // the screens are all set up before the MoveManager,
+      // which may pick up a saved game (and even end it)
+      // right away:
+      CheckersGame game = myCanvas.getGame();
+      myMoveManager = new MoveManager(this, game, new SMSManager());
     } catch(Exception e) {
       // if there's an error during creation, display it as an alert.
       errorMsg(e);
@@ -105,6 +125,11 @@ public class Checkers extends MIDlet implements CommandListener {
       } catch(Exception e) {
         errorMsg(e);
       }
+      // a game that was picked up from where it was 
+      // left off goes straight to the board:
+      if(Display.getDisplay(this).getCurrent() == null) {
+        Display.getDisplay(this).setCurrent(myCanvas);
+      }
     }
   }
   
@@ -127,7 +152,7 @@ public class Checkers extends MIDlet implements CommandListener {
    * End the program now.
    */
   public void quit() {
-    try {
+    try { 
       destroyApp(false);
       notifyDestroyed();
     } catch (MIDletStateChangeException ex) {
@@ -161,6 +186,7 @@ public class Checkers extends MIDlet implements CommandListener {
                               + "of the remote player:");
         invitationForm.append(myPhoneNumberField);
         invitationForm.addCommand(myOkCommand);
+        invitationForm.addCommand(myComputerCommand);
         invitationForm.addCommand(myExitCommand);
         invitationForm.setCommandListener(this);
         Display.getDisplay(this).setCurrent(invitationForm);
@@ -184,9 +210,73 @@ public class Checkers extends MIDlet implements CommandListener {
       Display.getDisplay(this).setCurrent(myCanvas);  
     } else if(c == myTauntCommand) {
       Display.getDisplay(this).setCurrent(myTauntBox);      
+    } else if(c == myResyncCommand) {
+      myMoveManager.requestResync();
+    } else if(c == myComputerCommand) {
+      myPhoneNumberField = null;
+      myMoveManager.playComputer(getComputerTimeBudget(),
+                                 getComputerThreads());
+      Display.getDisplay(this).setCurrent(myCanvas);  
     }
   }
   
+  /**
+   * Gets the number of milliseconds the computer player 
+   * may think about each move.  This can be set with the 
+   * Computer-Time-Budget attribute in the jad file.
+   */
+  long getComputerTimeBudget() {
+    String budget = getAppProperty("Computer-Time-Budget");
+    if(budget != null) {
+      try {
+        return(Long.parseLong(budget.trim()));
+      } catch(NumberFormatException e) {
+        // if the attribute is garbled, use the default.
+      }
+    }
+    return(ComputerPlayer.DEFAULT_TIME_BUDGET);
+  }
+
+  /**
+   * Gets the number of threads the computer player may 
+   * search with.  This can be set with the 
+   * Computer-Threads attribute in the jad file.
+   */
+  int getComputerThreads() {
+    String threads = getAppProperty("Computer-Threads");
+    if(threads != null) {
+      try {
+        return(Integer.parseInt(threads.trim()));
+      } catch(NumberFormatException e) {
+        // if the attribute is garbled, use the default.
+      }
+    }
+    return(ComputerPlayer.DEFAULT_THREAD_COUNT);
+  }
+
+  //-------------------------------------------------------
+  //  board methods
+
+  /**
+   * Sets whether the board shows that the local player
+   * is waiting for the remote player.
+   */
+  public void setWaitScreen(boolean wait) {
+    if(myCanvas != null) {
+      myCanvas.setWaitScreen(wait);
+    }
+  }
+
+  /**
+   * Redraws the board and waits until it's drawn.
+   */
+  public void repaintBoard() {
+    if(myCanvas != null) {
+      myCanvas.repaint();
+      myCanvas.serviceRepaints();
+    }
+  }
+
   //-------------------------------------------------------
   //  message methods
 
@@ -237,7 +327,7 @@ public class Checkers extends MIDlet implements CommandListener {
   /**
    * Displays an error message alert if something goes wrong.
    */
-  void errorMsg(String msg) {
+  public void errorMsg(String msg) {
     Alert errorAlert = new Alert("error", 
                                  msg, null, AlertType.ERROR);
     errorAlert.setCommandListener(this);
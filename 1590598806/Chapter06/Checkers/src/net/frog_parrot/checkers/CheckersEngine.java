@@ -0,0 +1,751 @@
+package net.frog_parrot.checkers;
+
+/**
+ * This class chooses moves for a computer player.  It uses
+ * an iterative-deepening alpha-beta (negamax) search over
+ * the bitboards of CheckersGame, with a transposition
+ * table, jumps searched first, killer moves, detection
+ * of repeated positions, and a quiescence search that keeps
+ * following jumps after the nominal depth is reached
+ * so that the search never stops in the middle of an
+ * exchange.
+ *
+ * The position is passed down the search as plain ints
+ * (the moving side's men and kings, then the other side's
+ * men and kings) along with its Zobrist hash key, which
+ * is updated incrementally, so searching creates no objects.
+ */
+public class CheckersEngine {
+
+  //-------------------------------------------------------
+  //   static fields
+
+  /**
+   * A score larger than any real evaluation.
+   */
+  public static final int INFINITY = 100000;
+
+  /**
+   * The score for winning the game (minus the number of
+   * plies it takes, so that faster wins are preferred).
+   */
+  public static final int WIN = 50000;
+
+  /**
+   * The deepest the search is allowed to go,
+   * including the quiescence search.
+   */
+  public static final int MAX_PLY = 64;
+
+  /**
+   * The deepest nominal depth for iterative deepening.
+   */
+  public static final int MAX_DEPTH = 40;
+
+  /**
+   * The value of an uncrowned piece.
+   */
+  static final int MAN_VALUE = 100;
+
+  /**
+   * The value of a king.
+   */
+  static final int KING_VALUE = 150;
+
+  /**
+   * The bonus for a man that has crossed the middle
+   * of the board (for the side moving toward the top).
+   */
+  static final int ADVANCE_BONUS = 4;
+
+  /**
+   * The bonus for a man still guarding its own back row
+   * (which keeps the opponent from crowning there).
+   */
+  static final int BACK_ROW_BONUS = 6;
+
+  /**
+   * The upper half of the board.
+   */
+  static final int TOP_HALF = 0x0000FFFF;
+
+  /**
+   * The lower half of the board.
+   */
+  static final int BOTTOM_HALF = 0xFFFF0000;
+
+  /**
+   * The default size of the transposition table
+   * (2^12 entries = 64K bytes).
+   */
+  public static final int DEFAULT_TABLE_BITS = 12;
+
+  /**
+   * How many nodes to search between checks of the clock.
+   */
+  private static final int CLOCK_MASK = 1023;
+
+  //-------------------------------------------------------
+  //   instance fields
+
+  /**
+   * One move list for each ply of the search.
+   */
+  private MoveList[] myMoveLists = new MoveList[MAX_PLY + 1];
+
+  /**
+   * Two killer moves (quiet moves that caused a cutoff)
+   * for each ply.
+   */
+  private int[] myKillers = new int[2*(MAX_PLY + 1)];
+
+  /**
+   * The hash keys of the positions along the current
+   * line of play, to detect repetitions.
+   */
+  private long[] myPathKeys = new long[MAX_PLY + 1];
+
+  /**
+   * The cache of positions that have already been searched.
+   */
+  private TranspositionTable myTable;
+
+  /**
+   * The exact results of the positions with few pieces,
+   * or null if there are none.
+   */
+  private EndgameDatabase myEndgames;
+
+  /**
+   * The time (in milliseconds) when the current search
+   * has to stop.
+   */
+  private long myDeadline;
+
+  /**
+   * Set when the search has run out of time.
+   */
+  private boolean myIsAborted;
+
+  /**
+   * Set by another thread to make the current search
+   * stop as soon as possible.
+   */
+  private volatile boolean myIsStopped;
+
+  /**
+   * The number of positions visited by the last search.
+   */
+  private int myNodes;
+
+  /**
+   * The deepest iteration that the last search completed.
+   */
+  private int myCompletedDepth;
+
+  /**
+   * The score of the move returned by the last search,
+   * from the point of view of the side that moved.
+   */
+  private int myScore;
+
+  //-------------------------------------------------------
+  //   initialization and data
+
+  /**
+   * Allocates the search tables once, with a transposition
+   * table of the default size.
+   */
+  public CheckersEngine() {
+    this(new TranspositionTable(DEFAULT_TABLE_BITS));
+  }
+
+  /**
+   * Allocates the search tables once.
+   * @param table the transposition table to use.
+   */
+  public CheckersEngine(TranspositionTable table) {
+    myTable = table;
+    for(int i = 0; i < myMoveLists.length; i++) {
+      myMoveLists[i] = new MoveList();
+    }
+  }
+
+  /**
+   * Sets the endgame database to consult during the search.
+   * @param endgames the database or null for none.
+   */
+  public void setEndgameDatabase(EndgameDatabase endgames) {
+    myEndgames = endgames;
+  }
+
+  /**
+   * @return the number of positions visited by the last search.
+   */
+  public int getNodes() {
+    return(myNodes);
+  }
+
+  /**
+   * @return the deepest iteration the last search completed.
+   */
+  public int getCompletedDepth() {
+    return(myCompletedDepth);
+  }
+
+  /**
+   * @return the score of the last move found.
+   */
+  public int getScore() {
+    return(myScore);
+  }
+
+  //-------------------------------------------------------
+  //   search
+
+  /**
+   * Finds the best move for the side to move.
+   * @param men the moving side's uncrowned pieces.
+   * @param kings the moving side's kings.
+   * @param oppMen the other side's uncrowned pieces.
+   * @param oppKings the other side's kings.
+   * @param towardTop whether the moving side's men move toward
+   *        the top of the board (the local player's direction).
+   * @param continueSquare the square of a piece that has
+   *        just jumped and must keep jumping, or -1 if this
+   *        is the start of a turn.
+   * @param timeBudget the number of milliseconds to search.
+   * @return the packed move (see MoveList) or -1 if the
+   *         side to move has no moves.
+   */
+  public int findMove(int men, int kings, int oppMen, int oppKings,
+                      boolean towardTop, int continueSquare,
+                      long timeBudget) {
+    myTable.newSearch();
+    return(search(men, kings, oppMen, oppKings, towardTop, continueSquare,
+                  System.currentTimeMillis() + timeBudget, 1));
+  }
+
+  /**
+   * Finds the best move for the side to move by searching
+   * to a fixed depth, however long that takes.  (This is 
+   * for analyzing games rather than playing them.)
+   * @param depth the deepest iteration to search.
+   * @return the packed move or -1 if the side to move has 
+   *         no moves.  If there's only one move, it isn't
+   *         searched, so it has no score.
+   */
+  public int findMoveToDepth(int men, int kings, int oppMen, int oppKings,
+                             boolean towardTop, int continueSquare,
+                             int depth) {
+    myTable.newSearch();
+    return(search(men, kings, oppMen, oppKings, towardTop, continueSquare,
+                  Long.MAX_VALUE, 1, depth));
+  }
+
+  /**
+   * Searches one given move to a fixed depth.  Called 
+   * after findMoveToDepth on the same position, this 
+   * reuses what that search stored in the table.
+   * @param move the packed move (see MoveList).
+   * @param depth the depth to search the move to.
+   * @return the score from the point of view of the side
+   *         that makes the move.
+   */
+  public int scoreMove(int men, int kings, int oppMen, int oppKings,
+                       boolean towardTop, int continueSquare, int move,
+                       int depth) {
+    myDeadline = Long.MAX_VALUE;
+    myIsAborted = false;
+    long key = getHashKey(men, kings, oppMen, oppKings, towardTop,
+                          continueSquare);
+    myPathKeys[0] = key;
+    return(searchMove(men, kings, oppMen, oppKings, towardTop,
+                      continueSquare, key, move, depth,
+                      -INFINITY, INFINITY, 0));
+  }
+
+  /**
+   * Tells the search to stop (from another thread).  The
+   * search in progress returns the best move of the
+   * deepest iteration it completed.
+   */
+  public void stop() {
+    myIsStopped = true;
+  }
+
+  /**
+   * Clears the stop signal so that this engine can search
+   * again.
+   */
+  void resetStop() {
+    myIsStopped = false;
+  }
+
+  /**
+   * Runs the iterative-deepening search.  Unlike findMove,
+   * this doesn't start a new age in the transposition table,
+   * so several engines sharing a table can search the
+   * same position at once.
+   * @param deadline the time when the search has to stop.
+   * @param firstDepth the depth of the first iteration.
+   * @return the packed move or -1 if there are no moves.
+   */
+  int search(int men, int kings, int oppMen, int oppKings,
+             boolean towardTop, int continueSquare,
+             long deadline, int firstDepth) {
+    return(search(men, kings, oppMen, oppKings, towardTop, continueSquare,
+                  deadline, firstDepth, MAX_DEPTH));
+  }
+
+  /**
+   * Runs the iterative-deepening search.
+   * @param deadline the time when the search has to stop.
+   * @param firstDepth the depth of the first iteration.
+   * @param lastDepth the depth of the last iteration.
+   * @return the packed move or -1 if there are no moves.
+   */
+  private int search(int men, int kings, int oppMen, int oppKings,
+                     boolean towardTop, int continueSquare,
+                     long deadline, int firstDepth, int lastDepth) {
+    myDeadline = deadline;
+    myIsAborted = false;
+    myNodes = 0;
+    myCompletedDepth = 0;
+    myScore = 0;
+    for(int i = 0; i < myKillers.length; i++) {
+      myKillers[i] = -1;
+    }
+    MoveList rootMoves = myMoveLists[0];
+    generate(men, kings, oppMen, oppKings, towardTop,
+             continueSquare, false, rootMoves);
+    if(rootMoves.size() == 0) {
+      return(-1);
+    }
+    int bestMove = rootMoves.get(0);
+    // if there's no choice, there's nothing to search:
+    if(rootMoves.size() == 1) {
+      return(bestMove);
+    }
+    long key = getHashKey(men, kings, oppMen, oppKings, towardTop,
+                          continueSquare);
+    myPathKeys[0] = key;
+    // start with the move that an earlier search liked:
+    int tableMove = TranspositionTable.getMove(myTable.probe(key));
+    if(rootMoves.indexOf(tableMove) != -1) {
+      bestMove = tableMove;
+    }
+    for(int depth = firstDepth; depth <= lastDepth; depth++) {
+      int alpha = -INFINITY;
+      int iterationBest = -1;
+      // search the best move of the last iteration first:
+      rootMoves.swap(0, rootMoves.indexOf(bestMove));
+      for(int i = 0; i < rootMoves.size(); i++) {
+        int move = rootMoves.get(i);
+        int score = searchMove(men, kings, oppMen, oppKings, towardTop,
+                               continueSquare, key, move, depth,
+                               alpha, INFINITY, 0);
+        if(myIsAborted) {
+          break;
+        }
+        if(score > alpha) {
+          alpha = score;
+          iterationBest = move;
+        }
+      }
+      if(myIsAborted) {
+        break;
+      }
+      bestMove = iterationBest;
+      myScore = alpha;
+      myCompletedDepth = depth;
+      myTable.store(key, depth, TranspositionTable.EXACT,
+                    alpha, bestMove);
+      // there's no point in searching deeper once
+      // a forced win or loss has been found:
+      if((alpha > WIN - MAX_PLY) || (alpha < -WIN + MAX_PLY)) {
+        break;
+      }
+    }
+    return(bestMove);
+  }
+
+  /**
+   * Plays the given move and searches the resulting
+   * position.
+   * @param continueSquare the piece that is in the middle
+   *        of a multiple jump (or -1), for the hash key.
+   * @param key the hash key of the position before the move.
+   * @return the score from the point of view of the side
+   *         that made the move.
+   */
+  private int searchMove(int men, int kings, int oppMen, int oppKings,
+                         boolean towardTop, int continueSquare,
+                         long key, int move, int depth,
+                         int alpha, int beta, int ply) {
+    int sourceSquare = MoveList.getSource(move);
+    int destinationSquare = MoveList.getDestination(move);
+    int source = 1 << sourceSquare;
+    int destination = 1 << destinationSquare;
+    int fromTo = source | destination;
+    int manIndex = CheckersGame.SQUARE_COUNT*CheckersGame.REMOTE_MAN;
+    if(towardTop) {
+      manIndex = CheckersGame.SQUARE_COUNT*CheckersGame.LOCAL_MAN;
+    }
+    int kingIndex = manIndex + CheckersGame.SQUARE_COUNT;
+    if(continueSquare != -1) {
+      key ^= CheckersGame.ZOBRIST_JUMPING[continueSquare];
+    }
+    if((kings & source) != 0) {
+      kings ^= fromTo;
+      key ^= CheckersGame.ZOBRIST_PIECES[kingIndex + sourceSquare]
+          ^ CheckersGame.ZOBRIST_PIECES[kingIndex + destinationSquare];
+    } else {
+      men ^= fromTo;
+      key ^= CheckersGame.ZOBRIST_PIECES[manIndex + sourceSquare]
+          ^ CheckersGame.ZOBRIST_PIECES[manIndex + destinationSquare];
+      // crown the piece if it reached the far side:
+      int crownRow = CheckersGame.BOTTOM_ROW;
+      if(towardTop) {
+        crownRow = CheckersGame.TOP_ROW;
+      }
+      if((destination & crownRow) != 0) {
+        men ^= destination;
+        kings |= destination;
+        key ^= CheckersGame.ZOBRIST_PIECES[manIndex + destinationSquare]
+            ^ CheckersGame.ZOBRIST_PIECES[kingIndex + destinationSquare];
+      }
+    }
+    int captured = MoveList.getCaptured(move);
+    if(captured != -1) {
+      // the other side's pieces are in the other half
+      // of the key table:
+      int oppIndex = 2*CheckersGame.SQUARE_COUNT - manIndex;
+      if((oppKings & (1 << captured)) != 0) {
+        oppIndex += CheckersGame.SQUARE_COUNT;
+      }
+      key ^= CheckersGame.ZOBRIST_PIECES[oppIndex + captured];
+      oppMen &= ~(1 << captured);
+      oppKings &= ~(1 << captured);
+      // a piece that has jumped keeps jumping if it can,
+      // so the same side moves again:
+      if(canJump(men & destination, kings & destination,
+                 oppMen | oppKings, ~(men | kings | oppMen | oppKings),
+                 towardTop)) {
+        return(negamax(men, kings, oppMen, oppKings, towardTop,
+                       destinationSquare,
+                       key ^ CheckersGame.ZOBRIST_JUMPING[destinationSquare],
+                       depth, alpha, beta, ply + 1));
+      }
+    }
+    return(-negamax(oppMen, oppKings, men, kings, ! towardTop, -1,
+                    key ^ CheckersGame.ZOBRIST_REMOTE_TO_MOVE,
+                    depth - 1, -beta, -alpha, ply + 1));
+  }
+
+  /**
+   * The main alpha-beta search.
+   * @return the score from the point of view of the side
+   *         to move.
+   */
+  private int negamax(int men, int kings, int oppMen, int oppKings,
+                      boolean towardTop, int continueSquare, long key,
+                      int depth, int alpha, int beta, int ply) {
+    if(checkClock()) {
+      return(0);
+    }
+    if((depth <= 0) || (ply >= MAX_PLY)) {
+      return(quiesce(men, kings, oppMen, oppKings, towardTop,
+                     continueSquare, key, alpha, beta, ply));
+    }
+    // a position that repeats one from earlier in
+    // this line of play is a draw:
+    myPathKeys[ply] = key;
+    for(int i = ply - 2; i >= 0; i--) {
+      if(myPathKeys[i] == key) {
+        return(0);
+      }
+    }
+    // the endgame database knows the exact result:
+    if((myEndgames != null) && (continueSquare == -1)) {
+      int result = myEndgames.probe(men, kings, oppMen, oppKings,
+                                    towardTop);
+      if(result != -1) {
+        return(getEndgameScore(result));
+      }
+    }
+    int tableMove = -1;
+    long entry = myTable.probe(key);
+    if(entry != 0) {
+      tableMove = TranspositionTable.getMove(entry);
+      if(TranspositionTable.getDepth(entry) >= depth) {
+        int score = scoreFromTable(TranspositionTable.getScore(entry), ply);
+        int bound = TranspositionTable.getBound(entry);
+        if((bound == TranspositionTable.EXACT)
+           || ((bound == TranspositionTable.LOWER_BOUND)
+               && (score >= beta))
+           || ((bound == TranspositionTable.UPPER_BOUND)
+               && (score <= alpha))) {
+          return(score);
+        }
+      }
+    }
+    MoveList moves = myMoveLists[ply];
+    generate(men, kings, oppMen, oppKings, towardTop,
+             continueSquare, false, moves);
+    // a player who can't move loses:
+    if(moves.size() == 0) {
+      return(-WIN + ply);
+    }
+    orderMoves(moves, tableMove, ply);
+    int originalAlpha = alpha;
+    int bestMove = -1;
+    for(int i = 0; i < moves.size(); i++) {
+      int move = moves.get(i);
+      int score = searchMove(men, kings, oppMen, oppKings, towardTop,
+                             continueSquare, key, move, depth,
+                             alpha, beta, ply);
+      if(myIsAborted) {
+        return(0);
+      }
+      if(score > alpha) {
+        alpha = score;
+        bestMove = move;
+        if(alpha >= beta) {
+          storeKiller(move, ply);
+          break;
+        }
+      }
+    }
+    int bound = TranspositionTable.EXACT;
+    if(alpha >= beta) {
+      bound = TranspositionTable.LOWER_BOUND;
+    } else if(alpha == originalAlpha) {
+      bound = TranspositionTable.UPPER_BOUND;
+    }
+    myTable.store(key, depth, bound, scoreToTable(alpha, ply), bestMove);
+    return(alpha);
+  }
+
+  /**
+   * Keeps searching the jumps (only) once the nominal
+   * depth is reached.  A side that isn't in the middle
+   * of a multiple jump may also choose not to jump, so
+   * the static evaluation is a lower bound.
+   */
+  private int quiesce(int men, int kings, int oppMen, int oppKings,
+                      boolean towardTop, int continueSquare, long key,
+                      int alpha, int beta, int ply) {
+    if(ply >= MAX_PLY) {
+      return(evaluate(men, kings, oppMen, oppKings, towardTop));
+    }
+    if(continueSquare == -1) {
+      int standPat = evaluate(men, kings, oppMen, oppKings, towardTop);
+      if(standPat >= beta) {
+        return(standPat);
+      }
+      if(standPat > alpha) {
+        alpha = standPat;
+      }
+    }
+    MoveList moves = myMoveLists[ply];
+    generate(men, kings, oppMen, oppKings, towardTop,
+             continueSquare, true, moves);
+    for(int i = 0; i < moves.size(); i++) {
+      int score = searchMove(men, kings, oppMen, oppKings, towardTop,
+                             continueSquare, key, moves.get(i), 0,
+                             alpha, beta, ply);
+      if(myIsAborted) {
+        return(0);
+      }
+      if(score > alpha) {
+        alpha = score;
+        if(alpha >= beta) {
+          break;
+        }
+      }
+    }
+    return(alpha);
+  }
+
+  //-------------------------------------------------------
+  //   evaluation
+
+  /**
+   * The static evaluation of a position from the point
+   * of view of the side to move.
+   */
+  static int evaluate(int men, int kings, int oppMen, int oppKings,
+                      boolean towardTop) {
+    int score = MAN_VALUE*(CheckersGame.countSquares(men)
+                           - CheckersGame.countSquares(oppMen))
+        + KING_VALUE*(CheckersGame.countSquares(kings)
+                      - CheckersGame.countSquares(oppKings));
+    // men are worth a bit more as they get closer to
+    // being crowned, and while they guard their own back row:
+    if(towardTop) {
+      score += ADVANCE_BONUS*(CheckersGame.countSquares(men & TOP_HALF)
+          - CheckersGame.countSquares(oppMen & BOTTOM_HALF));
+      score += BACK_ROW_BONUS*(
+          CheckersGame.countSquares(men & CheckersGame.BOTTOM_ROW)
+          - CheckersGame.countSquares(oppMen & CheckersGame.TOP_ROW));
+    } else {
+      score += ADVANCE_BONUS*(CheckersGame.countSquares(men & BOTTOM_HALF)
+          - CheckersGame.countSquares(oppMen & TOP_HALF));
+      score += BACK_ROW_BONUS*(
+          CheckersGame.countSquares(men & CheckersGame.TOP_ROW)
+          - CheckersGame.countSquares(oppMen & CheckersGame.BOTTOM_ROW));
+    }
+    return(score);
+  }
+
+  //-------------------------------------------------------
+  //   utilities
+
+  /**
+   * Fills the list with the moves of the side to move,
+   * or with the further jumps of the piece that is in the
+   * middle of a multiple jump.
+   */
+  static void generate(int men, int kings, int oppMen,
+                       int oppKings, boolean towardTop,
+                       int continueSquare, boolean jumpsOnly,
+                       MoveList toFill) {
+    int empty = ~(men | kings | oppMen | oppKings);
+    if(continueSquare != -1) {
+      int bit = 1 << continueSquare;
+      men &= bit;
+      kings &= bit;
+      jumpsOnly = true;
+    }
+    CheckersGame.getMoves(men, kings, oppMen | oppKings, empty,
+                          towardTop, jumpsOnly, toFill);
+  }
+
+  /**
+   * Computes the hash key of a position for the search.
+   */
+  static long getHashKey(int men, int kings, int oppMen, int oppKings,
+                         boolean towardTop, int continueSquare) {
+    long key;
+    if(towardTop) {
+      key = CheckersGame.computeHashKey(men, kings, oppMen, oppKings);
+    } else {
+      key = CheckersGame.computeHashKey(oppMen, oppKings, men, kings)
+          ^ CheckersGame.ZOBRIST_REMOTE_TO_MOVE;
+    }
+    if(continueSquare != -1) {
+      key ^= CheckersGame.ZOBRIST_JUMPING[continueSquare];
+    }
+    return(key);
+  }
+
+  /**
+   * Converts an endgame database entry into a score.  Wins
+   * and losses rank below the ones found by the search
+   * (which are counted from the root) but far above any
+   * material advantage, and quicker wins score higher.
+   */
+  private static int getEndgameScore(int result) {
+    if(EndgameDatabase.isWin(result)) {
+      return(WIN - 2*MAX_PLY - EndgameDatabase.getDistance(result));
+    } else if(EndgameDatabase.isLoss(result)) {
+      return(-WIN + 2*MAX_PLY + EndgameDatabase.getDistance(result));
+    }
+    return(0);
+  }
+
+  /**
+   * Converts a win or loss score so that it counts the
+   * plies from the stored position rather than from the root.
+   */
+  private static int scoreToTable(int score, int ply) {
+    if(score > WIN - 2*MAX_PLY) {
+      return(score + ply);
+    } else if(score < -WIN + 2*MAX_PLY) {
+      return(score - ply);
+    }
+    return(score);
+  }
+
+  /**
+   * Converts a stored win or loss score back so that it
+   * counts the plies from the root.
+   */
+  private static int scoreFromTable(int score, int ply) {
+    if(score > WIN - 2*MAX_PLY) {
+      return(score - ply);
+    } else if(score < -WIN + 2*MAX_PLY) {
+      return(score + ply);
+    }
+    return(score);
+  }
+
+  /**
+   * Tells whether any of the given pieces can jump.
+   */
+  static boolean canJump(int men, int kings, int opponents,
+                         int empty, boolean towardTop) {
+    int forward = 0;
+    if(! towardTop) {
+      forward = 2;
+    }
+    for(int i = 0; i < 4; i++) {
+      int pieces = kings;
+      if((i & 2) == forward) {
+        pieces |= men;
+      }
+      if((CheckersGame.shift(CheckersGame.shift(pieces, i) & opponents, i)
+          & empty) != 0) {
+        return(true);
+      }
+    }
+    return(false);
+  }
+
+  /**
+   * Counts a node and checks whether time is up.
+   */
+  private boolean checkClock() {
+    myNodes++;
+    if(((myNodes & CLOCK_MASK) == 0)
+       && (myIsStopped || (System.currentTimeMillis() > myDeadline))) {
+      myIsAborted = true;
+    }
+    return(myIsAborted);
+  }
+
+  /**
+   * Puts the move from the transposition table first,
+   * then the jumps, then the killer moves of this ply.
+   */
+  private void orderMoves(MoveList moves, int tableMove, int ply) {
+    int front = 0;
+    int index = moves.indexOf(tableMove);
+    if(index != -1) {
+      moves.swap(0, index);
+      front = 1;
+    }
+    while((front < moves.size()) && MoveList.isJump(moves.get(front))) {
+      front++;
+    }
+    for(int i = 0; i < 2; i++) {
+      index = moves.indexOf(myKillers[2*ply + i]);
+      if(index >= front) {
+        moves.swap(front, index);
+        front++;
+      }
+    }
+  }
+
+  /**
+   * Remembers a quiet move that caused a cutoff.
+   */
+  private void storeKiller(int move, int ply) {
+    if((! MoveList.isJump(move)) && (myKillers[2*ply] != move)) {
+      myKillers[2*ply + 1] = myKillers[2*ply];
+      myKillers[2*ply] = move;
+    }
+  }
+
+}
@@ -0,0 +1,217 @@
+package net.frog_parrot.checkers;
+
+import javax.microedition.rms.*;
+
+import net.frog_parrot.util.WorkQueue;
+
+/**
+ * This class keeps the checkpoint of the game in progress
+ * (see MoveManager) in one record, so that if the
+ * application is shut down in the middle of a game, the
+ * game can be picked up again with a single record read.
+ *
+ * Writing to the record store can be slow, so the
+ * checkpoints are written behind:  save hands the record
+ * to a worker thread and returns at once.  If several
+ * checkpoints are saved before the worker gets to them,
+ * only the last one is written.
+ */
+class CheckpointStore implements Runnable {
+
+  //---------------------------------------------------------
+  //   static fields
+
+  /**
+   * The name of the datastore.
+   */
+  public static final String STORE = "CheckersCheckpoint";
+
+  //---------------------------------------------------------
+  //   instance fields
+
+  /**
+   * The worker thread that writes the checkpoints.
+   */
+  private WorkQueue myQueue = new WorkQueue(1);
+
+  /**
+   * The checkpoint waiting to be written (null to
+   * delete the checkpoint).
+   */
+  private byte[] myPending;
+
+  /**
+   * Whether there's a checkpoint waiting to be written.
+   */
+  private boolean myHasPending;
+
+  /**
+   * Whether the worker has been handed a write that it
+   * hasn't started yet.
+   */
+  private boolean myIsQueued;
+
+  /**
+   * Whether the store has been shut down (after which
+   * nothing more is saved).
+   */
+  private boolean myIsShutDown;
+
+  /**
+   * The lock that keeps the writes in order.  (It's held
+   * from taking the pending checkpoint until it's
+   * written, so an older checkpoint can't be written
+   * over a newer one.)
+   */
+  private Object myWriteLock = new Object();
+
+  //---------------------------------------------------------
+  //   lifecycle
+
+  /**
+   * Start the worker thread.
+   */
+  CheckpointStore() {
+    myQueue.start();
+  }
+
+  /**
+   * Write the checkpoint that is waiting (if any) right
+   * away, then stop the worker thread.  This is called
+   * when the application is shut down, since the worker
+   * might not get the chance to write it.
+   */
+  void shutDown() {
+    synchronized(this) {
+      myIsShutDown = true;
+    }
+    writePending();
+    myQueue.shutDown();
+  }
+
+  //---------------------------------------------------------
+  //   business methods
+
+  /**
+   * Reads the checkpoint.
+   * @return the record or null if there is no checkpoint.
+   */
+  static byte[] load() {
+    byte[] retVal = null;
+    RecordStore store = null;
+    try {
+      // if the record store does not yet exist, we
+      // send "false" so it won't bother to create it.
+      store = RecordStore.openRecordStore(STORE, false);
+      if((store != null) && (store.getNumRecords() > 0)) {
+        retVal = store.getRecord(1);
+      }
+    } catch(Exception e) {
+      // if data retrieval fails, the game just starts
+      // over as usual.
+    } finally {
+      try {
+        store.closeRecordStore();
+      } catch(Exception e) {
+        // if the record store is open this shouldn't throw.
+      }
+    }
+    return(retVal);
+  }
+
+  /**
+   * Replaces the checkpoint (once the worker gets to it).
+   */
+  synchronized void save(byte[] record) {
+    if(myIsShutDown) {
+      return;
+    }
+    myPending = record;
+    myHasPending = true;
+    if(! myIsQueued) {
+      myIsQueued = true;
+      myQueue.execute(this);
+    }
+  }
+
+  /**
+   * Deletes the checkpoint (once the worker gets to it),
+   * because there's no game to pick up again.
+   */
+  void clear() {
+    save(null);
+  }
+
+  /**
+   * Write the checkpoint that is waiting.  This is run
+   * by the worker thread.
+   */
+  public void run() {
+    synchronized(this) {
+      myIsQueued = false;
+    }
+    writePending();
+  }
+
+  /**
+   * Write the checkpoint that is waiting (if any).
+   */
+  private void writePending() {
+    synchronized(myWriteLock) {
+      byte[] record;
+      synchronized(this) {
+        if(! myHasPending) {
+          return;
+        }
+        record = myPending;
+        myPending = null;
+        myHasPending = false;
+      }
+      if(record == null) {
+        delete();
+      } else {
+        write(record);
+      }
+    }
+  }
+
+  /**
+   * Replaces the stored record.
+   */
+  private static void write(byte[] record) {
+    RecordStore store = null;
+    try {
+      // if the record store does not yet exist, the second
+      // arg "true" tells it to create.
+      store = RecordStore.openRecordStore(STORE, true);
+      if(store.getNumRecords() > 0) {
+        store.setRecord(1, record, 0, record.length);
+      } else {
+        store.addRecord(record, 0, record.length);
+      }
+    } catch(Exception e) {
+      // if data storage fails, the game can't be picked
+      // up again, but it can still be played, so we
+      // just skip it and move on.
+    } finally {
+      try {
+        store.closeRecordStore();
+      } catch(Exception e) {
+        // if the record store is open this shouldn't throw.
+      }
+    }
+  }
+
+  /**
+   * Deletes the stored record.
+   */
+  private static void delete() {
+    try {
+      RecordStore.deleteRecordStore(STORE);
+    } catch(Exception e) {
+      // if the record store doesn't exist, there's
+      // nothing to delete.
+    }
+  }
+
+}
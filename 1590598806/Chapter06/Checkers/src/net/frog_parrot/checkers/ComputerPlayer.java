@@ -0,0 +1,255 @@
+package net.frog_parrot.checkers;
+
+import java.io.*;
+
+/**
+ * This class lets the handset itself play the part of
+ * the remote player.  It waits (on its own thread) for
+ * the local player to finish a turn, then uses a
+ * CheckersEngine to choose its moves and hands them to
+ * the MoveManager exactly as the network code does:
+ * one call to receiveRemoteMove per hop, then
+ * endRemoteTurn.
+ *
+ * The MoveManager hands over the board when the turn
+ * starts, and the computer keeps its own copy up to date
+ * as it plays its hops, since the MoveManager applies
+ * them to the game logic later, on its own thread.
+ */
+public class ComputerPlayer implements Runnable {
+
+  //--------------------------------------------------------
+  //  static fields
+
+  /**
+   * The default number of milliseconds to think about
+   * each move.
+   */
+  public static final long DEFAULT_TIME_BUDGET = 2000;
+
+  /**
+   * The default number of threads to think with.  (A
+   * handset usually has only one core.)
+   */
+  public static final int DEFAULT_THREAD_COUNT = 1;
+
+  /**
+   * The message sent when the computer has no moves left.
+   */
+  public static final String WIN_TAUNT = "You Win!";
+
+  /**
+   * The resource holding the endgame database (built with
+   * BuildEndgames).  The game works without it.
+   */
+  public static final String ENDGAME_RESOURCE = "/endgame.dat";
+
+  //--------------------------------------------------------
+  //  instance fields
+
+  /**
+   * The class that directs the moves to the game logic.
+   */
+  private MoveManager myManager;
+
+  /**
+   * The search that chooses the moves.
+   */
+  private ParallelSearch mySearch;
+
+  /**
+   * How many milliseconds to think about each move.
+   */
+  private long myTimeBudget;
+
+  /**
+   * Whether it's the computer's turn to move.
+   */
+  private boolean myIsTurn;
+
+  /**
+   * Whether it's time to clean up.
+   */
+  private boolean myShouldStop;
+
+  /**
+   * The pieces at the start of the computer's turn, from
+   * the computer's point of view:  its own pieces are the
+   * remote player's, which move toward the bottom.
+   */
+  private int myMen;
+  private int myKings;
+  private int myOppMen;
+  private int myOppKings;
+
+  /**
+   * The move data for one hop, in the remote player's
+   * coordinates.  (Reused for every hop.)
+   */
+  private byte[] myMoveData = new byte[4];
+
+  //--------------------------------------------------------
+  //  lifecycle
+
+  /**
+   * Set the handles to the other game objects.
+   * @param timeBudget the number of milliseconds to think
+   *        about each move.
+   * @param threadCount the number of threads to think with.
+   */
+  public ComputerPlayer(MoveManager manager, long timeBudget,
+                        int threadCount) {
+    myManager = manager;
+    myTimeBudget = timeBudget;
+    mySearch = new ParallelSearch(threadCount,
+                                  CheckersEngine.DEFAULT_TABLE_BITS);
+  }
+
+  /**
+   * Start the thread that waits for the computer's turns.
+   */
+  public void start() {
+    Thread thread = new Thread(this);
+    thread.start();
+  }
+
+  /**
+   * Signal that the local player's turn is over.
+   * @param localMen the local player's men after the turn.
+   * @param localKings the local player's kings.
+   * @param remoteMen the computer's men.
+   * @param remoteKings the computer's kings.
+   */
+  public synchronized void startTurn(int localMen, int localKings,
+                                     int remoteMen, int remoteKings) {
+    myMen = remoteMen;
+    myKings = remoteKings;
+    myOppMen = localMen;
+    myOppKings = localKings;
+    myIsTurn = true;
+    notify();
+  }
+
+  /**
+   * Set this thread to die.
+   */
+  public synchronized void shutDown() {
+    myShouldStop = true;
+    mySearch.shutDown();
+    notify();
+  }
+
+  /**
+   * Wait for each turn, then play it.
+   */
+  public void run() {
+    loadEndgames();
+    while(true) {
+      int men;
+      int kings;
+      int oppMen;
+      int oppKings;
+      synchronized(this) {
+        while((! myIsTurn) && (! myShouldStop)) {
+          try {
+            wait();
+          } catch(InterruptedException e) {
+          }
+        }
+        if(myShouldStop) {
+          return;
+        }
+        myIsTurn = false;
+        men = myMen;
+        kings = myKings;
+        oppMen = myOppMen;
+        oppKings = myOppKings;
+      }
+      playTurn(men, kings, oppMen, oppKings);
+    }
+  }
+
+  /**
+   * Read the endgame database if the jar has one.
+   */
+  private void loadEndgames() {
+    InputStream stream = getClass().getResourceAsStream(ENDGAME_RESOURCE);
+    if(stream == null) {
+      return;
+    }
+    try {
+      mySearch.setEndgameDatabase(EndgameDatabase.read(stream));
+    } catch(IOException e) {
+      // without the database, the computer just
+      // searches the endgames like any other position.
+    } finally {
+      try {
+        stream.close();
+      } catch(IOException e) {
+      }
+    }
+  }
+
+  //--------------------------------------------------------
+  //  moving
+
+  /**
+   * Choose and send the moves for one turn, including
+   * any further jumps.  The pieces are updated after each
+   * hop, so the search for the next jump sees the board
+   * as it is after the hops already sent.
+   */
+  private void playTurn(int men, int kings, int oppMen, int oppKings) {
+    int continueSquare = -1;
+    while(! myShouldStop) {
+      // the computer plays the remote side, whose men
+      // move toward the bottom of the board:
+      int move = mySearch.findMove(men, kings, oppMen, oppKings, false,
+                                   continueSquare, myTimeBudget);
+      if(move == -1) {
+        if(continueSquare == -1) {
+          // no moves at all, so the computer has lost:
+          myManager.receiveGameOver(WIN_TAUNT);
+          return;
+        }
+        // no more jumps, so the turn is over:
+        break;
+      }
+      // translate the move into the remote player's
+      // coordinates (CheckersGame inverts them again):
+      int source = MoveList.getSource(move);
+      int destination = MoveList.getDestination(move);
+      int fromTo = (1 << source) | (1 << destination);
+      if((kings & fromTo) != 0) {
+        kings ^= fromTo;
+      } else {
+        men ^= fromTo;
+        // crown the piece if it reached the far side:
+        if(((1 << destination) & CheckersGame.BOTTOM_ROW) != 0) {
+          men ^= 1 << destination;
+          kings |= 1 << destination;
+        }
+      }
+      int captured = MoveList.getCaptured(move);
+      if(captured != -1) {
+        oppMen &= ~(1 << captured);
+        oppKings &= ~(1 << captured);
+      }
+      myMoveData[0] = (byte)(CheckersGame.X_LENGTH_MINUS_1 - (source & 3));
+      myMoveData[1] = (byte)(CheckersGame.Y_LENGTH_MINUS_1 - (source >> 2));
+      myMoveData[2]
+          = (byte)(CheckersGame.X_LENGTH_MINUS_1 - (destination & 3));
+      myMoveData[3]
+          = (byte)(CheckersGame.Y_LENGTH_MINUS_1 - (destination >> 2));
+      myManager.receiveRemoteMove(myMoveData);
+      if(captured == -1) {
+        break;
+      }
+      continueSquare = destination;
+    }
+    if(! myShouldStop) {
+      myManager.endRemoteTurn(null);
+    }
+  }
+
+}
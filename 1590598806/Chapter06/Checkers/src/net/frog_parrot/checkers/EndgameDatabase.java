@@ -0,0 +1,440 @@
+package net.frog_parrot.checkers;
+
+import java.io.*;
+
+/**
+ * This class holds the exact results of the positions
+ * with only a few pieces left on the board, so the
+ * computer player doesn't need to search them.
+ *
+ * The tables are built by retrograde analysis:  first the
+ * positions where the side to move has no moves are marked
+ * as lost, then the positions that can reach a lost position
+ * in one turn are marked as won, then the positions where
+ * every turn leads to a won position are marked as lost,
+ * and so on until nothing changes.  The positions that
+ * are never marked are draws.  Building the tables takes
+ * too long for a handset, so they're built on a desktop
+ * machine (with BuildEndgames, in the desktop source tree),
+ * then placed in the jar as a resource and read with read().
+ *
+ * Every position is stored from the point of view of
+ * the side to move, turned so that its men move toward the
+ * top.  Each piece is coded as 2*square (+1 if it's a king),
+ * and the pieces of each side are indexed as a set of
+ * codes, so each table has C(64, a)*C(64, b) entries of
+ * one byte, where a and b are the numbers of pieces that
+ * the two sides have.  The entry is 0 for a draw, or
+ * else the number of turns until the end of the game
+ * plus one.  (An even number of turns means the side to
+ * move loses.)  Multiple jumps count as one turn, and a
+ * piece that can keep jumping does, as in CheckersEngine.
+ */
+public class EndgameDatabase {
+
+  //-------------------------------------------------------
+  //   static fields
+
+  /**
+   * The number of different piece codes.
+   */
+  static final int CODE_COUNT = 2*CheckersGame.SQUARE_COUNT;
+
+  /**
+   * The entry value of a draw (or of an impossible position).
+   */
+  public static final int DRAW = 0;
+
+  /**
+   * The largest number of pieces that a file may cover.
+   */
+  public static final int MAX_PIECES = 5;
+
+  /**
+   * The binomial coefficients C(n, k) for n < CODE_COUNT + 1
+   * and k < MAX_PIECES + 1, stored as BINOMIALS[n*(MAX_PIECES + 1) + k].
+   */
+  private static final int[] BINOMIALS
+      = new int[(CODE_COUNT + 1)*(MAX_PIECES + 1)];
+
+  static {
+    for(int n = 0; n <= CODE_COUNT; n++) {
+      BINOMIALS[n*(MAX_PIECES + 1)] = 1;
+      for(int k = 1; k <= MAX_PIECES; k++) {
+        if(n > 0) {
+          BINOMIALS[n*(MAX_PIECES + 1) + k]
+              = BINOMIALS[(n - 1)*(MAX_PIECES + 1) + k - 1]
+              + BINOMIALS[(n - 1)*(MAX_PIECES + 1) + k];
+        }
+      }
+    }
+  }
+
+  //-------------------------------------------------------
+  //   instance fields
+
+  /**
+   * The most pieces (of both sides together) covered.
+   */
+  private int myMaxPieces;
+
+  /**
+   * The tables, indexed by [a][b] where a and b are the
+   * numbers of pieces of the side to move and of the
+   * other side.
+   */
+  private byte[][][] myTables;
+
+  /**
+   * The move lists used while building, one for each
+   * hop of a multiple jump.
+   */
+  private MoveList[] myMoveLists;
+
+  /**
+   * The results of the turns scanned by scanTurns.
+   */
+  private int myMinLoss;
+  private boolean myAllWins;
+
+  //-------------------------------------------------------
+  //   initialization
+
+  /**
+   * Creates empty tables.
+   * @param maxPieces the most pieces covered.
+   */
+  private EndgameDatabase(int maxPieces) {
+    if((maxPieces < 2) || (maxPieces > MAX_PIECES)) {
+      throw(new IllegalArgumentException("bad piece count: " + maxPieces));
+    }
+    myMaxPieces = maxPieces;
+    myTables = new byte[maxPieces][maxPieces][];
+    for(int a = 1; a < maxPieces; a++) {
+      for(int b = 1; a + b <= maxPieces; b++) {
+        myTables[a][b] = new byte[getBinomial(CODE_COUNT, a)
+                                  *getBinomial(CODE_COUNT, b)];
+      }
+    }
+  }
+
+  /**
+   * Reads the tables written by write().
+   */
+  public static EndgameDatabase read(InputStream stream)
+      throws IOException {
+    DataInputStream in = new DataInputStream(stream);
+    EndgameDatabase database = new EndgameDatabase(in.readByte());
+    for(int a = 1; a < database.myMaxPieces; a++) {
+      for(int b = 1; a + b <= database.myMaxPieces; b++) {
+        in.readFully(database.myTables[a][b]);
+      }
+    }
+    return(database);
+  }
+
+  /**
+   * Writes the tables.
+   */
+  public void write(OutputStream stream) throws IOException {
+    DataOutputStream out = new DataOutputStream(stream);
+    out.writeByte(myMaxPieces);
+    for(int a = 1; a < myMaxPieces; a++) {
+      for(int b = 1; a + b <= myMaxPieces; b++) {
+        out.write(myTables[a][b]);
+      }
+    }
+    out.flush();
+  }
+
+  //-------------------------------------------------------
+  //   probing
+
+  /**
+   * @return the most pieces (of both sides together) covered.
+   */
+  public int getMaxPieces() {
+    return(myMaxPieces);
+  }
+
+  /**
+   * Looks up a position.
+   * @param towardTop whether the moving side's men move
+   *        toward the top of the board.
+   * @return the entry (see the class comment), or -1 if the
+   *         position has too many pieces to be covered.
+   */
+  public int probe(int men, int kings, int oppMen, int oppKings,
+                   boolean towardTop) {
+    if(! towardTop) {
+      men = flip(men);
+      kings = flip(kings);
+      oppMen = flip(oppMen);
+      oppKings = flip(oppKings);
+    }
+    return(lookup(men, kings, oppMen, oppKings));
+  }
+
+  /**
+   * @return whether the entry means the side to move wins.
+   */
+  public static boolean isWin(int entry) {
+    return(((entry & 1) == 0) && (entry != DRAW));
+  }
+
+  /**
+   * @return whether the entry means the side to move loses.
+   */
+  public static boolean isLoss(int entry) {
+    return((entry & 1) == 1);
+  }
+
+  /**
+   * @return the number of turns until the end of the game.
+   */
+  public static int getDistance(int entry) {
+    return(entry - 1);
+  }
+
+  /**
+   * Looks up a position where the side to move moves
+   * toward the top.
+   */
+  private int lookup(int men, int kings, int oppMen, int oppKings) {
+    int pieces = men | kings;
+    if(pieces == 0) {
+      // the side with no pieces has lost:
+      return(1);
+    }
+    int a = CheckersGame.countSquares(pieces);
+    int b = CheckersGame.countSquares(oppMen | oppKings);
+    if((a + b > myMaxPieces) || (b == 0)) {
+      return(-1);
+    }
+    int index = getIndex(men, kings)*getBinomial(CODE_COUNT, b)
+        + getIndex(oppMen, oppKings);
+    return(myTables[a][b][index] & 0xFF);
+  }
+
+  /**
+   * Finds the index of one side's pieces among all of
+   * the sets of that many piece codes.
+   */
+  private static int getIndex(int men, int kings) {
+    int index = 0;
+    int count = 0;
+    int pieces = men | kings;
+    while(pieces != 0) {
+      int square = CheckersGame.lowestSquare(pieces);
+      int code = 2*square;
+      if((kings & (1 << square)) != 0) {
+        code++;
+      }
+      count++;
+      index += getBinomial(code, count);
+      pieces &= pieces - 1;
+    }
+    return(index);
+  }
+
+  //-------------------------------------------------------
+  //   building
+
+  /**
+   * Builds the tables by retrograde analysis.
+   * @param maxPieces the most pieces to cover.
+   */
+  public static EndgameDatabase generate(int maxPieces) {
+    EndgameDatabase database = new EndgameDatabase(maxPieces);
+    database.myMoveLists = new MoveList[maxPieces + 1];
+    for(int i = 0; i < database.myMoveLists.length; i++) {
+      database.myMoveLists[i] = new MoveList();
+    }
+    // a capture moves the game into a table with fewer
+    // pieces, so the smaller tables are built first:
+    for(int total = 2; total <= maxPieces; total++) {
+      database.solve(total);
+    }
+    database.myMoveLists = null;
+    return(database);
+  }
+
+  /**
+   * Fills in the tables with the given number of pieces.
+   */
+  private void solve(int total) {
+    int[] moverCodes = new int[total];
+    int[] otherCodes = new int[total];
+    int idleTurns = 0;
+    // positions won or lost in n turns are found in pass n:
+    for(int n = 0; (idleTurns < 2) && (n < 255); n++) {
+      boolean changed = false;
+      for(int a = 1; a < total; a++) {
+        int b = total - a;
+        byte[] table = myTables[a][b];
+        int otherCount = getBinomial(CODE_COUNT, b);
+        for(int i = 0; i < table.length; i++) {
+          if(table[i] != DRAW) {
+            continue;
+          }
+          decode(i / otherCount, a, moverCodes);
+          decode(i % otherCount, b, otherCodes);
+          int men = getMen(moverCodes, a);
+          int kings = getKings(moverCodes, a);
+          int oppMen = getMen(otherCodes, b);
+          int oppKings = getKings(otherCodes, b);
+          // skip the impossible positions:
+          if((CheckersGame.countSquares(men | kings | oppMen | oppKings)
+              != total)
+             || ((men & CheckersGame.TOP_ROW) != 0)
+             || ((oppMen & CheckersGame.BOTTOM_ROW) != 0)) {
+            continue;
+          }
+          myMinLoss = -1;
+          myAllWins = true;
+          scanTurns(men, kings, oppMen, oppKings, -1, 0, n);
+          // a position that wasn't marked in an earlier pass
+          // can only be won in n turns (if the other side
+          // can be given a loss in n - 1) or lost in n turns
+          // (if every turn gives the other side a win):
+          if(((myMinLoss != -1) && (myMinLoss + 1 == n)) || myAllWins) {
+            table[i] = (byte)(n + 1);
+            changed = true;
+          }
+        }
+      }
+      if(changed) {
+        idleTurns = 0;
+      } else {
+        idleTurns++;
+      }
+    }
+  }
+
+  /**
+   * Looks at every way the side to move can finish its
+   * turn, and records the results that were found in
+   * earlier passes:  the quickest loss for the other
+   * side in myMinLoss, and whether every turn leads to
+   * a win for the other side in myAllWins.
+   * @param depth the number of jumps already made this turn.
+   * @param pass the current pass.
+   */
+  private void scanTurns(int men, int kings, int oppMen, int oppKings,
+                         int continueSquare, int depth, int pass) {
+    MoveList moves = myMoveLists[depth];
+    CheckersEngine.generate(men, kings, oppMen, oppKings, true,
+                            continueSquare, false, moves);
+    for(int i = 0; i < moves.size(); i++) {
+      int move = moves.get(i);
+      int destination = 1 << MoveList.getDestination(move);
+      int fromTo = (1 << MoveList.getSource(move)) | destination;
+      int newMen = men;
+      int newKings = kings;
+      if((kings & fromTo) != 0) {
+        newKings ^= fromTo;
+      } else {
+        newMen ^= fromTo;
+        if((destination & CheckersGame.TOP_ROW) != 0) {
+          newMen ^= destination;
+          newKings |= destination;
+        }
+      }
+      int newOppMen = oppMen;
+      int newOppKings = oppKings;
+      int captured = MoveList.getCaptured(move);
+      if(captured != -1) {
+        newOppMen &= ~(1 << captured);
+        newOppKings &= ~(1 << captured);
+        if(CheckersEngine.canJump(newMen & destination,
+               newKings & destination, newOppMen | newOppKings,
+               ~(newMen | newKings | newOppMen | newOppKings), true)) {
+          scanTurns(newMen, newKings, newOppMen, newOppKings,
+                    MoveList.getDestination(move), depth + 1, pass);
+          continue;
+        }
+      }
+      // the other side moves next, so turn the board around:
+      int entry = lookup(flip(newOppMen), flip(newOppKings),
+                         flip(newMen), flip(newKings));
+      if((entry == DRAW) || (entry > pass)) {
+        // not known yet:
+        myAllWins = false;
+      } else if(isLoss(entry)) {
+        int distance = getDistance(entry);
+        if((myMinLoss == -1) || (distance < myMinLoss)) {
+          myMinLoss = distance;
+        }
+      }
+    }
+  }
+
+  //-------------------------------------------------------
+  //   utilities
+
+  /**
+   * @return the binomial coefficient C(n, k).
+   */
+  private static int getBinomial(int n, int k) {
+    return(BINOMIALS[n*(MAX_PIECES + 1) + k]);
+  }
+
+  /**
+   * Finds the set of count piece codes (in increasing
+   * order) with the given index.
+   */
+  private static void decode(int index, int count, int[] codes) {
+    int code = CODE_COUNT - 1;
+    for(int k = count; k > 0; k--) {
+      while(getBinomial(code, k) > index) {
+        code--;
+      }
+      codes[k - 1] = code;
+      index -= getBinomial(code, k);
+      code--;
+    }
+  }
+
+  /**
+   * @return the uncrowned pieces among the codes.
+   */
+  private static int getMen(int[] codes, int count) {
+    int men = 0;
+    for(int i = 0; i < count; i++) {
+      if((codes[i] & 1) == 0) {
+        men |= 1 << (codes[i] >> 1);
+      }
+    }
+    return(men);
+  }
+
+  /**
+   * @return the kings among the codes.
+   */
+  private static int getKings(int[] codes, int count) {
+    int kings = 0;
+    for(int i = 0; i < count; i++) {
+      if((codes[i] & 1) != 0) {
+        kings |= 1 << (codes[i] >> 1);
+      }
+    }
+    return(kings);
+  }
+
+  /**
+   * Turns the board around (square s becomes square 31 - s),
+   * which reverses the order of the bits.
+   */
+  static int flip(int bitboard) {
+    bitboard = ((bitboard >>> 1) & 0x55555555)
+        | ((bitboard & 0x55555555) << 1);
+    bitboard = ((bitboard >>> 2) & 0x33333333)
+        | ((bitboard & 0x33333333) << 2);
+    bitboard = ((bitboard >>> 4) & 0x0F0F0F0F)
+        | ((bitboard & 0x0F0F0F0F) << 4);
+    bitboard = ((bitboard >>> 8) & 0x00FF00FF)
+        | ((bitboard & 0x00FF00FF) << 8);
+    return((bitboard >>> 16) | (bitboard << 16));
+  }
+
+}
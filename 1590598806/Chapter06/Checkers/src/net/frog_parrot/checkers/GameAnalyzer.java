@@ -0,0 +1,320 @@
+package net.frog_parrot.checkers;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * This class analyzes a corpus of recorded games:  it
+ * replays every game and, at every position where the player
+ * had a choice, compares the move that was played with the
+ * best move found by a shallow search.  A move that loses
+ * at least a given margin is counted as a blunder.  It
+ * also counts how often each opening was played.
+ *
+ * The corpus is a series of games as written by
+ * GameJournal.write.  Run it on a desktop machine with
+ * AnalyzeGames, which is kept in the desktop source tree 
+ * (since CLDC has no System.in or files to read from):
+ * AnalyzeGames [threads] [depth] [margin] [games] > results
+ * The games are analyzed by several worker threads at once,
+ * each with its own search engine.  The games are read one
+ * at a time as the workers ask for them, and each game's
+ * results are written as soon as it's done (one line per
+ * game, in the order they finish), so the memory use stays
+ * the same however large the corpus is.  The totals are
+ * printed to System.err at the end.
+ */
+public class GameAnalyzer {
+
+  //--------------------------------------------------------
+  //  static fields
+
+  /**
+   * The default number of worker threads.
+   */
+  public static final int DEFAULT_THREAD_COUNT = 2;
+
+  /**
+   * The default depth of the search at each position.
+   */
+  public static final int DEFAULT_DEPTH = 4;
+
+  /**
+   * The default score a move has to lose (compared to
+   * the best move) to be counted as a blunder.
+   */
+  public static final int DEFAULT_MARGIN = CheckersEngine.MAN_VALUE;
+
+  /**
+   * The number of hops that make up an opening.
+   */
+  public static final int OPENING_LENGTH = 4;
+
+  /**
+   * The number of most frequent openings to print.
+   */
+  public static final int TOP_OPENING_COUNT = 10;
+
+  /**
+   * The names of the phases of the game.  A position is in
+   * the early game while there are more than 16 pieces on
+   * the board and in the endgame once there are 8 or fewer.
+   */
+  public static final String[] PHASE_NAMES = { "early", "middle", "end" };
+
+  //--------------------------------------------------------
+  //  statistics indices
+
+  /**
+   * The number of positions.
+   */
+  static final int POSITIONS = 0;
+
+  /**
+   * The number of positions where there was a choice of moves.
+   */
+  static final int DECISIONS = 1;
+
+  /**
+   * The number of positions where the search score differs
+   * from the static evaluation by at least the margin
+   * (the positions with tactics that the evaluation misses).
+   */
+  static final int TACTICAL = 2;
+
+  /**
+   * The total score lost by the local player's moves
+   * (then the remote player's).
+   */
+  static final int LOSS = 3;
+
+  /**
+   * The number of blunders by the local player in each
+   * phase (then by the remote player).
+   */
+  static final int BLUNDERS = 5;
+
+  /**
+   * The number of statistics.
+   */
+  static final int STAT_COUNT = BLUNDERS + 2*PHASE_NAMES.length;
+
+  //--------------------------------------------------------
+  //  instance fields
+
+  /**
+   * Where the games are read from.
+   */
+  private DataInputStream myInput;
+
+  /**
+   * Where the results of each game are written.
+   */
+  private PrintStream myOutput;
+
+  /**
+   * The depth of the search at each position.
+   */
+  private int myDepth;
+
+  /**
+   * The score a move has to lose to be a blunder.
+   */
+  private int myMargin;
+
+  /**
+   * Whether all of the games have been read.
+   */
+  private boolean myIsDone;
+
+  /**
+   * The number of games read.
+   */
+  private int myReadCount;
+
+  /**
+   * The number of games analyzed.
+   */
+  private int myGameCount;
+
+  /**
+   * The number of hops in the games analyzed.
+   */
+  private long myHopCount;
+
+  /**
+   * The totals of the statistics of the games analyzed.
+   */
+  private long[] myTotals = new long[STAT_COUNT];
+
+  /**
+   * The number of times each opening was played, by
+   * the opening's description.
+   */
+  private Hashtable myOpenings = new Hashtable();
+
+  /**
+   * The number of workers that haven't finished.
+   */
+  private int myRunningCount;
+
+  //--------------------------------------------------------
+  //  lifecycle
+
+  /**
+   * Initialize the main data.
+   * @param depth the depth of the search at each position.
+   * @param margin the score a move has to lose to be
+   *        counted as a blunder.
+   */
+  public GameAnalyzer(DataInputStream input, PrintStream output,
+                      int depth, int margin) {
+    myInput = input;
+    myOutput = output;
+    myDepth = depth;
+    myMargin = margin;
+  }
+
+  /**
+   * Analyze all of the games.
+   * @return the number of milliseconds it took.
+   */
+  public long analyze(int threadCount) {
+    long start = System.currentTimeMillis();
+    synchronized(this) {
+      myRunningCount = threadCount;
+    }
+    for(int i = 0; i < threadCount; i++) {
+      Thread thread = new Thread(new AnalysisWorker(this, myDepth,
+                                                    myMargin));
+      thread.start();
+    }
+    synchronized(this) {
+      while(myRunningCount > 0) {
+        try {
+          wait();
+        } catch(InterruptedException e) {
+        }
+      }
+    }
+    return(System.currentTimeMillis() - start);
+  }
+
+  //--------------------------------------------------------
+  //  worker callbacks
+
+  /**
+   * Reads the next game for a worker.
+   * @return false if there are no more games.
+   */
+  synchronized boolean nextGame(AnalysisWorker worker) {
+    if(myIsDone) {
+      return(false);
+    }
+    try {
+      worker.setGame(myReadCount, GameJournal.read(myInput));
+      myReadCount++;
+      return(true);
+    } catch(EOFException e) {
+      // that was the last game.
+    } catch(IOException e) {
+      e.printStackTrace();
+    }
+    myIsDone = true;
+    return(false);
+  }
+
+  /**
+   * Writes the results of one game and adds them to
+   * the totals.  The line has the game's index, the
+   * number of hops, the number of decisions, the number of
+   * blunders by the local then the remote player, the
+   * biggest loss and the hop it was made on, the static
+   * evaluation of the final position (for the local
+   * player), and the opening.
+   * @param stats the statistics of the game.
+   */
+  synchronized void report(int index, int hopCount, int[] stats,
+                           int worstLoss, int worstHop, int finalScore,
+                           String opening) {
+    int localBlunders = 0;
+    int remoteBlunders = 0;
+    for(int i = 0; i < PHASE_NAMES.length; i++) {
+      localBlunders += stats[BLUNDERS + i];
+      remoteBlunders += stats[BLUNDERS + PHASE_NAMES.length + i];
+    }
+    myOutput.println(index + "\t" + hopCount + "\t" + stats[DECISIONS]
+                     + "\t" + localBlunders + "\t" + remoteBlunders
+                     + "\t" + worstLoss + "\t" + worstHop
+                     + "\t" + finalScore + "\t" + opening);
+    myGameCount++;
+    myHopCount += hopCount;
+    for(int i = 0; i < STAT_COUNT; i++) {
+      myTotals[i] += stats[i];
+    }
+    int[] count = (int[])myOpenings.get(opening);
+    if(count == null) {
+      count = new int[1];
+      myOpenings.put(opening, count);
+    }
+    count[0]++;
+  }
+
+  /**
+   * Count one worker that has run out of games.
+   */
+  synchronized void workerFinished() {
+    myRunningCount--;
+    notify();
+  }
+
+  //--------------------------------------------------------
+  //  totals
+
+  /**
+   * Print the totals.
+   * @param time the number of milliseconds the analysis took.
+   */
+  public synchronized void printTotals(PrintStream out, long time) {
+    out.println("games: " + myGameCount + ", hops: " + myHopCount
+                + ", in " + time + " ms, "
+                + (myGameCount*1000L/(time + 1)) + " games/s, "
+                + (myTotals[POSITIONS]*1000/(time + 1)) + " positions/s");
+    out.println("decisions: " + myTotals[DECISIONS] + ", tactical: "
+                + myTotals[TACTICAL]);
+    String[] sides = { "local", "remote" };
+    for(int side = 0; side < 2; side++) {
+      StringBuffer buff = new StringBuffer(sides[side]);
+      buff.append(" blunders:");
+      for(int i = 0; i < PHASE_NAMES.length; i++) {
+        buff.append(" ");
+        buff.append(PHASE_NAMES[i]);
+        buff.append(" ");
+        buff.append(myTotals[BLUNDERS + side*PHASE_NAMES.length + i]);
+      }
+      buff.append(", total loss ");
+      buff.append(myTotals[LOSS + side]);
+      out.println(buff.toString());
+    }
+    out.println("openings: " + myOpenings.size() + " different");
+    // pick out the most frequent ones:
+    Vector openings = new Vector();
+    for(Enumeration e = myOpenings.keys(); e.hasMoreElements(); ) {
+      openings.addElement(e.nextElement());
+    }
+    for(int i = 0; (i < TOP_OPENING_COUNT) && (openings.size() > 0); i++) {
+      int best = 0;
+      int bestCount = 0;
+      for(int j = 0; j < openings.size(); j++) {
+        int count = ((int[])myOpenings.get(openings.elementAt(j)))[0];
+        if(count > bestCount) {
+          best = j;
+          bestCount = count;
+        }
+      }
+      out.println("  " + bestCount + "\t" + openings.elementAt(best));
+      openings.removeElementAt(best);
+    }
+  }
+
+}
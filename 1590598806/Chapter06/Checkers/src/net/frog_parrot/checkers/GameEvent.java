@@ -0,0 +1,173 @@
+package net.frog_parrot.checkers;
+
+/**
+ * This class holds one event for the game's state 
+ * machine:  a move or signal from the remote player,
+ * the network, or the local player.  MoveManager queues
+ * the events and handles them one at a time, in order, 
+ * on its own thread.
+ */
+class GameEvent implements Runnable {
+
+  //--------------------------------------------------------
+  //  event types
+
+  /**
+   * The remote player has invited the local player.
+   */
+  static final int INVITATION = 0;
+
+  /**
+   * The remote player has made one hop.
+   */
+  static final int REMOTE_MOVE = 1;
+
+  /**
+   * The remote player's turn is over.
+   */
+  static final int END_REMOTE_TURN = 2;
+
+  /**
+   * The remote player has ended the game.
+   */
+  static final int REMOTE_GAME_OVER = 3;
+
+  /**
+   * A message has been sent.
+   */
+  static final int DONE_SENDING = 4;
+
+  /**
+   * The local player has made one hop.
+   */
+  static final int LOCAL_MOVE = 5;
+
+  /**
+   * The local player's turn is over.
+   */
+  static final int END_LOCAL_TURN = 6;
+
+  /**
+   * The local player has ended the game.
+   */
+  static final int END_GAME = 7;
+
+  /**
+   * The hash of the remote player's board after its hops
+   * has come in.
+   */
+  static final int CHECK_REMOTE_TURN = 8;
+
+  /**
+   * The remote player's board has come in, to replace 
+   * the local one.
+   */
+  static final int REMOTE_POSITION = 9;
+
+  /**
+   * The game is to be saved (because the application
+   * has been paused).
+   */
+  static final int CHECKPOINT = 10;
+
+  //--------------------------------------------------------
+  //  instance fields
+
+  /**
+   * The class that handles the event.
+   */
+  private MoveManager myManager;
+
+  /**
+   * The type of event.
+   */
+  private int myType;
+
+  /**
+   * The four bytes of a hop (or null).
+   */
+  private byte[] myMove;
+
+  /**
+   * The taunt that came with the event (or null).
+   */
+  private String myTaunt;
+
+  /**
+   * The phone number that an invitation came from (or null).
+   */
+  private String myPhoneNum;
+
+  /**
+   * The board hash, or for a board:  twice the sequence 
+   * number of the remote player's last turn, plus one if 
+   * it's the local player's turn.
+   */
+  private int myValue;
+
+  /**
+   * The board that came from the remote player (or null).
+   */
+  private int[] myPosition;
+
+  //--------------------------------------------------------
+  //  initialization
+
+  /**
+   * Initialize the main data.
+   */
+  GameEvent(MoveManager manager, int type, byte[] move, String taunt,
+            String phoneNum) {
+    myManager = manager;
+    myType = type;
+    myMove = move;
+    myTaunt = taunt;
+    myPhoneNum = phoneNum;
+  }
+
+  /**
+   * Initialize an event about the board.
+   */
+  GameEvent(MoveManager manager, int type, int value, int[] position) {
+    myManager = manager;
+    myType = type;
+    myValue = value;
+    myPosition = position;
+  }
+
+  //--------------------------------------------------------
+  //  data
+
+  int getType() {
+    return(myType);
+  }
+
+  byte[] getMove() {
+    return(myMove);
+  }
+
+  String getTaunt() {
+    return(myTaunt);
+  }
+
+  String getPhoneNum() {
+    return(myPhoneNum);
+  }
+
+  int getValue() {
+    return(myValue);
+  }
+
+  int[] getPosition() {
+    return(myPosition);
+  }
+
+  /**
+   * Hand the event to the MoveManager (on the 
+   * dispatcher thread).
+   */
+  public void run() {
+    myManager.dispatch(this);
+  }
+
+}
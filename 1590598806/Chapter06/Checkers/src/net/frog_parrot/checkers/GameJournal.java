@@ -0,0 +1,297 @@
+package net.frog_parrot.checkers;
+
+import java.io.*;
+
+/**
+ * This class records the hops of a game, both players',
+ * so that the game can be stored and any position in it
+ * can be rebuilt later.  Each hop takes two bytes:
+ *
+ * bits 0-4 = the source square
+ * bits 5-9 = the destination square
+ * bit 10 = set if the hop is a jump (the captured piece 
+ *          is the one between the two squares)
+ * bit 11 = set if it's the remote player's hop.
+ *
+ * The squares are numbered as in CheckersGame, from the
+ * local player's point of view.  A turn ends when the other 
+ * player's hops begin, so the turns aren't marked.
+ *
+ * Before every CHECKPOINT_INTERVAL hops, the whole board is 
+ * written (as the four bitboards), so the data is a series 
+ * of blocks of the same size:  a checkpoint and then the hops 
+ * that follow it.  The position after any hop can be found 
+ * by going straight to the block (no index is needed) and 
+ * playing at most CHECKPOINT_INTERVAL - 1 hops from its 
+ * checkpoint.
+ */
+public class GameJournal {
+
+  //-------------------------------------------------------
+  //   static fields
+
+  /**
+   * The number of hops between checkpoints.
+   */
+  public static final int CHECKPOINT_INTERVAL = 32;
+
+  /**
+   * The number of bytes in a checkpoint.
+   */
+  public static final int CHECKPOINT_SIZE = 16;
+
+  /**
+   * The number of bytes in a checkpoint and the hops 
+   * that follow it.
+   */
+  public static final int BLOCK_SIZE 
+      = CHECKPOINT_SIZE + 2*CHECKPOINT_INTERVAL;
+
+  /**
+   * The flag marking a jump.
+   */
+  public static final int JUMP_FLAG = 0x400;
+
+  /**
+   * The flag marking the remote player's hop.
+   */
+  public static final int REMOTE_FLAG = 0x800;
+
+  //-------------------------------------------------------
+  //   instance fields
+
+  /**
+   * The recorded data.
+   */
+  private byte[] myData;
+
+  /**
+   * The number of bytes of data.
+   */
+  private int myLength;
+
+  /**
+   * The number of hops recorded.
+   */
+  private int myHopCount;
+
+  /**
+   * The position after the last hop:  the local men, the 
+   * local kings, the remote men, and the remote kings.
+   */
+  private int[] myPosition = new int[4];
+
+  //-------------------------------------------------------
+  //   initialization
+
+  /**
+   * Start a journal of a game from the beginning.
+   */
+  public GameJournal() {
+    this(0xFFF00000, 0, 0x00000FFF, 0);
+  }
+
+  /**
+   * Start a journal of a game from the given position.
+   */
+  public GameJournal(int localMen, int localKings, int remoteMen,
+                     int remoteKings) {
+    myData = new byte[BLOCK_SIZE];
+    myPosition[0] = localMen;
+    myPosition[1] = localKings;
+    myPosition[2] = remoteMen;
+    myPosition[3] = remoteKings;
+    writeCheckpoint();
+  }
+
+  /**
+   * Read a journal written by the write method.
+   */
+  public static GameJournal read(DataInputStream dis) throws IOException {
+    GameJournal journal = new GameJournal();
+    int hopCount = dis.readUnsignedShort();
+    journal.myLength = getOffset(hopCount);
+    journal.myData = new byte[journal.myLength];
+    dis.readFully(journal.myData);
+    journal.myHopCount = hopCount;
+    journal.getPosition(hopCount, journal.myPosition);
+    return(journal);
+  }
+
+  /**
+   * Write the journal:  the number of hops, then the data.
+   */
+  public void write(DataOutputStream dos) throws IOException {
+    dos.writeShort(myHopCount);
+    dos.write(myData, 0, myLength);
+  }
+
+  //-------------------------------------------------------
+  //   recording
+
+  /**
+   * Record one hop.
+   * @param remote whether it's the remote player's hop.
+   * @param source the square the piece moved from.
+   * @param destination the square the piece moved to.
+   */
+  public void recordHop(boolean remote, int source, int destination) {
+    int hop = source | (destination << 5);
+    if(CheckersGame.getJumpedSquare(source, destination) != -1) {
+      hop |= JUMP_FLAG;
+    }
+    if(remote) {
+      hop |= REMOTE_FLAG;
+    }
+    ensureCapacity(2);
+    myData[myLength++] = (byte)(hop >> 8);
+    myData[myLength++] = (byte)hop;
+    myHopCount++;
+    applyHop(myPosition, hop);
+    if(myHopCount % CHECKPOINT_INTERVAL == 0) {
+      writeCheckpoint();
+    }
+  }
+
+  /**
+   * Write the current position.
+   */
+  private void writeCheckpoint() {
+    ensureCapacity(CHECKPOINT_SIZE);
+    for(int i = 0; i < 4; i++) {
+      int bitboard = myPosition[i];
+      for(int j = 24; j >= 0; j -= 8) {
+        myData[myLength++] = (byte)(bitboard >> j);
+      }
+    }
+  }
+
+  /**
+   * Make room for the given number of bytes, a block at 
+   * a time.
+   */
+  private void ensureCapacity(int length) {
+    if(myLength + length > myData.length) {
+      byte[] newData = new byte[myData.length + BLOCK_SIZE];
+      System.arraycopy(myData, 0, newData, 0, myLength);
+      myData = newData;
+    }
+  }
+
+  //-------------------------------------------------------
+  //   replaying
+
+  /**
+   * @return the number of hops recorded.
+   */
+  public int getHopCount() {
+    return(myHopCount);
+  }
+
+  /**
+   * @return the hop with the given index, packed as 
+   *         described in the class comment.
+   */
+  public int getHop(int index) {
+    int offset = getOffset(index);
+    return(((myData[offset] & 0xFF) << 8) | (myData[offset + 1] & 0xFF));
+  }
+
+  /**
+   * Finds the position after the given number of hops.
+   * @param position an array of four ints to fill with the 
+   *        local men, local kings, remote men, and remote kings.
+   */
+  public void getPosition(int hopCount, int[] position) {
+    if((hopCount < 0) || (hopCount > myHopCount)) {
+      throw(new IllegalArgumentException("no hop " + hopCount));
+    }
+    // start from the checkpoint of the hop's block:
+    int offset = (hopCount/CHECKPOINT_INTERVAL)*BLOCK_SIZE;
+    for(int i = 0; i < 4; i++) {
+      position[i] = ((myData[offset] & 0xFF) << 24)
+          | ((myData[offset + 1] & 0xFF) << 16)
+          | ((myData[offset + 2] & 0xFF) << 8)
+          | (myData[offset + 3] & 0xFF);
+      offset += 4;
+    }
+    for(int i = hopCount % CHECKPOINT_INTERVAL; i > 0; i--) {
+      applyHop(position, ((myData[offset] & 0xFF) << 8)
+               | (myData[offset + 1] & 0xFF));
+      offset += 2;
+    }
+  }
+
+  /**
+   * Sets the game's pieces to the position after the given 
+   * number of hops.
+   */
+  public void replay(int hopCount, CheckersGame game) {
+    int[] position = new int[4];
+    getPosition(hopCount, position);
+    game.setPosition(position[0], position[1], position[2], position[3]);
+  }
+
+  /**
+   * @return where the hop with the given index is (or
+   *         where it would go) in the data.
+   */
+  private static int getOffset(int index) {
+    return((index/CHECKPOINT_INTERVAL)*BLOCK_SIZE + CHECKPOINT_SIZE
+           + 2*(index % CHECKPOINT_INTERVAL));
+  }
+
+  /**
+   * Plays a hop on the given position:  the piece moves
+   * (and is crowned if it reaches the far side), and the
+   * piece that it jumps over (if any) is removed.
+   */
+  static void applyHop(int[] position, int hop) {
+    int source = getSource(hop);
+    int destination = getDestination(hop);
+    int side = 0;
+    int crownRow = CheckersGame.TOP_ROW;
+    if((hop & REMOTE_FLAG) != 0) {
+      side = 2;
+      crownRow = CheckersGame.BOTTOM_ROW;
+    }
+    int fromTo = (1 << source) | (1 << destination);
+    if((position[side + 1] & fromTo) != 0) {
+      position[side + 1] ^= fromTo;
+    } else {
+      position[side] ^= fromTo;
+      if(((1 << destination) & crownRow) != 0) {
+        position[side] ^= 1 << destination;
+        position[side + 1] |= 1 << destination;
+      }
+    }
+    if((hop & JUMP_FLAG) != 0) {
+      int captured = ~(1 << CheckersGame.getJumpedSquare(source,
+                                                         destination));
+      position[2 - side] &= captured;
+      position[3 - side] &= captured;
+    }
+  }
+
+  /**
+   * @return the source square of a packed hop.
+   */
+  public static int getSource(int hop) {
+    return(hop & 0x1F);
+  }
+
+  /**
+   * @return the destination square of a packed hop.
+   */
+  public static int getDestination(int hop) {
+    return((hop >> 5) & 0x1F);
+  }
+
+  /**
+   * @return whether a packed hop is the remote player's.
+   */
+  public static boolean isRemote(int hop) {
+    return((hop & REMOTE_FLAG) != 0);
+  }
+
+}
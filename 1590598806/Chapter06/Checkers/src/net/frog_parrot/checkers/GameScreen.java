@@ -0,0 +1,51 @@
+package net.frog_parrot.checkers;
+
+/**
+ * This is the interface that MoveManager uses to show the
+ * game to the user.  Checkers implements it for the real
+ * game (with the board drawn by CheckersCanvas), and other
+ * classes (such as a load test) can implement it to play
+ * without a user interface.
+ */
+public interface GameScreen {
+
+  /**
+   * Sets whether the board shows that the local player
+   * is waiting for the remote player.
+   */
+  public void setWaitScreen(boolean wait);
+
+  /**
+   * Redraws the board (right away) after the game
+   * has changed.
+   */
+  public void repaintBoard();
+
+  /**
+   * Gets the message that the user has entered for the
+   * remote player, if any.  Then clears the text.
+   */
+  public String getTauntMessage();
+
+  /**
+   * Sets the message for the remote player to tell the
+   * remote player that he has won.
+   */
+  public void setWinTaunt();
+
+  /**
+   * Displays the remote player's message.
+   */
+  public void displayTauntMessage(String taunt);
+
+  /**
+   * Displays an error message if something goes wrong.
+   */
+  public void errorMsg(String msg);
+
+  /**
+   * End the program now.
+   */
+  public void quit();
+
+}
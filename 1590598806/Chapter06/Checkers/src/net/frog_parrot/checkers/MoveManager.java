@@ -2,30 +2,37 @@ package net.frog_parrot.checkers;
 
 import java.io.*;
 
+import net.frog_parrot.net.FrameCodec;
+import net.frog_parrot.net.GameListener;
 import net.frog_parrot.net.SMSManager;
+import net.frog_parrot.net.TauntCodec;
+import net.frog_parrot.util.WorkQueue;
 
 /**
  * This class keeps track of transferring local and 
  * remote moves from one player to the other..
  *
+ * The moves and signals from the network, the computer
+ * player and the user are queued as events and handled in 
+ * order by a single dispatcher thread, so no thread ever
+ * waits for another to finish repainting.  The state can
+ * be read at any time, and every change to it is made 
+ * atomically (see changeState), so a late or out-of-order 
+ * event can't undo a transition.
+ *
  * @author Carol Hamer
  */
-public class MoveManager {
+public class MoveManager implements GameListener {
 
   //--------------------------------------------------------
   //  game instance fields
 
   /**
-   * The MIDlet subclass, used to set the Display 
-   * in the case where an error message needs to be sent..
-   */
-  private Checkers myCheckers;
-
-  /**
-   * The Canvas subclass, used to set the Display 
-   * in the case where an error message needs to be sent..
+   * The user interface (the MIDlet subclass, which draws
+   * the board with the Canvas subclass), used to show 
+   * the game and the messages.
    */
-  private CheckersCanvas myCanvas;
+  private GameScreen myScreen;
 
   /**
    * The game logic class that we send the opponent's 
@@ -38,6 +45,46 @@ public class MoveManager {
    */
   private SMSManager mySMSManager;
 
+  /**
+   * The computer opponent that supplies the remote moves 
+   * when the user plays against the handset. (null if 
+   * the user is playing against a remote player)
+   */
+  private ComputerPlayer myComputerPlayer;
+
+  /**
+   * The record of every hop played by both players.
+   */
+  private GameJournal myJournal = new GameJournal();
+
+  /**
+   * The thread that handles the events, one at a time.
+   */
+  private WorkQueue myDispatcher = new WorkQueue(1);
+
+  /**
+   * Thinks about the local player's next move while the
+   * remote player is taking a turn.  (Its thread isn't
+   * started unless the game is played over the network.)
+   */
+  private Ponderer myPonderer = new Ponderer();
+
+  /**
+   * Whether the board was found to be out of sync with
+   * the remote player's (by the check after a turn, or by
+   * a hop that doesn't fit the board), so the local player
+   * has to wait for the remote player's board.  (Only used
+   * on the dispatcher thread.)
+   */
+  private boolean myIsOutOfSync;
+
+  /**
+   * Where the game is saved when the application is
+   * paused, so that it can be picked up again if the 
+   * application is shut down.
+   */
+  private CheckpointStore myCheckpoints = new CheckpointStore();
+
   //--------------------------------------------------------
   //  state fields
 
@@ -79,35 +126,69 @@ public class MoveManager {
  /**
    * The code for the state the game is currently in.
    */
-  private int myState = NOT_STARTED;
+  private volatile int myState = NOT_STARTED;
 
  /**
    * The code for the state to return to after a pause.
    */
   private int myPreviousState = NOT_STARTED;
 
+  /**
+   * The value for changeState that matches any state.
+   */
+  private static final int ANY_STATE = -1;
+
+  /**
+   * The lock that makes each change of state atomic.
+   * (It's never held while calling other objects.)
+   */
+  private Object myStateLock = new Object();
+
+  /**
+   * The version of the checkpoint format (see saveCheckpoint).
+   */
+  private static final byte CHECKPOINT_VERSION = 2;
+
+  /**
+   * The most pieces a side can have (see isPossible).
+   */
+  private static final int MAX_PIECES = 12;
+
   //--------------------------------------------------------
   //  lifecycle
 
   /**
    * Constructor initializes the handles back to other 
    * game objects.
+   * @param smsManager the class that sends and receives
+   *        the messages (over the phone's SMS for the real 
+   *        game).
    */
-  MoveManager(Checkers checkers, CheckersCanvas canvas, 
-               CheckersGame game) {
-    myCheckers = checkers;
-    myCanvas = canvas;
+  MoveManager(GameScreen screen, CheckersGame game, 
+              SMSManager smsManager) {
+    myScreen = screen;
     myGame = game;
-    mySMSManager = new SMSManager();
+    myGame.setMoveManager(this);
+    myDispatcher.start();
+    mySMSManager = smsManager;
+    // a game that was saved when the application was 
+    // shut down is picked up before any message is read,
+    // since the message may be the remote player's turn:
+    boolean restored = restore();
     try {
       if(mySMSManager.init(this)) {
-        myState = FOUND_REMOTE_PLAYER;
+        // (unless the invitation has already been handled)
+        changeState(NOT_STARTED, FOUND_REMOTE_PLAYER);
       }
     } catch(IOException e) {
-      myCheckers.errorMsg("communications error");
+      myScreen.errorMsg("communications error");
+    }
+    // but its turn only starts once messages can be sent,
+    // since the local player may have lost already:
+    if(restored) {
+      resumeTurn();
     }
-    myCanvas.repaint();
-    myCanvas.serviceRepaints();
+    myScreen.repaintBoard();
   }
 
   /**
@@ -116,8 +197,19 @@ public class MoveManager {
    * since sending one last message is too time-consuming.
    */
   public void shutDown() {
-    myState = GAME_OVER;
+    // the dispatcher may not get the chance to save the
+    // game, so it's saved (and written) right away:
+    saveCheckpoint();
+    myCheckpoints.shutDown();
+    synchronized(myStateLock) {
+      myState = GAME_OVER;
+    }
     mySMSManager.shutDown();
+    if(myComputerPlayer != null) {
+      myComputerPlayer.shutDown();
+    }
+    myPonderer.shutDown();
+    myDispatcher.shutDown();
   }
 
   /**
@@ -126,18 +218,37 @@ public class MoveManager {
    * since sending one last message is too time-consuming.
    */
   public void pause() {
-    myPreviousState = myState;
-    myState = PAUSED;
+    synchronized(myStateLock) {
+      if(myState == PAUSED) {
+        return;
+      }
+      myPreviousState = myState;
+      myState = PAUSED;
+    }
     mySMSManager.shutDown();
+    myPonderer.stopPondering();
+    post(GameEvent.CHECKPOINT, null, null, null);
   }
 
   /**
    * If we're returning from a pause, restart the listner.
+   * (Any events that came in during the pause have 
+   * already set the state to return to.)
    */
   public void wakeUp() throws IOException {
-    if(myState == PAUSED) {
+    synchronized(myStateLock) {
+      if(myState != PAUSED) {
+        return;
+      }
       myState = myPreviousState;
-      mySMSManager.init(this);
+    }
+    // (a game against the computer doesn't read messages)
+    if(myComputerPlayer != null) {
+      return;
+    }
+    mySMSManager.init(this);
+    if(myState == REMOTE_TURN) {
+      startPondering();
     }
   }
 
@@ -148,6 +259,132 @@ public class MoveManager {
     return(myState);
   }
 
+  /**
+   * Gets the record of the game so far.
+   */
+  public GameJournal getJournal() {
+    return(myJournal);
+  }
+
+  //--------------------------------------------------------
+  //  state
+
+  /**
+   * Changes the state if it's currently the expected one.
+   * If the game is paused, the state to return to is 
+   * changed instead.  Once the game is over, it stays over.
+   * @param expected the state to change from, or ANY_STATE.
+   * @return whether the state was changed.
+   */
+  private boolean changeState(int expected, int state) {
+    synchronized(myStateLock) {
+      int current = myState;
+      if(current == PAUSED) {
+        current = myPreviousState;
+      }
+      if((current == GAME_OVER) 
+         || ((expected != ANY_STATE) && (current != expected))) {
+        return(false);
+      }
+      if(myState == PAUSED) {
+        myPreviousState = state;
+      } else {
+        myState = state;
+      }
+      return(true);
+    }
+  }
+
+  /**
+   * @return whether the game is over (paused or not).
+   */
+  private boolean isGameOver() {
+    return(isInState(GAME_OVER));
+  }
+
+  /**
+   * @return whether the remote player may be taking a turn:
+   *         the local player's turn (or the invitation) has
+   *         been sent, even if the notice that it went out 
+   *         hasn't been handled yet.  (The remote player's
+   *         messages are ignored otherwise.)
+   */
+  private boolean isRemoteMoving() {
+    if(isInState(REMOTE_TURN) || isInState(SENDING_LOCAL_TURN)) {
+      return(true);
+    }
+    return(isInState(NOT_STARTED) && (mySMSManager.getPhoneNum() != null));
+  }
+
+  /**
+   * @return whether the game is in the given state 
+   *         (paused or not).
+   */
+  private boolean isInState(int state) {
+    synchronized(myStateLock) {
+      return((myState == state) 
+             || ((myState == PAUSED) && (myPreviousState == state)));
+    }
+  }
+
+  /**
+   * Add an event to the end of the queue.
+   */
+  private void post(int type, byte[] move, String taunt, String phoneNum) {
+    myDispatcher.execute(new GameEvent(this, type, move, taunt, phoneNum));
+  }
+
+  /**
+   * Add an event about the board to the end of the queue.
+   */
+  private void post(int type, int value, int[] position) {
+    myDispatcher.execute(new GameEvent(this, type, value, position));
+  }
+
+  /**
+   * Handle one event.  This is only called on the 
+   * dispatcher thread, so the events are handled one 
+   * at a time in the order they were posted.
+   */
+  void dispatch(GameEvent event) {
+    switch(event.getType()) {
+    case GameEvent.INVITATION:
+      handleInvitation(event.getTaunt(), event.getPhoneNum());
+      break;
+    case GameEvent.REMOTE_MOVE:
+      handleRemoteMove(event.getMove());
+      break;
+    case GameEvent.END_REMOTE_TURN:
+      handleEndRemoteTurn(event.getTaunt());
+      break;
+    case GameEvent.REMOTE_GAME_OVER:
+      handleGameOver(event.getTaunt());
+      break;
+    case GameEvent.DONE_SENDING:
+      handleDoneSending();
+      break;
+    case GameEvent.LOCAL_MOVE:
+      handleMove(event.getMove());
+      break;
+    case GameEvent.END_LOCAL_TURN:
+      handleEndTurn();
+      break;
+    case GameEvent.CHECK_REMOTE_TURN:
+      handleCheckRemoteTurn(event.getValue());
+      break;
+    case GameEvent.REMOTE_POSITION:
+      handleRemotePosition(event.getPosition(), 
+          (event.getValue() & 1) != 0, event.getValue() >> 1);
+      break;
+    case GameEvent.CHECKPOINT:
+      saveCheckpoint();
+      break;
+    default:
+      handleEndGame();
+      break;
+    }
+  }
+
   //--------------------------------------------------------
   //  sending methods
 
@@ -156,32 +393,69 @@ public class MoveManager {
    */
   public void sendInvitation(String phoneNumber) {
     mySMSManager.sendInvitation(phoneNumber);
-    myCanvas.setWaitScreen(true);
-    myCanvas.start();
-    myCanvas.repaint();
-    myCanvas.serviceRepaints();
+    myScreen.setWaitScreen(true);
+    myGame.start();
+    myScreen.repaintBoard();
+  }
+
+  /**
+   * Ask the remote player for its board, in case the 
+   * message with its turn was lost.  (This only does 
+   * anything while waiting for the remote player.)
+   */
+  public void requestResync() {
+    if((myComputerPlayer == null) && (myState == REMOTE_TURN)) {
+      mySMSManager.requestResync();
+    }
+  }
+
+  /**
+   * Start a game against the computer instead of a 
+   * remote player.  The local player moves first.  The
+   * messages stop being read for the rest of the game, 
+   * since any that came in would be taken for the 
+   * computer's moves.
+   * @param timeBudget the number of milliseconds the 
+   *        computer may think about each move.
+   * @param threadCount the number of threads the 
+   *        computer may think with.
+   */
+  public void playComputer(long timeBudget, int threadCount) {
+    mySMSManager.shutDown();
+    myComputerPlayer = new ComputerPlayer(this, timeBudget, threadCount);
+    myComputerPlayer.start();
+    changeState(ANY_STATE, LOCAL_TURN);
+    myScreen.setWaitScreen(false);
+    myGame.start();
+    myScreen.repaintBoard();
   }
 
   /**
-   * This is called when the player moves a piece.
+   * This is called when the player moves a piece.  (The
+   * state stays LOCAL_TURN, since the piece may go on 
+   * jumping, until endTurn is called.)
    */
-  synchronized void move(byte sourceX, byte sourceY, byte destinationX, 
+  void move(byte sourceX, byte sourceY, byte destinationX, 
        byte destinationY) {
     byte[] move = new byte[4];
     move[0] = sourceX;
     move[1] = sourceY;
     move[2] = destinationX;
     move[3] = destinationY;
-    myState = LOCAL_TURN;
-    mySMSManager.setLocalMove(move);
+    post(GameEvent.LOCAL_MOVE, move, null, null);
   }
 
   /**
    * This is called when the local player's turn is over.
+   * The state leaves LOCAL_TURN right away rather than 
+   * when the dispatcher gets to the event, so the canvas
+   * stops taking keystrokes for a turn that is over (and 
+   * the turn can't be ended twice).
    */
-  synchronized void endTurn() {
-    myState = SENDING_LOCAL_TURN;
-    mySMSManager.sendLocalMove();
+  void endTurn() {
+    if(changeState(LOCAL_TURN, SENDING_LOCAL_TURN)) {
+      post(GameEvent.END_LOCAL_TURN, null, null, null);
+    }
   }
 
   /**
@@ -189,30 +463,22 @@ public class MoveManager {
    * player, if any.  Then clears the text.
    */
   public String getTaunt() {
-    return myCheckers.getTauntMessage();
+    return myScreen.getTauntMessage();
   }
 
   /**
    * Stop the game entirely.  Notify the remote player that 
    * the user is exiting the game.
    */
-  synchronized void endGame() {
-    mySMSManager.shutDown();
-    if(myState != GAME_OVER) {
-      myState = GAME_OVER;
-      mySMSManager.sendGameOver();
-      myCanvas.repaint();
-      myCanvas.serviceRepaints();
-    } else {
-      myCheckers.quit();
-    }
+  void endGame() {
+    post(GameEvent.END_GAME, null, null, null);
   }
 
   /**
    * End the game because the local player has no more moves..
    */
   void loseGame() {
-    myCheckers.setWinTaunt();
+    myScreen.setWinTaunt();
     endGame();
   }
 
@@ -221,69 +487,515 @@ public class MoveManager {
    * to indicate that the move has been sent.
    */
   public void doneSending() {
-    if(myState == GAME_OVER) {
-      myCheckers.quit();
+    post(GameEvent.DONE_SENDING, null, null, null);
+  }
+
+  /**
+   * Record the local player's hop and prepare it to be sent.
+   */
+  private void handleMove(byte[] move) {
+    myJournal.recordHop(false, CheckersGame.getSquare(move[0], move[1]),
+        CheckersGame.getSquare(move[2], move[3]));
+    // (the state isn't changed, since the turn may 
+    // already have been ended, see endTurn)
+    if(isGameOver()) {
+      return;
+    }
+    if(myComputerPlayer == null) {
+      mySMSManager.setLocalMove(move);
+    }
+    // else the computer is handed the board when the turn
+    // ends (see handleEndTurn), so there's nothing to send.
+  }
+
+  /**
+   * Send the local player's turn (or hand the turn to
+   * the computer).
+   */
+  private void handleEndTurn() {
+    if(myComputerPlayer != null) {
+      if(changeState(SENDING_LOCAL_TURN, REMOTE_TURN)) {
+        // the computer keeps its own copy of the board, 
+        // since the game logic is only read on this thread:
+        myComputerPlayer.startTurn(myGame.getLocalMen(), 
+            myGame.getLocalKings(), myGame.getRemoteMen(), 
+            myGame.getRemoteKings());
+      }
+      return;
+    }
+    // (the state was changed when the turn was ended, 
+    // unless the remote player's board has come in since)
+    if(isInState(SENDING_LOCAL_TURN)) {
+      mySMSManager.sendLocalMove();
+    }
+  }
+
+  /**
+   * Stop the game, telling the remote player, or quit if 
+   * the game was already over.
+   */
+  private void handleEndGame() {
+    mySMSManager.shutDown();
+    myPonderer.stopPondering();
+    myCheckpoints.clear();
+    if(myComputerPlayer != null) {
+      myComputerPlayer.shutDown();
+      if(changeState(ANY_STATE, GAME_OVER)) {
+        myScreen.repaintBoard();
+      } else {
+        myScreen.quit();
+      }
+      return;
+    }
+    if(changeState(ANY_STATE, GAME_OVER)) {
+      mySMSManager.sendGameOver();
+      myScreen.repaintBoard();
     } else {
-      myState = REMOTE_TURN;
+      myScreen.quit();
     }
   }
 
+  /**
+   * Once a message is out, wait for the remote player 
+   * (or quit if it was the message that ends the game).
+   */
+  private void handleDoneSending() {
+    if(isGameOver()) {
+      myScreen.quit();
+    } else if(changeState(SENDING_LOCAL_TURN, REMOTE_TURN)
+              // or the invitation was sent:
+              || changeState(NOT_STARTED, REMOTE_TURN)) {
+      startPondering();
+    }
+  }
+
+  /**
+   * Start thinking about the local player's next move
+   * while the remote player takes a turn.
+   */
+  private void startPondering() {
+    myPonderer.startPondering(myGame.getLocalMen(), myGame.getLocalKings(),
+        myGame.getRemoteMen(), myGame.getRemoteKings());
+  }
+
   //--------------------------------------------------------
   //  receiving methods
 
   /**
    * Receive the game invitation SMS.
    */
-  public synchronized void receiveInvitation(String taunt, 
-        String phoneNum) {
-    myState = LOCAL_TURN;
-    myCanvas.setWaitScreen(false);
-    myCanvas.start();
-    myCanvas.repaint();
-    myCanvas.serviceRepaints();
+  public void receiveInvitation(String taunt, String phoneNum) {
+    post(GameEvent.INVITATION, null, taunt, phoneNum);
+  }
+
+  /**
+   * Interpret one move by the remote player.
+   */
+  public void receiveRemoteMove(byte[] fourBytes) {
+    // the caller may reuse its array, so the event
+    // gets its own copy:
+    byte[] move = new byte[4];
+    System.arraycopy(fourBytes, 0, move, 0, 4);
+    post(GameEvent.REMOTE_MOVE, move, null, null);
+  }
+
+  /**
+   * Set the game to ended upon receiving the end game 
+   * signal from the remote player.
+   */
+  public void receiveGameOver(String taunt) {
+    post(GameEvent.REMOTE_GAME_OVER, null, taunt, null);
+  }
+
+  /**
+   * Receive the signal that the remote player is done 
+   * moving (no more jumps possible).
+   */
+  public void endRemoteTurn(String taunt) {
+    post(GameEvent.END_REMOTE_TURN, null, taunt, null);
+  }
+
+  /**
+   * Gets a copy of the board.  (This is called from the 
+   * sending and receiving threads while the user may be
+   * moving a piece, so the game logic makes the copy under
+   * its lock.)
+   */
+  public void getPosition(int[] position) {
+    myGame.getPosition(position);
+  }
+
+  /**
+   * Receive the hash of the remote player's board after
+   * its hops.
+   */
+  public void checkRemoteTurn(int hash) {
+    post(GameEvent.CHECK_REMOTE_TURN, hash, null);
+  }
+
+  /**
+   * Receive the remote player's board.
+   */
+  public void receivePosition(int[] position, boolean localTurn,
+                              int sequence) {
+    // the caller reuses its array, so the event gets
+    // its own copy:
+    int[] copy = new int[4];
+    System.arraycopy(position, 0, copy, 0, 4);
+    int value = 2*sequence;
+    if(localTurn) {
+      value++;
+    }
+    post(GameEvent.REMOTE_POSITION, value, copy);
+  }
+
+  /**
+   * Start the game that the remote player has invited
+   * the local player to.
+   */
+  private void handleInvitation(String taunt, String phoneNum) {
+    // (an invitation that was read just before a game 
+    // against the computer started is too late)
+    if((myComputerPlayer != null) || (! changeState(ANY_STATE, LOCAL_TURN))) {
+      return;
+    }
+    myScreen.setWaitScreen(false);
+    myGame.start();
+    myScreen.repaintBoard();
     StringBuffer buff = new StringBuffer(phoneNum);
     buff.append(" invites you to play checkers");
     if(taunt != null) {
       buff.append(": ");
       buff.append(taunt);
     }
-    myCheckers.displayTauntMessage(buff.toString());
+    myScreen.displayTauntMessage(buff.toString());
   }
-  
+
   /**
-   * Interpret one move by the remote player.
+   * Play one hop of the remote player's turn.
    */
-  public synchronized void receiveRemoteMove(byte[] fourBytes) {
-    myState = REMOTE_TURN;
+  private void handleRemoteMove(byte[] fourBytes) {
+    // once the boards are found to be out of sync, the 
+    // rest of the turn waits for the remote player's board,
+    // and a hop that comes during the local player's turn
+    // is a stale one:
+    if(myIsOutOfSync || (! isRemoteMoving())) {
+      return;
+    }
+    // the remote player's board is upside down:
+    int source = CheckersGame.SQUARE_COUNT - 1
+        - CheckersGame.getSquare(fourBytes[0], fourBytes[1]);
+    int destination = CheckersGame.SQUARE_COUNT - 1
+        - CheckersGame.getSquare(fourBytes[2], fourBytes[3]);
+    if(! fitsBoard(source, destination)) {
+      myIsOutOfSync = true;
+      // (the computer has no board to send)
+      if(myComputerPlayer == null) {
+        mySMSManager.requestResync();
+      }
+      return;
+    }
+    // the remote player's turn has begun, even if the 
+    // notice that the local turn (or the invitation) was
+    // sent is still in the queue (see handleDoneSending):
+    if((! changeState(SENDING_LOCAL_TURN, REMOTE_TURN))
+       && (! changeState(NOT_STARTED, REMOTE_TURN))
+       && (! isInState(REMOTE_TURN))) {
+      return;
+    }
+    myJournal.recordHop(true, source, destination);
     myGame.moveOpponent(fourBytes);
   }
-  
+
   /**
-   * Set the game to ended upon receiving the end game 
-   * signal from the remote player.
+   * Checks a hop of the remote player's against the board 
+   * (which may have gotten out of sync with the remote 
+   * player's, for example if the remote player's board 
+   * was sent in the middle of its turn).
+   * @return whether a remote piece is on the source square,
+   *         the destination square is empty, and a local 
+   *         piece is on the square jumped over (if any).
    */
-  public synchronized void receiveGameOver(String taunt) {
-    myState = GAME_OVER;
-    mySMSManager.shutDown();
-    myCanvas.repaint();
-    myCanvas.serviceRepaints();
+  private boolean fitsBoard(int source, int destination) {
+    int local = myGame.getLocalMen() | myGame.getLocalKings();
+    int remote = myGame.getRemoteMen() | myGame.getRemoteKings();
+    int jumped = CheckersGame.getJumpedSquare(source, destination);
+    return(((remote & (1 << source)) != 0)
+           && (((local | remote) & (1 << destination)) == 0)
+           && ((jumped == -1) || ((local & (1 << jumped)) != 0)));
+  }
+
+  /**
+   * End the game because the remote player has.
+   */
+  private void handleGameOver(String taunt) {
+    myPonderer.stopPondering();
+    myCheckpoints.clear();
+    if(changeState(ANY_STATE, GAME_OVER)) {
+      mySMSManager.shutDown();
+      myScreen.repaintBoard();
+    }
     if(taunt != null) {
-      myCheckers.displayTauntMessage(taunt);
+      myScreen.displayTauntMessage(taunt);
     }
   }
-  
+
   /**
-   * Receive the signal that the remote player is done 
-   * moving (no more jumps possible).
+   * Compare the board after the remote player's hops 
+   * with the remote player's, and ask for the remote
+   * player's board if they're not the same.
+   */
+  private void handleCheckRemoteTurn(int hash) {
+    if(! isRemoteMoving()) {
+      return;
+    }
+    int[] position = new int[4];
+    getPosition(position);
+    if(FrameCodec.hashPosition(position, true) != hash) {
+      myIsOutOfSync = true;
+      mySMSManager.requestResync();
+    }
+  }
+
+  /**
+   * Replace the board with the remote player's, and 
+   * give the turn to whichever player is to move.  The
+   * board was asked for while waiting for the remote 
+   * player (see SMSManager.receiveBoard), so if the local 
+   * player's turn has started since then, the board is 
+   * out of date and is ignored, as is a board that can't 
+   * come up in a game.
+   * @param sequence the sequence number of the last turn 
+   *        the remote player played.
+   */
+  private void handleRemotePosition(int[] position, boolean localTurn,
+                                    int sequence) {
+    if((! isInState(REMOTE_TURN)) || (! isPossible(position))) {
+      return;
+    }
+    myIsOutOfSync = false;
+    mySMSManager.acceptBoard(sequence);
+    myPonderer.stopPondering();
+    myGame.setPosition(position[0], position[1], position[2], position[3]);
+    // the record starts over from the new board:
+    myJournal = new GameJournal(position[0], position[1], position[2],
+                                position[3]);
+    if(localTurn) {
+      if(changeState(REMOTE_TURN, LOCAL_TURN)) {
+        myGame.endOpponentTurn();
+        myScreen.setWaitScreen(false);
+      }
+    } else {
+      myScreen.setWaitScreen(true);
+      startPondering();
+    }
+    myScreen.repaintBoard();
+  }
+
+  /**
+   * Checks a board that came from outside (from the remote
+   * player or a checkpoint) before it's played on.
+   * @return whether no square holds two pieces, each side 
+   *         has at most twelve pieces, and no man is on 
+   *         the row where it would have been crowned.
+   */
+  private static boolean isPossible(int[] position) {
+    int local = position[0] | position[1];
+    int remote = position[2] | position[3];
+    return(((position[0] & position[1]) == 0)
+           && ((position[2] & position[3]) == 0)
+           && ((local & remote) == 0)
+           && (CheckersGame.countSquares(local) <= MAX_PIECES)
+           && (CheckersGame.countSquares(remote) <= MAX_PIECES)
+           && ((position[0] & CheckersGame.TOP_ROW) == 0)
+           && ((position[2] & CheckersGame.BOTTOM_ROW) == 0));
+  }
+
+  /**
+   * Begin the local player's turn.
    */
-  public synchronized void endRemoteTurn(String taunt) {
-    myState = LOCAL_TURN;
-    myGame.endOpponentTurn();
-    myCanvas.setWaitScreen(false);
-    myCanvas.repaint();
-    myCanvas.serviceRepaints();
+  private void handleEndRemoteTurn(String taunt) {
+    myPonderer.stopPondering();
+    // if the boards are out of sync, the turn starts 
+    // once the remote player's board comes in:
+    if((! myIsOutOfSync) && isRemoteMoving() 
+       && changeState(ANY_STATE, LOCAL_TURN)) {
+      myGame.endOpponentTurn();
+      // if the remote player made one of the replies that
+      // was thought about, the answer is ready to play:
+      myGame.selectMove(myPonderer.getSuggestion(myGame.getLocalMen(),
+          myGame.getLocalKings(), myGame.getRemoteMen(),
+          myGame.getRemoteKings()));
+      myScreen.setWaitScreen(false);
+      myScreen.repaintBoard();
+    }
     if(taunt != null) {
-      myCheckers.displayTauntMessage(taunt);
+      myScreen.displayTauntMessage(taunt);
+    }
+  }
+
+  //--------------------------------------------------------
+  //  checkpoint methods
+
+  /**
+   * Save the game as it is now, so that it can be picked 
+   * up again (see restore), or delete the checkpoint if 
+   * there's no game in progress over the network.  (This
+   * is called on the dispatcher thread, except when the
+   * application is shut down.)  The checkpoint is:
+   *
+   * byte 0 = CHECKPOINT_VERSION
+   * byte 1 = the state to resume in (LOCAL_TURN or REMOTE_TURN)
+   * byte 2 = the sequence number of the last turn played
+   * then the remote player's phone number (as by writeUTF),
+   * then the board before the local player's turn began
+   * (the four bitboards as ints), then the number of hops 
+   * the local player has made so far in a series of jumps,
+   * and the source and destination square of each, then 
+   * the taunts that have been given ids (see 
+   * TauntCodec.write).
+   */
+  private void saveCheckpoint() {
+    int state;
+    synchronized(myStateLock) {
+      state = myState;
+      if(state == PAUSED) {
+        state = myPreviousState;
+      }
+    }
+    // a turn that is being sent is over as far as the
+    // local player is concerned:
+    if(state == SENDING_LOCAL_TURN) {
+      state = REMOTE_TURN;
+    }
+    String phoneNum = mySMSManager.getPhoneNum();
+    if((myComputerPlayer != null) || (phoneNum == null)
+       || ((state != LOCAL_TURN) && (state != REMOTE_TURN))) {
+      myCheckpoints.clear();
+      return;
+    }
+    int[] position = new int[4];
+    int hopCount = myJournal.getHopCount();
+    int first = hopCount;
+    if((state == LOCAL_TURN) && (myGame.getJumpingSquare() != -1)) {
+      // the hops of the series of jumps are the local 
+      // hops at the end of the record:
+      while((first > 0) 
+            && (! GameJournal.isRemote(myJournal.getHop(first - 1)))) {
+        first--;
+      }
+      myJournal.getPosition(first, position);
+    } else {
+      getPosition(position);
+    }
+    try {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      DataOutputStream dos = new DataOutputStream(baos);
+      dos.writeByte(CHECKPOINT_VERSION);
+      dos.writeByte(state);
+      dos.writeByte(mySMSManager.getSequence());
+      dos.writeUTF(phoneNum);
+      for(int i = 0; i < 4; i++) {
+        dos.writeInt(position[i]);
+      }
+      dos.writeByte(hopCount - first);
+      for(int i = first; i < hopCount; i++) {
+        int hop = myJournal.getHop(i);
+        dos.writeByte(GameJournal.getSource(hop));
+        dos.writeByte(GameJournal.getDestination(hop));
+      }
+      mySMSManager.getTaunts().write(dos);
+      dos.close();
+      myCheckpoints.save(baos.toByteArray());
+    } catch(IOException e) {
+      // writing to an array doesn't throw.
+    }
+  }
+
+  /**
+   * Pick up the game that was saved when the application
+   * was shut down, if there is one.  The hops of a 
+   * series of jumps are played again from the board 
+   * before the turn, so that they're in the record and 
+   * in the turn to send (see resumeTurn).
+   * @return whether a game was picked up.
+   */
+  private boolean restore() {
+    byte[] record = CheckpointStore.load();
+    if(record == null) {
+      return(false);
+    }
+    int state;
+    int sequence;
+    String phoneNum;
+    int[] position = new int[4];
+    int[] squares;
+    TauntCodec taunts;
+    try {
+      // decode the whole record before changing anything,
+      // in case it's damaged:
+      DataInputStream dis = new DataInputStream(
+          new ByteArrayInputStream(record));
+      if(dis.readByte() != CHECKPOINT_VERSION) {
+        return(false);
+      }
+      state = dis.readByte();
+      sequence = dis.readByte();
+      phoneNum = dis.readUTF();
+      for(int i = 0; i < 4; i++) {
+        position[i] = dis.readInt();
+      }
+      squares = new int[2*dis.readByte()];
+      for(int i = 0; i < squares.length; i++) {
+        squares[i] = dis.readByte();
+        if((squares[i] < 0) 
+           || (squares[i] >= CheckersGame.SQUARE_COUNT)) {
+          return(false);
+        }
+      }
+      taunts = TauntCodec.read(dis);
+    } catch(IOException e) {
+      // a damaged checkpoint is ignored, and the game
+      // starts over as usual.
+      return(false);
+    }
+    if(((state != LOCAL_TURN) && (state != REMOTE_TURN))
+       || (! isPossible(position))) {
+      return(false);
+    }
+    myJournal = new GameJournal(position[0], position[1], position[2],
+                                position[3]);
+    mySMSManager.resume(phoneNum, sequence, taunts);
+    byte[] move = new byte[4];
+    for(int i = 0; i < squares.length; i += 2) {
+      myJournal.recordHop(false, squares[i], squares[i + 1]);
+      move[0] = (byte)(squares[i] & 3);
+      move[1] = (byte)(squares[i] >> 2);
+      move[2] = (byte)(squares[i + 1] & 3);
+      move[3] = (byte)(squares[i + 1] >> 2);
+      mySMSManager.setLocalMove(move);
+    }
+    myJournal.getPosition(myJournal.getHopCount(), position);
+    myGame.setPosition(position[0], position[1], position[2], position[3]);
+    return(changeState(NOT_STARTED, state));
+  }
+
+  /**
+   * Start the turn of the game that was picked up (see 
+   * restore):  the local player can go on jumping, or
+   * starts the turn (or loses, if no piece can move), 
+   * or waits for the remote player.
+   */
+  private void resumeTurn() {
+    int hopCount = myJournal.getHopCount();
+    if(isInState(REMOTE_TURN)) {
+      myScreen.setWaitScreen(true);
+      startPondering();
+    } else if(hopCount > 0) {
+      myGame.resumeJump(GameJournal.getDestination(
+          myJournal.getHop(hopCount - 1)));
+    } else {
+      myGame.endOpponentTurn();
     }
   }
 
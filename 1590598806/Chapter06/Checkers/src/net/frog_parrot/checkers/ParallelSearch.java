@@ -0,0 +1,160 @@
+package net.frog_parrot.checkers;
+
+/**
+ * This class searches one position on several threads at
+ * once (the "lazy SMP" method).  Every thread runs an
+ * ordinary CheckersEngine search of the whole tree, but
+ * they all share one transposition table, so each thread
+ * skips the parts of the tree that the others have
+ * already searched.  Half of the helper threads start
+ * one iteration deeper than the main thread so that the
+ * threads don't all work on the same depth.
+ *
+ * With one thread, this is the same as using a single
+ * CheckersEngine.
+ */
+public class ParallelSearch {
+
+  //--------------------------------------------------------
+  //  instance fields
+
+  /**
+   * The table shared by all of the threads.
+   */
+  private TranspositionTable myTable;
+
+  /**
+   * The engine that runs on the calling thread.
+   */
+  private CheckersEngine myMainEngine;
+
+  /**
+   * The extra search threads.
+   */
+  private SearchHelper[] myHelpers;
+
+  /**
+   * The deepest iteration completed by the last search.
+   */
+  private int myCompletedDepth;
+
+  /**
+   * The score of the move returned by the last search.
+   */
+  private int myScore;
+
+  //--------------------------------------------------------
+  //  lifecycle
+
+  /**
+   * Allocate the table and start the helper threads.
+   * @param threadCount the total number of threads to
+   *        search with (including the calling thread).
+   * @param tableBits the shared table holds 2^tableBits
+   *        entries.
+   */
+  public ParallelSearch(int threadCount, int tableBits) {
+    myTable = new TranspositionTable(tableBits);
+    myMainEngine = new CheckersEngine(myTable);
+    if(threadCount < 1) {
+      threadCount = 1;
+    }
+    myHelpers = new SearchHelper[threadCount - 1];
+    for(int i = 0; i < myHelpers.length; i++) {
+      myHelpers[i] = new SearchHelper(myTable);
+      myHelpers[i].start();
+    }
+  }
+
+  /**
+   * Sets the endgame database for all of the threads.
+   * @param endgames the database or null for none.
+   */
+  public void setEndgameDatabase(EndgameDatabase endgames) {
+    myMainEngine.setEndgameDatabase(endgames);
+    for(int i = 0; i < myHelpers.length; i++) {
+      myHelpers[i].getEngine().setEndgameDatabase(endgames);
+    }
+  }
+
+  /**
+   * Stop the current search and the helper threads.
+   */
+  public void shutDown() {
+    myMainEngine.stop();
+    for(int i = 0; i < myHelpers.length; i++) {
+      myHelpers[i].shutDown();
+    }
+  }
+
+  //--------------------------------------------------------
+  //  search
+
+  /**
+   * Finds the best move for the side to move.  The
+   * arguments are the same as for CheckersEngine.findMove.
+   * @return the packed move (see MoveList) or -1 if the
+   *         side to move has no moves.
+   */
+  public int findMove(int men, int kings, int oppMen, int oppKings,
+                      boolean towardTop, int continueSquare,
+                      long timeBudget) {
+    myTable.newSearch();
+    long deadline = System.currentTimeMillis() + timeBudget;
+    for(int i = 0; i < myHelpers.length; i++) {
+      myHelpers[i].startSearch(men, kings, oppMen, oppKings, towardTop,
+          continueSquare, deadline, 1 + ((i + 1) & 1));
+    }
+    int move = myMainEngine.search(men, kings, oppMen, oppKings,
+        towardTop, continueSquare, deadline, 1);
+    myCompletedDepth = myMainEngine.getCompletedDepth();
+    myScore = myMainEngine.getScore();
+    // the main thread is done, so the others can stop too:
+    for(int i = 0; i < myHelpers.length; i++) {
+      myHelpers[i].stopSearch();
+    }
+    for(int i = 0; i < myHelpers.length; i++) {
+      myHelpers[i].waitUntilIdle();
+      // take the result of a helper that got deeper:
+      CheckersEngine engine = myHelpers[i].getEngine();
+      int helperMove = myHelpers[i].getMove();
+      if((helperMove != -1)
+         && (engine.getCompletedDepth() > myCompletedDepth)) {
+        move = helperMove;
+        myCompletedDepth = engine.getCompletedDepth();
+        myScore = engine.getScore();
+      }
+    }
+    return(move);
+  }
+
+  //--------------------------------------------------------
+  //  statistics
+
+  /**
+   * @return the number of positions visited by all of the
+   *         threads during the last search.
+   */
+  public int getNodes() {
+    int nodes = myMainEngine.getNodes();
+    for(int i = 0; i < myHelpers.length; i++) {
+      nodes += myHelpers[i].getEngine().getNodes();
+    }
+    return(nodes);
+  }
+
+  /**
+   * @return the deepest iteration the last search completed.
+   */
+  public int getCompletedDepth() {
+    return(myCompletedDepth);
+  }
+
+  /**
+   * @return the score of the last move found.
+   */
+  public int getScore() {
+    return(myScore);
+  }
+
+}
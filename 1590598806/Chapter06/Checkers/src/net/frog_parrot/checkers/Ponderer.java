@@ -0,0 +1,359 @@
+package net.frog_parrot.checkers;
+
+/**
+ * This class thinks about the local player's next move
+ * while waiting for the remote player's turn, which can
+ * take minutes over SMS.  It lists the replies that the
+ * remote player can make, ranks them by how good they look
+ * for the remote player, and then searches the local
+ * player's best answer to each of the likeliest ones, on
+ * a thread of the lowest priority so that it doesn't slow
+ * down the rest of the game.  Each answer is kept with
+ * the hash key of the position it answers, so once the
+ * remote player's turn is over, the suggestion for the
+ * position on the board (if it was one of the ones
+ * foreseen) is available at once.
+ *
+ * The searches are repeated with twice the time each
+ * round, so the answers get better the longer the remote
+ * player takes.
+ */
+class Ponderer implements Runnable {
+
+  //--------------------------------------------------------
+  //  static fields
+
+  /**
+   * The most replies to think about.
+   */
+  static final int MAX_REPLIES = 8;
+
+  /**
+   * The most hops in one reply (a series of jumps).
+   */
+  static final int MAX_HOPS = 12;
+
+  /**
+   * The number of milliseconds to search each reply in
+   * the first round.
+   */
+  static final long FIRST_ROUND_TIME = 250;
+
+  /**
+   * The most milliseconds to search each reply in one round.
+   */
+  static final long LAST_ROUND_TIME = 8000;
+
+  /**
+   * The size of the transposition table (2^10 entries =
+   * 16K bytes).
+   */
+  static final int TABLE_BITS = 10;
+
+  //--------------------------------------------------------
+  //  instance fields
+
+  /**
+   * The search engine (which only this class uses).
+   */
+  private CheckersEngine myEngine
+      = new CheckersEngine(new TranspositionTable(TABLE_BITS));
+
+  /**
+   * The position the remote player is to move from:
+   * the local men, the local kings, the remote men, and
+   * the remote kings.
+   */
+  private int[] myPosition = new int[4];
+
+  /**
+   * The positions after the likeliest replies, four ints
+   * each, likeliest first.
+   */
+  private int[] myReplies = new int[4*MAX_REPLIES];
+
+  /**
+   * How good each reply looks for the remote player.
+   */
+  private int[] myReplyScores = new int[MAX_REPLIES];
+
+  /**
+   * The number of replies found.
+   */
+  private int myReplyCount;
+
+  /**
+   * The hash keys of the positions that have answers.
+   */
+  private long[] myKeys = new long[MAX_REPLIES];
+
+  /**
+   * The local player's answer to each position (a packed
+   * move, see MoveList).
+   */
+  private int[] myAnswers = new int[MAX_REPLIES];
+
+  /**
+   * The number of positions that have answers.
+   */
+  private int myAnswerCount;
+
+  /**
+   * The move lists for listing the replies, one for each
+   * hop of a series of jumps.
+   */
+  private MoveList[] myMoveLists = new MoveList[MAX_HOPS];
+
+  /**
+   * Counts the requests to start and stop pondering, so
+   * that the thread can tell when its work is out of date.
+   */
+  private int myGeneration;
+
+  /**
+   * Whether there's a new position to think about.
+   */
+  private boolean myHasWork;
+
+  /**
+   * Whether the thread has been started.
+   */
+  private boolean myIsStarted;
+
+  /**
+   * Whether it's time to clean up.
+   */
+  private boolean myShouldStop;
+
+  //--------------------------------------------------------
+  //  lifecycle
+
+  /**
+   * Allocate the move lists.
+   */
+  Ponderer() {
+    for(int i = 0; i < MAX_HOPS; i++) {
+      myMoveLists[i] = new MoveList();
+    }
+  }
+
+  /**
+   * Start thinking about the replies to the given position,
+   * where the remote player is to move.  (Any answers
+   * from the last time are thrown away.)
+   */
+  synchronized void startPondering(int localMen, int localKings,
+                                   int remoteMen, int remoteKings) {
+    stopPondering();
+    myPosition[0] = localMen;
+    myPosition[1] = localKings;
+    myPosition[2] = remoteMen;
+    myPosition[3] = remoteKings;
+    myAnswerCount = 0;
+    myHasWork = true;
+    if(! myIsStarted) {
+      myIsStarted = true;
+      Thread thread = new Thread(this);
+      thread.setPriority(Thread.MIN_PRIORITY);
+      thread.start();
+    }
+    notify();
+  }
+
+  /**
+   * Stop thinking.  The search in progress stops at once,
+   * and the answers found so far are kept.
+   */
+  synchronized void stopPondering() {
+    myGeneration++;
+    myHasWork = false;
+    myEngine.stop();
+  }
+
+  /**
+   * Set the thread to die.
+   */
+  synchronized void shutDown() {
+    stopPondering();
+    myShouldStop = true;
+    notify();
+  }
+
+  /**
+   * Look up the answer to the given position, where the
+   * local player is to move.
+   * @return the packed move (see MoveList) or -1 if the
+   *         position wasn't foreseen.
+   */
+  synchronized int getSuggestion(int localMen, int localKings,
+                                 int remoteMen, int remoteKings) {
+    long key = CheckersGame.computeHashKey(localMen, localKings,
+                                           remoteMen, remoteKings);
+    for(int i = 0; i < myAnswerCount; i++) {
+      if(myKeys[i] == key) {
+        return(myAnswers[i]);
+      }
+    }
+    return(-1);
+  }
+
+  /**
+   * Wait for each position, then think about it.
+   */
+  public void run() {
+    while(true) {
+      int generation;
+      synchronized(this) {
+        while((! myHasWork) && (! myShouldStop)) {
+          try {
+            wait();
+          } catch(InterruptedException e) {
+          }
+        }
+        if(myShouldStop) {
+          return;
+        }
+        myHasWork = false;
+        generation = myGeneration;
+        myReplyCount = 0;
+        listReplies(myPosition[0], myPosition[1], myPosition[2],
+                    myPosition[3], -1, 0);
+      }
+      ponder(generation);
+    }
+  }
+
+  //--------------------------------------------------------
+  //  thinking
+
+  /**
+   * Search the answers to the replies, a round at a time,
+   * until pondering is stopped or the last round is done.
+   */
+  private void ponder(int generation) {
+    for(long time = FIRST_ROUND_TIME; time <= LAST_ROUND_TIME;
+        time *= 2) {
+      for(int i = 0; i < myReplyCount; i++) {
+        int index = 4*i;
+        synchronized(this) {
+          if(generation != myGeneration) {
+            return;
+          }
+          // (since stopPondering stops the engine while
+          // holding the lock, this can't clear a stop
+          // that's meant for the coming search.)
+          myEngine.resetStop();
+        }
+        int move = myEngine.findMove(myReplies[index],
+            myReplies[index + 1], myReplies[index + 2],
+            myReplies[index + 3], true, -1, time);
+        synchronized(this) {
+          // a search that was cut short isn't as good as
+          // the answer from the round before:
+          if(generation != myGeneration) {
+            return;
+          }
+          setAnswer(CheckersGame.computeHashKey(myReplies[index],
+              myReplies[index + 1], myReplies[index + 2],
+              myReplies[index + 3]), move);
+        }
+      }
+    }
+  }
+
+  /**
+   * Store the answer to a position (replacing the answer
+   * from an earlier round).
+   */
+  private void setAnswer(long key, int move) {
+    for(int i = 0; i < myAnswerCount; i++) {
+      if(myKeys[i] == key) {
+        myAnswers[i] = move;
+        return;
+      }
+    }
+    myKeys[myAnswerCount] = key;
+    myAnswers[myAnswerCount] = move;
+    myAnswerCount++;
+  }
+
+  /**
+   * Lists the remote player's possible replies, keeping
+   * the ones that look best for the remote player.  A
+   * piece that jumps keeps jumping while it can, as in
+   * the search.
+   * @param continueSquare the square of the piece that is
+   *        in the middle of a series of jumps, or -1.
+   * @param hop the number of hops made so far.
+   */
+  private void listReplies(int localMen, int localKings, int remoteMen,
+                           int remoteKings, int continueSquare, int hop) {
+    MoveList moves = myMoveLists[hop];
+    CheckersEngine.generate(remoteMen, remoteKings, localMen, localKings,
+                            false, continueSquare, false, moves);
+    for(int i = 0; i < moves.size(); i++) {
+      int move = moves.get(i);
+      int destination = MoveList.getDestination(move);
+      int fromTo = (1 << MoveList.getSource(move)) | (1 << destination);
+      int men = remoteMen;
+      int kings = remoteKings;
+      if((kings & fromTo) != 0) {
+        kings ^= fromTo;
+      } else {
+        men ^= fromTo;
+        // crown the piece if it reached the far side:
+        if(((1 << destination) & CheckersGame.BOTTOM_ROW) != 0) {
+          men ^= 1 << destination;
+          kings |= 1 << destination;
+        }
+      }
+      int oppMen = localMen;
+      int oppKings = localKings;
+      int captured = MoveList.getCaptured(move);
+      if(captured != -1) {
+        oppMen &= ~(1 << captured);
+        oppKings &= ~(1 << captured);
+        if((hop + 1 < MAX_HOPS)
+           && CheckersEngine.canJump(men & (1 << destination),
+                kings & (1 << destination), oppMen | oppKings,
+                ~(men | kings | oppMen | oppKings), false)) {
+          listReplies(oppMen, oppKings, men, kings, destination, hop + 1);
+          continue;
+        }
+      }
+      addReply(oppMen, oppKings, men, kings);
+    }
+  }
+
+  /**
+   * Add the position after a reply to the list if it's
+   * one of the MAX_REPLIES that look best for the remote
+   * player (by the static evaluation).
+   */
+  private void addReply(int localMen, int localKings, int remoteMen,
+                        int remoteKings) {
+    int score = CheckersEngine.evaluate(remoteMen, remoteKings, localMen,
+                                        localKings, false);
+    // find where it goes in the list, best first:
+    int place = myReplyCount;
+    while((place > 0) && (myReplyScores[place - 1] < score)) {
+      place--;
+    }
+    if(place == MAX_REPLIES) {
+      return;
+    }
+    if(myReplyCount < MAX_REPLIES) {
+      myReplyCount++;
+    }
+    for(int i = myReplyCount - 1; i > place; i--) {
+      myReplyScores[i] = myReplyScores[i - 1];
+      System.arraycopy(myReplies, 4*(i - 1), myReplies, 4*i, 4);
+    }
+    myReplyScores[place] = score;
+    myReplies[4*place] = localMen;
+    myReplies[4*place + 1] = localKings;
+    myReplies[4*place + 2] = remoteMen;
+    myReplies[4*place + 3] = remoteKings;
+  }
+
+}
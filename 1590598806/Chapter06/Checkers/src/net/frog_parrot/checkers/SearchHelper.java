@@ -0,0 +1,187 @@
+package net.frog_parrot.checkers;
+
+/**
+ * This class runs one extra search thread for a
+ * ParallelSearch.  The thread is started once and then
+ * waits for positions to search, so no threads are created
+ * while the game is being played.  Its engine shares the
+ * transposition table with the other threads, so what it
+ * finds helps them (and vice versa).
+ */
+public class SearchHelper implements Runnable {
+
+  //--------------------------------------------------------
+  //  instance fields
+
+  /**
+   * The engine that this thread searches with.
+   */
+  private CheckersEngine myEngine;
+
+  /**
+   * The position to search (see CheckersEngine.findMove).
+   */
+  private int myMen;
+  private int myKings;
+  private int myOppMen;
+  private int myOppKings;
+  private boolean myTowardTop;
+  private int myContinueSquare;
+
+  /**
+   * The time when the search has to stop.
+   */
+  private long myDeadline;
+
+  /**
+   * The depth of the first iteration.
+   */
+  private int myFirstDepth;
+
+  /**
+   * Whether there's a position waiting to be searched.
+   */
+  private boolean myHasTask;
+
+  /**
+   * Whether a search has been given and not yet finished.
+   */
+  private boolean myIsSearching;
+
+  /**
+   * Whether it's time to clean up.
+   */
+  private boolean myShouldStop;
+
+  /**
+   * The move found by the last search.
+   */
+  private int myMove = -1;
+
+  //--------------------------------------------------------
+  //  lifecycle
+
+  /**
+   * Create the engine.
+   * @param table the transposition table shared by
+   *        all of the search threads.
+   */
+  public SearchHelper(TranspositionTable table) {
+    myEngine = new CheckersEngine(table);
+  }
+
+  /**
+   * Start the thread that waits for positions to search.
+   */
+  public void start() {
+    Thread thread = new Thread(this);
+    thread.start();
+  }
+
+  /**
+   * Set this thread to die.
+   */
+  public synchronized void shutDown() {
+    myShouldStop = true;
+    myEngine.stop();
+    notifyAll();
+  }
+
+  /**
+   * Wait for each position, then search it.
+   */
+  public void run() {
+    while(true) {
+      synchronized(this) {
+        while((! myHasTask) && (! myShouldStop)) {
+          try {
+            wait();
+          } catch(InterruptedException e) {
+          }
+        }
+        if(myShouldStop) {
+          myIsSearching = false;
+          notifyAll();
+          return;
+        }
+        myHasTask = false;
+      }
+      int move = myEngine.search(myMen, myKings, myOppMen, myOppKings,
+          myTowardTop, myContinueSquare, myDeadline, myFirstDepth);
+      synchronized(this) {
+        myMove = move;
+        myIsSearching = false;
+        notifyAll();
+      }
+    }
+  }
+
+  //--------------------------------------------------------
+  //  searching
+
+  /**
+   * Hand this thread a position to search.
+   * @param deadline the time when the search has to stop.
+   * @param firstDepth the depth of the first iteration.
+   */
+  public synchronized void startSearch(int men, int kings, int oppMen,
+      int oppKings, boolean towardTop, int continueSquare,
+      long deadline, int firstDepth) {
+    myMen = men;
+    myKings = kings;
+    myOppMen = oppMen;
+    myOppKings = oppKings;
+    myTowardTop = towardTop;
+    myContinueSquare = continueSquare;
+    myDeadline = deadline;
+    myFirstDepth = firstDepth;
+    myMove = -1;
+    myEngine.resetStop();
+    myHasTask = true;
+    myIsSearching = true;
+    notifyAll();
+  }
+
+  /**
+   * Tell the current search to stop.
+   */
+  public synchronized void stopSearch() {
+    myEngine.stop();
+    if(myHasTask) {
+      // the search never got started:
+      myHasTask = false;
+      myIsSearching = false;
+      notifyAll();
+    }
+  }
+
+  /**
+   * Wait until the current search (if any) has returned.
+   */
+  public synchronized void waitUntilIdle() {
+    while(myIsSearching) {
+      try {
+        wait();
+      } catch(InterruptedException e) {
+      }
+    }
+  }
+
+  //--------------------------------------------------------
+  //  results
+
+  /**
+   * @return the move found by the last search or -1.
+   */
+  public synchronized int getMove() {
+    return(myMove);
+  }
+
+  /**
+   * @return the engine that this thread searches with.
+   */
+  CheckersEngine getEngine() {
+    return(myEngine);
+  }
+
+}
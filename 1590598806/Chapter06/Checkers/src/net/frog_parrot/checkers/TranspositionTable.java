@@ -0,0 +1,203 @@
+package net.frog_parrot.checkers;
+
+/**
+ * A fixed-size cache of search results, indexed by the
+ * Zobrist hash key of the position.  The entries are kept
+ * in two arrays of longs (no objects), grouped in buckets
+ * of two.  When a bucket is full, the entry left over from
+ * an older search or searched to a shallower depth is
+ * the one that gets replaced.
+ *
+ * Each entry stores the key XORed with the data, so an
+ * entry that was half written by one thread while another
+ * thread read it just looks like a miss.
+ */
+public class TranspositionTable {
+
+  //-------------------------------------------------------
+  //   static fields
+
+  /**
+   * A bound type:  the stored score is exact.
+   */
+  public static final int EXACT = 0;
+
+  /**
+   * A bound type:  the real score is at least the stored score.
+   */
+  public static final int LOWER_BOUND = 1;
+
+  /**
+   * A bound type:  the real score is at most the stored score.
+   */
+  public static final int UPPER_BOUND = 2;
+
+  /**
+   * The offset that makes the stored score positive.
+   */
+  private static final int SCORE_OFFSET = 1 << 19;
+
+  //-------------------------------------------------------
+  //   instance fields
+
+  /**
+   * The hash keys (XORed with the data).
+   */
+  private long[] myKeys;
+
+  /**
+   * The packed data:
+   * bits 0-15 = the best move (see MoveList), 0 if none
+   * bits 16-22 = the depth
+   * bits 23-24 = the bound type
+   * bits 25-32 = the age (which search stored it)
+   * bits 33-52 = the score plus SCORE_OFFSET.
+   */
+  private long[] myData;
+
+  /**
+   * The mask that turns a hash key into an index.
+   */
+  private int myMask;
+
+  /**
+   * The age of the current search.
+   */
+  private int myAge;
+
+  //-------------------------------------------------------
+  //   initialization
+
+  /**
+   * Allocates the table.
+   * @param sizeBits the table holds 2^sizeBits entries.
+   */
+  public TranspositionTable(int sizeBits) {
+    int size = 1 << sizeBits;
+    myKeys = new long[size];
+    myData = new long[size];
+    myMask = size - 1;
+  }
+
+  /**
+   * Marks the start of a new search, so that the entries
+   * of earlier searches are replaced first.
+   */
+  public void newSearch() {
+    myAge = (myAge + 1) & 0xFF;
+  }
+
+  /**
+   * Empties the table.
+   */
+  public void clear() {
+    for(int i = 0; i < myKeys.length; i++) {
+      myKeys[i] = 0;
+      myData[i] = 0;
+    }
+  }
+
+  //-------------------------------------------------------
+  //   lookup and storage
+
+  /**
+   * Looks up a position.
+   * @return the packed data or 0 if the position is
+   *         not in the table.
+   */
+  public long probe(long key) {
+    int index = (int)key & myMask & ~1;
+    for(int i = index; i < index + 2; i++) {
+      long data = myData[i];
+      if((data != 0) && ((myKeys[i] ^ data) == key)) {
+        return(data);
+      }
+    }
+    return(0);
+  }
+
+  /**
+   * Stores the result of searching a position.
+   * @param move the best move found or -1 if none.
+   */
+  public void store(long key, int depth, int bound, int score, int move) {
+    int index = (int)key & myMask & ~1;
+    int slot = -1;
+    for(int i = index; i < index + 2; i++) {
+      long data = myData[i];
+      if((myKeys[i] ^ data) == key) {
+        slot = i;
+        // keep the old best move if there's no new one:
+        if((move == -1) && (data != 0)) {
+          move = getMove(data);
+        }
+        break;
+      }
+    }
+    if(slot == -1) {
+      // replace the entry from an older search, or else
+      // the one that was searched less deeply:
+      slot = index;
+      long first = myData[index];
+      long second = myData[index + 1];
+      boolean firstIsOld = getAge(first) != myAge;
+      boolean secondIsOld = getAge(second) != myAge;
+      if((secondIsOld && ! firstIsOld)
+         || ((secondIsOld == firstIsOld)
+             && (getDepth(second) < getDepth(first)))) {
+        slot = index + 1;
+      }
+    }
+    long data = (move & 0xFFFFL)
+        | ((long)(depth & 0x7F) << 16)
+        | ((long)bound << 23)
+        | ((long)myAge << 25)
+        | ((long)(score + SCORE_OFFSET) << 33);
+    myData[slot] = data;
+    myKeys[slot] = key ^ data;
+  }
+
+  //-------------------------------------------------------
+  //   unpacking utilities
+
+  /**
+   * @return the stored best move or -1 if none.
+   */
+  public static int getMove(long data) {
+    int move = (int)(data & 0xFFFF);
+    if(move == 0) {
+      // a real move never starts and ends on square 0
+      return(-1);
+    }
+    return(move);
+  }
+
+  /**
+   * @return the stored depth.
+   */
+  public static int getDepth(long data) {
+    return((int)(data >> 16) & 0x7F);
+  }
+
+  /**
+   * @return the stored bound type.
+   */
+  public static int getBound(long data) {
+    return((int)(data >> 23) & 3);
+  }
+
+  /**
+   * @return the stored score.
+   */
+  public static int getScore(long data) {
+    return((int)((data >> 33) & 0xFFFFF) - SCORE_OFFSET);
+  }
+
+  /**
+   * @return the age of the search that stored the entry.
+   */
+  private static int getAge(long data) {
+    return((int)(data >> 25) & 0xFF);
+  }
+
+}
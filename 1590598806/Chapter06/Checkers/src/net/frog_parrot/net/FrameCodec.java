@@ -0,0 +1,750 @@
+package net.frog_parrot.net;
+
+/**
+ * This class encodes and decodes the frames that carry
+ * the game between the two players.  The same format is
+ * used over SMS and over Bluetooth.  Each frame is:
+ *
+ * byte 0 = the version of the format
+ * byte 1 = the type of frame
+ * byte 2 = the length of the body (0 to 255)
+ * then the body.
+ *
+ * The body of a turn is the number of hops, then the 
+ * squares the piece moves through at five bits each (see
+ * CheckersGame.getSquare):  the square the piece starts on,
+ * then the destination of each hop, since each hop of a 
+ * turn starts where the last one ended.  The last byte 
+ * of the squares is padded with zero bits.  Then comes
+ * the taunt (if any).  The body of an invitation or
+ * of a game over is just the taunt.  An acknowledgement
+ * has no body.  Taunts are encoded by TauntCodec, so
+ * the standard ones take one byte.
+ *
+ * Over SMS, where messages can be lost or arrive out of
+ * order, each turn is preceded by a check:  the turn's
+ * sequence number and a hash of the board after the turn
+ * (see hashPosition).  If the receiver finds that it has
+ * missed a turn or that its board is different, it sends
+ * a resync (which has no body), and the other player
+ * answers with a board:  the sequence number of the last
+ * turn played (with the top bit set if the sender is the
+ * one to move), then the 32 squares at three bits each
+ * (see EMPTY etc.), numbered from the sender's side of
+ * the board.
+ *
+ * A frame that is too long for one SMS is sent in parts,
+ * each in a message of its own (see SMSSender).  The body
+ * of a part is the number of the message it belongs to,
+ * then its index (high four bits) and the number of parts
+ * (low four bits), then its piece of the frame.
+ *
+ * Since each frame gives its own length, several frames
+ * can be sent one after another in one message.  An
+ * instance of this class is a cursor that reads the
+ * frames in place in the received array, one at a time,
+ * without copying them.  The taunt is only decoded into
+ * a String if it's asked for.
+ */
+public class FrameCodec {
+
+  //--------------------------------------------------------
+  //  static fields
+
+  /**
+   * The version of the format.  (This can't be mistaken
+   * for the first byte of the older unversioned format,
+   * which was a coordinate or a negative flag.  Version 16
+   * had four bytes per hop, and version 17 had taunts in
+   * plain UTF-8.)
+   */
+  public static final byte VERSION = 18;
+
+  /**
+   * The number of bytes before the body.
+   */
+  public static final int HEADER_LENGTH = 3;
+
+  /**
+   * The longest possible body.
+   */
+  public static final int MAX_BODY = 255;
+
+  /**
+   * The frame type that starts the game.
+   */
+  public static final byte INVITATION = 1;
+
+  /**
+   * The frame type that holds the moves of one turn.
+   */
+  public static final byte TURN = 2;
+
+  /**
+   * The frame type that ends the game.
+   */
+  public static final byte GAME_OVER = 3;
+
+  /**
+   * The frame type that acknowledges a turn.  (Only 
+   * sent over Bluetooth, where it's used to time the 
+   * round trip.)
+   */
+  public static final byte ACK = 4;
+
+  /**
+   * The frame type that holds the sequence number and
+   * board hash of the turn that follows it.
+   */
+  public static final byte CHECK = 5;
+
+  /**
+   * The frame type that asks the other player to send
+   * its board.
+   */
+  public static final byte RESYNC = 6;
+
+  /**
+   * The frame type that holds the whole board.
+   */
+  public static final byte BOARD = 7;
+
+  /**
+   * The frame type that holds one part of a longer frame.
+   */
+  public static final byte PART = 8;
+
+  /**
+   * The number of bytes of a part's body before its
+   * piece of the frame.
+   */
+  public static final int PART_HEADER_LENGTH = 2;
+
+  /**
+   * The length of the body of a check.
+   */
+  public static final int CHECK_LENGTH = 5;
+
+  /**
+   * The length of the body of a board.
+   */
+  public static final int BOARD_LENGTH = 13;
+
+  /**
+   * The sequence numbers count the turns modulo 128.
+   */
+  public static final int SEQUENCE_MASK = 0x7F;
+
+  /**
+   * The flag in the first byte of a board that tells
+   * that the sender is the one to move.
+   */
+  public static final int SENDER_TO_MOVE = 0x80;
+
+  /**
+   * The codes of the squares of a board.
+   */
+  public static final int EMPTY = 0;
+  public static final int SENDER_MAN = 1;
+  public static final int SENDER_KING = 2;
+  public static final int RECEIVER_MAN = 3;
+  public static final int RECEIVER_KING = 4;
+
+  /**
+   * The number of squares on the board.
+   */
+  public static final int SQUARE_COUNT = 32;
+
+  /**
+   * The number of bytes per hop, as the game gives and 
+   * takes them:  source x, source y, destination x, 
+   * destination y.
+   */
+  public static final int HOP_LENGTH = 4;
+
+  /**
+   * The number of bits per square in a turn frame.
+   */
+  public static final int SQUARE_BITS = 5;
+
+  /**
+   * The longest possible frame.
+   */
+  public static final int MAX_FRAME_LENGTH = HEADER_LENGTH + MAX_BODY;
+
+  /**
+   * The most hops in one turn frame.  (The number of hops 
+   * is one byte.  That many squares take 161 bytes, so
+   * they fit.)
+   */
+  public static final int MAX_HOPS = 255;
+
+  /**
+   * Where the first hop of a turn frame starts (after
+   * the header and the number of hops).
+   */
+  public static final int HOPS_START = HEADER_LENGTH + 1;
+
+  //--------------------------------------------------------
+  //  cursor fields
+
+  /**
+   * The data being read.
+   */
+  private byte[] myData;
+
+  /**
+   * Where the next frame starts.
+   */
+  private int myCursor;
+
+  /**
+   * Where the data ends.
+   */
+  private int myEnd;
+
+  /**
+   * The type of the current frame.
+   */
+  private byte myType;
+
+  /**
+   * Where the body of the current frame starts.
+   */
+  private int myBodyStart;
+
+  /**
+   * Where the body of the current frame ends.
+   */
+  private int myBodyEnd;
+
+  /**
+   * Where the taunt of the current frame starts.
+   */
+  private int myTauntStart;
+
+  /**
+   * The taunt of the current frame, once it has been decoded.
+   */
+  private String myTaunt;
+
+  /**
+   * The taunts received so far (or null if the taunts
+   * that refer to earlier ones aren't decoded).
+   */
+  private TauntCodec myTaunts;
+
+  //--------------------------------------------------------
+  //  encoding
+
+  /**
+   * Encodes a frame.
+   * @param type the frame type.
+   * @param hops the hops of a turn (or null).
+   * @param hopCount the number of hops.
+   * @param taunt the taunt (or null).
+   */
+  public static byte[] encode(byte type, byte[] hops, int hopCount,
+                              String taunt) {
+    byte[] buffer = new byte[MAX_FRAME_LENGTH];
+    if(type == TURN) {
+      for(int i = 0; i < hopCount; i++) {
+        putHop(buffer, i, hops, i*HOP_LENGTH);
+      }
+    }
+    byte[] frame = new byte[finish(buffer, type, hopCount, taunt)];
+    System.arraycopy(buffer, 0, frame, 0, frame.length);
+    return(frame);
+  }
+
+  /**
+   * Encodes a frame in a buffer that is long enough for 
+   * any frame (see FrameBuilder).  The hops of a turn have
+   * to be in place already (see putHop), so they're never 
+   * copied.
+   * @param frame the buffer.
+   * @param type the frame type.
+   * @param hopCount the number of hops.
+   * @param taunt the taunt (or null).
+   * @return the length of the frame.
+   */
+  public static int finish(byte[] frame, byte type, int hopCount,
+                           String taunt) {
+    return(finish(frame, type, hopCount, TauntCodec.encodeText(taunt)));
+  }
+
+  /**
+   * Encodes a frame in a buffer that is long enough for 
+   * any frame, with a taunt that is already encoded.
+   * @param frame the buffer.
+   * @param type the frame type.
+   * @param hopCount the number of hops.
+   * @param tauntData the encoded taunt (see TauntCodec).
+   * @return the length of the frame.
+   */
+  public static int finish(byte[] frame, byte type, int hopCount,
+                           byte[] tauntData) {
+    int length = tauntData.length;
+    if(type == TURN) {
+      length += 1 + getHopsLength(hopCount);
+    }
+    if(length > MAX_BODY) {
+      // the taunt is just decoration, so cut it to fit, 
+      // at the start of a character (a byte of the form 
+      // 10xxxxxx is in the middle of a character's UTF-8):
+      int cut = tauntData.length - (length - MAX_BODY);
+      while((cut > 1) && ((tauntData[cut] & 0xC0) == 0x80)) {
+        cut--;
+      }
+      length -= tauntData.length - cut;
+    }
+    frame[0] = VERSION;
+    frame[1] = type;
+    frame[2] = (byte)length;
+    int index = HEADER_LENGTH;
+    if(type == TURN) {
+      frame[index] = (byte)hopCount;
+      index += 1 + getHopsLength(hopCount);
+    }
+    System.arraycopy(tauntData, 0, frame, index, 
+                     HEADER_LENGTH + length - index);
+    return(HEADER_LENGTH + length);
+  }
+
+  /**
+   * Writes one hop of a turn in place in a frame buffer.
+   * The first hop gives the square the piece starts on
+   * as well as its destination, and each of the others 
+   * just its destination, since it starts where the last 
+   * one ended.
+   * @param frame the buffer.
+   * @param index which hop of the turn.
+   * @param hops the array holding the hop (source x, 
+   *        source y, destination x, destination y).
+   * @param offset where the hop starts in the array.
+   */
+  public static void putHop(byte[] frame, int index, byte[] hops,
+                            int offset) {
+    if(index == 0) {
+      putSquare(frame, 0, 4*hops[offset + 1] + hops[offset]);
+    }
+    putSquare(frame, index + 1, 4*hops[offset + 3] + hops[offset + 2]);
+  }
+
+  /**
+   * @return the number of bytes the squares of a turn 
+   *         with the given number of hops take.
+   */
+  public static int getHopsLength(int hopCount) {
+    if(hopCount == 0) {
+      return(0);
+    }
+    return((SQUARE_BITS*(hopCount + 1) + 7)/8);
+  }
+
+  /**
+   * Writes the square at the given place in the list of
+   * squares of a turn (clearing whatever bits were there).
+   */
+  private static void putSquare(byte[] frame, int place, int square) {
+    int bitIndex = SQUARE_BITS*place;
+    for(int i = SQUARE_BITS - 1; i >= 0; i--) {
+      int index = HOPS_START + (bitIndex >> 3);
+      int mask = 0x80 >> (bitIndex & 7);
+      if((square & (1 << i)) != 0) {
+        frame[index] |= mask;
+      } else {
+        frame[index] &= ~mask;
+      }
+      bitIndex++;
+    }
+  }
+
+  /**
+   * Reads the square at the given place in the list of
+   * squares of a turn.
+   * @param start where the list of squares starts.
+   */
+  private static int getSquare(byte[] data, int start, int place) {
+    int bitIndex = SQUARE_BITS*place;
+    int square = 0;
+    for(int i = 0; i < SQUARE_BITS; i++) {
+      square <<= 1;
+      if((data[start + (bitIndex >> 3)] & (0x80 >> (bitIndex & 7))) != 0) {
+        square |= 1;
+      }
+      bitIndex++;
+    }
+    return(square);
+  }
+
+  /**
+   * Encodes one part of a frame that is too long to send
+   * in one message.
+   * @param part the buffer to write the part in.
+   * @param id the number of the message the part belongs to.
+   * @param index which part.
+   * @param count the number of parts.
+   * @param data the frame.
+   * @param offset where the part's piece of the frame starts.
+   * @param length the length of the piece.
+   * @return the length of the part.
+   */
+  public static int finishPart(byte[] part, int id, int index, int count,
+                               byte[] data, int offset, int length) {
+    part[0] = VERSION;
+    part[1] = PART;
+    part[2] = (byte)(PART_HEADER_LENGTH + length);
+    part[3] = (byte)id;
+    part[4] = (byte)((index << 4) | count);
+    System.arraycopy(data, offset, part, HEADER_LENGTH + PART_HEADER_LENGTH,
+                     length);
+    return(HEADER_LENGTH + PART_HEADER_LENGTH + length);
+  }
+
+  /**
+   * Encodes a check in a buffer.
+   * @param sequence the sequence number of the turn.
+   * @param hash the hash of the board after the turn.
+   * @return the length of the frame.
+   */
+  public static int finishCheck(byte[] frame, int sequence, int hash) {
+    frame[0] = VERSION;
+    frame[1] = CHECK;
+    frame[2] = (byte)CHECK_LENGTH;
+    frame[3] = (byte)(sequence & SEQUENCE_MASK);
+    frame[4] = (byte)(hash >> 24);
+    frame[5] = (byte)(hash >> 16);
+    frame[6] = (byte)(hash >> 8);
+    frame[7] = (byte)hash;
+    return(HEADER_LENGTH + CHECK_LENGTH);
+  }
+
+  /**
+   * Encodes a board in a buffer.
+   * @param sequence the sequence number of the last turn played.
+   * @param senderToMove whether the sender is the one to move.
+   * @param position the sender's board:  the local men, 
+   *        the local kings, the remote men, and the remote 
+   *        kings.
+   * @return the length of the frame.
+   */
+  public static int finishBoard(byte[] frame, int sequence, 
+                                boolean senderToMove, int[] position) {
+    frame[0] = VERSION;
+    frame[1] = BOARD;
+    frame[2] = (byte)BOARD_LENGTH;
+    int first = sequence & SEQUENCE_MASK;
+    if(senderToMove) {
+      first |= SENDER_TO_MOVE;
+    }
+    frame[3] = (byte)first;
+    int index = HEADER_LENGTH + 1;
+    // eight squares at three bits each fill three bytes:
+    for(int i = 0; i < SQUARE_COUNT; i += 8) {
+      int bits = 0;
+      for(int j = i; j < i + 8; j++) {
+        int bit = 1 << j;
+        int code = EMPTY;
+        if((position[0] & bit) != 0) {
+          code = SENDER_MAN;
+        } else if((position[1] & bit) != 0) {
+          code = SENDER_KING;
+        } else if((position[2] & bit) != 0) {
+          code = RECEIVER_MAN;
+        } else if((position[3] & bit) != 0) {
+          code = RECEIVER_KING;
+        }
+        bits = (bits << 3) | code;
+      }
+      frame[index++] = (byte)(bits >> 16);
+      frame[index++] = (byte)(bits >> 8);
+      frame[index++] = (byte)bits;
+    }
+    return(HEADER_LENGTH + BOARD_LENGTH);
+  }
+
+  /**
+   * Computes the hash of a board that goes in a check.
+   * The two players see the board from opposite sides, so 
+   * the hash is always computed from the side of the 
+   * player who sends the check.
+   * @param position the local men, the local kings, the 
+   *        remote men, and the remote kings.
+   * @param remote whether the remote player is the one 
+   *        who sends (or sent) the check.
+   */
+  public static int hashPosition(int[] position, boolean remote) {
+    int hash = 0;
+    for(int i = 0; i < 4; i++) {
+      int pieces;
+      if(remote) {
+        pieces = flip(position[(i + 2) & 3]);
+      } else {
+        pieces = position[i];
+      }
+      hash = 31*hash + pieces;
+    }
+    return(hash);
+  }
+
+  /**
+   * Turns a set of squares around to how the other player
+   * sees them (square n becomes square 31 - n).
+   */
+  private static int flip(int squares) {
+    squares = ((squares >>> 1) & 0x55555555) 
+        | ((squares & 0x55555555) << 1);
+    squares = ((squares >>> 2) & 0x33333333) 
+        | ((squares & 0x33333333) << 2);
+    squares = ((squares >>> 4) & 0x0F0F0F0F) 
+        | ((squares & 0x0F0F0F0F) << 4);
+    squares = ((squares >>> 8) & 0x00FF00FF) 
+        | ((squares & 0x00FF00FF) << 8);
+    return((squares >>> 16) | (squares << 16));
+  }
+
+  /**
+   * @return the length of the frame at the start of the
+   *         array (which may be longer than the frame).
+   */
+  public static int getLength(byte[] frame) {
+    return(HEADER_LENGTH + (frame[2] & 0xFF));
+  }
+
+  //--------------------------------------------------------
+  //  decoding
+
+  /**
+   * Sets where to remember the taunts that are received,
+   * so that a taunt that was sent earlier can be sent
+   * again as just its id.
+   */
+  public void setTaunts(TauntCodec taunts) {
+    myTaunts = taunts;
+  }
+
+  /**
+   * Starts reading the frames in the given data.
+   * @param offset where the first frame starts.
+   * @param end where the data ends.
+   */
+  public void reset(byte[] data, int offset, int end) {
+    myData = data;
+    myCursor = offset;
+    myEnd = end;
+    myType = 0;
+  }
+
+  /**
+   * Moves on to the next frame.
+   * @return false if there are no more (complete) frames
+   *         or if the frame isn't in a format this version
+   *         understands.
+   */
+  public boolean next() {
+    myTaunt = null;
+    if((myCursor + HEADER_LENGTH > myEnd)
+       || (myData[myCursor] != VERSION)) {
+      myCursor = myEnd;
+      return(false);
+    }
+    myType = myData[myCursor + 1];
+    myBodyStart = myCursor + HEADER_LENGTH;
+    myBodyEnd = myBodyStart + (myData[myCursor + 2] & 0xFF);
+    if(myBodyEnd > myEnd) {
+      // the frame was cut off:
+      myCursor = myEnd;
+      return(false);
+    }
+    myTauntStart = myBodyStart;
+    if(myType == TURN) {
+      if(myBodyStart == myBodyEnd) {
+        myCursor = myEnd;
+        return(false);
+      }
+      myTauntStart += 1 + getHopsLength(getHopCount());
+      if(myTauntStart > myBodyEnd) {
+        myCursor = myEnd;
+        return(false);
+      }
+    } else if(((myType == CHECK) 
+               && (myBodyEnd - myBodyStart < CHECK_LENGTH))
+              || ((myType == BOARD)
+                  && (myBodyEnd - myBodyStart < BOARD_LENGTH))
+              || ((myType == PART) 
+                  && (myBodyEnd - myBodyStart < PART_HEADER_LENGTH))) {
+      myCursor = myEnd;
+      return(false);
+    }
+    myCursor = myBodyEnd;
+    return(true);
+  }
+
+  /**
+   * @return the type of the current frame.
+   */
+  public byte getType() {
+    return(myType);
+  }
+
+  /**
+   * @return the number of hops in the current turn frame.
+   */
+  public int getHopCount() {
+    return(myData[myBodyStart] & 0xFF);
+  }
+
+  /**
+   * Copies one hop of the current turn frame.
+   * @param index which hop.
+   * @param fourBytes the array to copy the hop into.
+   */
+  public void getHop(int index, byte[] fourBytes) {
+    int source = getSquare(myData, myBodyStart + 1, index);
+    int destination = getSquare(myData, myBodyStart + 1, index + 1);
+    fourBytes[0] = (byte)(source & 3);
+    fourBytes[1] = (byte)(source >> 2);
+    fourBytes[2] = (byte)(destination & 3);
+    fourBytes[3] = (byte)(destination >> 2);
+  }
+
+  /**
+   * @return the number of the message that the current 
+   *         part belongs to.
+   */
+  public int getPartId() {
+    return(myData[myBodyStart] & 0xFF);
+  }
+
+  /**
+   * @return which part of its message the current part is.
+   */
+  public int getPartIndex() {
+    return((myData[myBodyStart + 1] >> 4) & 0xF);
+  }
+
+  /**
+   * @return the number of parts of the current part's message.
+   */
+  public int getPartCount() {
+    return(myData[myBodyStart + 1] & 0xF);
+  }
+
+  /**
+   * @return the length of the current part's piece of 
+   *         its message.
+   */
+  public int getPartLength() {
+    return(myBodyEnd - myBodyStart - PART_HEADER_LENGTH);
+  }
+
+  /**
+   * Copies the current part's piece of its message.
+   * @param buffer the array to copy it into.
+   * @param offset where to put it in the array.
+   */
+  public void getPart(byte[] buffer, int offset) {
+    System.arraycopy(myData, myBodyStart + PART_HEADER_LENGTH, buffer,
+                     offset, getPartLength());
+  }
+
+  /**
+   * @return the sequence number of the current check or board.
+   */
+  public int getSequence() {
+    return(myData[myBodyStart] & SEQUENCE_MASK);
+  }
+
+  /**
+   * @return the board hash of the current check.
+   */
+  public int getHash() {
+    return(((myData[myBodyStart + 1] & 0xFF) << 24)
+           | ((myData[myBodyStart + 2] & 0xFF) << 16)
+           | ((myData[myBodyStart + 3] & 0xFF) << 8)
+           | (myData[myBodyStart + 4] & 0xFF));
+  }
+
+  /**
+   * @return whether the sender of the current board is 
+   *         the one to move.
+   */
+  public boolean isSenderToMove() {
+    return((myData[myBodyStart] & SENDER_TO_MOVE) != 0);
+  }
+
+  /**
+   * Decodes the current board, turned around to how the
+   * receiver sees it.
+   * @param position the array to fill with the local men,
+   *        the local kings, the remote men, and the remote 
+   *        kings.
+   */
+  public void getPosition(int[] position) {
+    for(int i = 0; i < 4; i++) {
+      position[i] = 0;
+    }
+    int index = myBodyStart + 1;
+    for(int i = 0; i < SQUARE_COUNT; i += 8) {
+      int bits = ((myData[index] & 0xFF) << 16)
+          | ((myData[index + 1] & 0xFF) << 8) | (myData[index + 2] & 0xFF);
+      index += 3;
+      for(int j = i + 7; j >= i; j--) {
+        int code = bits & 7;
+        bits >>= 3;
+        // the receiver's pieces are the local ones, and
+        // the squares are numbered from the other side:
+        int bit = 1 << (SQUARE_COUNT - 1 - j);
+        switch(code) {
+        case RECEIVER_MAN:
+          position[0] |= bit;
+          break;
+        case RECEIVER_KING:
+          position[1] |= bit;
+          break;
+        case SENDER_MAN:
+          position[2] |= bit;
+          break;
+        case SENDER_KING:
+          position[3] |= bit;
+          break;
+        default:
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * @return whether the current frame has a taunt.
+   */
+  public boolean hasTaunt() {
+    return(myTauntStart < myBodyEnd);
+  }
+
+  /**
+   * Decodes the taunt of the current frame (the first
+   * time it's asked for).
+   * @return the taunt or null if there is none.
+   */
+  public String getTaunt() {
+    if((myTaunt == null) && hasTaunt()) {
+      myTaunt = TauntCodec.decode(myTaunts, myData, myTauntStart,
+                                  myBodyEnd - myTauntStart);
+    }
+    return(myTaunt);
+  }
+
+  /**
+   * Decodes the taunt of the current frame only if it's 
+   * one to remember (see TauntCodec.isRemembered), for a
+   * frame whose taunt won't be shown.
+   */
+  public void rememberTaunt() {
+    if(hasTaunt() && TauntCodec.isRemembered(myData[myTauntStart])) {
+      getTaunt();
+    }
+  }
+
+}
@@ -0,0 +1,81 @@
+package net.frog_parrot.net;
+
+/**
+ * This is the interface that the messaging code uses to
+ * report to the game.  MoveManager implements it for the
+ * real game, and other classes (such as a load test)
+ * can implement it to play without a user interface.
+ */
+public interface GameListener {
+
+  /**
+   * Gets the current game state (one of the state
+   * codes defined in MoveManager).
+   */
+  public int getState();
+
+  /**
+   * Gets the message that the user has entered for the 
+   * remote player, if any.
+   */
+  public String getTaunt();
+
+  /**
+   * Receive the invitation to start a game.
+   */
+  public void receiveInvitation(String taunt, String phoneNum);
+
+  /**
+   * Interpret one move by the remote player.
+   */
+  public void receiveRemoteMove(byte[] fourBytes);
+
+  /**
+   * Receive the signal that the remote player is done 
+   * moving.
+   */
+  public void endRemoteTurn(String taunt);
+
+  /**
+   * Gets the board.
+   * @param position the array to fill with the local men,
+   *        the local kings, the remote men, and the remote
+   *        kings (see CheckersGame).
+   */
+  public void getPosition(int[] position);
+
+  /**
+   * Compare the board with the remote player's after the 
+   * remote player's hops (which is called before 
+   * endRemoteTurn).  If the hash isn't the same (see 
+   * FrameCodec.hashPosition), the listener should ask 
+   * for a resync and not start the local player's turn.
+   */
+  public void checkRemoteTurn(int hash);
+
+  /**
+   * Replace the board with the remote player's, after
+   * the two boards got out of sync.  (This is only called 
+   * with a board that was asked for.)  If the listener 
+   * takes the board, it calls SMSManager.acceptBoard.
+   * @param position the local men, the local kings, the
+   *        remote men, and the remote kings.
+   * @param localTurn whether it's the local player's turn.
+   * @param sequence the sequence number of the last turn 
+   *        the remote player played.
+   */
+  public void receivePosition(int[] position, boolean localTurn,
+                              int sequence);
+
+  /**
+   * Receive the signal that the remote player has ended 
+   * the game.
+   */
+  public void receiveGameOver(String taunt);
+
+  /**
+   * This is called when a message has been sent.
+   */
+  public void doneSending();
+
+}
@@ -0,0 +1,35 @@
+package net.frog_parrot.net;
+
+import java.io.*;
+import javax.wireless.messaging.*;
+
+/**
+ * This interface supplies the message connections that the
+ * SMS classes send and receive on.  WMATransport gets them
+ * from the handset's messaging system, and LoopbackTransport
+ * (in the desktop source tree, with the load tests) gets 
+ * them from a LoopbackNetwork, so that many games can play
+ * each other inside one Java virtual machine.
+ */
+public interface MessageTransport {
+
+  /**
+   * @return whether a message is already waiting, meaning
+   *         that the application was launched because of
+   *         receiving an invitation.
+   */
+  public boolean hasWaitingMessage();
+
+  /**
+   * Open the connection that the messages from the remote
+   * player arrive on.
+   */
+  public MessageConnection openServer() throws IOException;
+
+  /**
+   * Open a connection to send messages to the given address,
+   * of the form sms://<phonenum>:<port>.
+   */
+  public MessageConnection openClient(String address) throws IOException;
+
+}
@@ -3,6 +3,7 @@ package net.frog_parrot.net;
 import java.io.*;
 
 import net.frog_parrot.checkers.MoveManager;
+import net.frog_parrot.util.WorkQueue;
 
 /**
  * This class keeps track of transferring local and 
@@ -10,30 +11,20 @@ import net.frog_parrot.checkers.MoveManager;
  *
  * @author Carol Hamer
  */
-public class SMSManager {
+public class SMSManager implements Transport {
 
   //--------------------------------------------------------
   //  static fields
 
   /**
-   * The int to signal that the game is to begin.
-   */
-  public static final byte START_GAME_FLAG = -4;
-
-  /**
-   * The byte to signal that the game is to end.
-   */
-  public static final byte END_GAME_FLAG = -3;
-
-  /**
-   * The byte to signal the end of a turn.
+   * The default port number to send to.
    */
-  public static final byte END_TURN_FLAG = -2;
+  private static final String PORT_NUM = "16474";
 
   /**
-   * The default port number to send to.
+   * The value for startTurn when the turn had no check.
    */
-  private static final String PORT_NUM = "16474";
+  static final int NO_SEQUENCE = -1;
 
   //--------------------------------------------------------
   //  game instance fields
@@ -42,7 +33,12 @@ public class SMSManager {
    * The class that directs the data from the communications
    * module to game logic module and vice versa.
    */
-  private MoveManager myManager;
+  private GameListener myManager;
+
+  /**
+   * Where the message connections come from.
+   */
+  private MessageTransport myTransport;
 
   /**
    * The class that receives and reads the SMSMessages.
@@ -54,33 +50,91 @@ public class SMSManager {
    */
   private SMSSender mySender;
 
+  /**
+   * The worker thread that sends and reads the messages,
+   * so that no thread is started per message.
+   */
+  private WorkQueue myQueue = new WorkQueue(1);
+
   //--------------------------------------------------------
   //  data exchange instance fields
 
   /**
-   * The data from the local player that is to 
-   * be sent to the opponent.
+   * The class that builds the frames to send to the 
+   * opponent, in pooled buffers.
    */
-  private byte[] myMove;
+  private FrameBuilder myBuilder = new FrameBuilder(new FramePool());
+
+  /**
+   * The taunts sent and received in this game, so that 
+   * each custom taunt only has to be sent in full once.
+   */
+  private TauntCodec myTaunts = new TauntCodec();
 
   /**
    * The phone number of the opponent:
    */
   private String myPhoneNum;
 
+  /**
+   * The sequence number of the last turn played (by
+   * either player), modulo 128.
+   */
+  private int mySequence;
+
+  /**
+   * Whether the remote player has been asked for its 
+   * board and hasn't sent it yet.  (A board that wasn't
+   * asked for is ignored.)
+   */
+  private boolean myIsResyncPending;
+
+  /**
+   * The board to hash for a check (on the thread that 
+   * sends the turns).
+   */
+  private int[] myPosition = new int[4];
+
+  /**
+   * The board to send in a board frame (on the worker
+   * thread, so it has its own copy).
+   */
+  private int[] myBoardPosition = new int[4];
+
   //--------------------------------------------------------
   //  lifecycle
 
+  /**
+   * Send and receive with the handset's messaging system.
+   */
+  public SMSManager() {
+    this(new WMATransport());
+  }
+
+  /**
+   * Send and receive with the given transport.
+   */
+  public SMSManager(MessageTransport transport) {
+    myTransport = transport;
+    myBuilder.setTaunts(myTaunts);
+  }
+
   /**
    * Start the processes to send and receive messages.
    * @return whether the game was started by receiving
    * an invitation from another player.
    */
-  public boolean init(MoveManager manager) 
+  public boolean init(GameListener manager)
       throws IOException {
     myManager = manager;
+    myQueue.start();
+    if((myPhoneNum != null) && (mySender == null)) {
+      // the game was resumed:
+      mySender = new SMSSender(myPhoneNum, PORT_NUM, myManager,
+                               myTransport, myQueue, myBuilder.getPool());
+    }
     myReceiver = new SMSReceiver();
-    return(myReceiver.init(this));
+    return(myReceiver.init(this, myTransport, myQueue));
   }
 
   /**
@@ -90,6 +144,62 @@ public class SMSManager {
    */
   public void shutDown() {
     myReceiver.shutDown();
+    if(mySender != null) {
+      mySender.close();
+    }
+    myQueue.shutDown();
+  }
+
+  /**
+   * @return the sender (which keeps the sending statistics),
+   *         or null if the opponent isn't known yet.
+   */
+  public SMSSender getSender() {
+    return(mySender);
+  }
+
+  /**
+   * @return the taunts of this game (which keep the count
+   *         of the bytes saved by encoding them).
+   */
+  public TauntCodec getTaunts() {
+    return(myTaunts);
+  }
+
+  /**
+   * @return the phone number of the opponent (or null
+   *         if the opponent isn't known yet).
+   */
+  public String getPhoneNum() {
+    return(myPhoneNum);
+  }
+
+  /**
+   * @return the sequence number of the last turn played.
+   */
+  public synchronized int getSequence() {
+    return(mySequence);
+  }
+
+  /**
+   * Picks up a game that was saved when the application
+   * was last shut down, with the same opponent.  This is
+   * called before init (which opens the connection to the 
+   * opponent), so that any waiting message is read as 
+   * part of the game.
+   * @param sequence the sequence number of the last turn 
+   *        played.
+   * @param taunts the taunts sent and received before the
+   *        game was saved (which the opponent may still 
+   *        send or expect by id).
+   */
+  public void resume(String phoneNumber, int sequence, TauntCodec taunts) {
+    synchronized(this) {
+      mySequence = sequence;
+    }
+    myPhoneNum = phoneNumber;
+    myTaunts = taunts;
+    myBuilder.setTaunts(myTaunts);
   }
 
   /**
@@ -121,7 +231,8 @@ public class SMSManager {
     int state = myManager.getState();
     if((state == MoveManager.NOT_STARTED) 
         || (state == MoveManager.FOUND_REMOTE_PLAYER)) {
-      mySender = new SMSSender(myPhoneNum, PORT_NUM, myManager);
+      mySender = new SMSSender(myPhoneNum, PORT_NUM, myManager,
+                               myTransport, myQueue, myBuilder.getPool());
       myManager.receiveInvitation(taunt, myPhoneNum);
     }
   }
@@ -134,13 +245,10 @@ public class SMSManager {
    */
   public void sendInvitation(String phoneNumber) {
     myPhoneNum = phoneNumber;
-    mySender = new SMSSender(myPhoneNum, PORT_NUM, myManager);
-    byte[] invitation = new byte[1];
-    invitation[0] = START_GAME_FLAG;
-    invitation = addTaunt(invitation);
-    mySender.setPayload(invitation);
-    Thread thread = new Thread(mySender);
-    thread.start();
+    mySender = new SMSSender(myPhoneNum, PORT_NUM, myManager,
+                             myTransport, myQueue, myBuilder.getPool());
+    mySender.send(myBuilder.build(FrameCodec.INVITATION,
+                                  myManager.getTaunt()));
   }
 
   /**
@@ -148,35 +256,16 @@ public class SMSManager {
    * player that this player has quit.
    */
   public void sendGameOver() {
-    byte[] data = new byte[1];
-    data[0] = END_GAME_FLAG;
-    data = addTaunt(data);
-    mySender.setPayload(data);
-    Thread thread = new Thread(mySender);
-    thread.start();
+    mySender.send(myBuilder.build(FrameCodec.GAME_OVER,
+                                  myManager.getTaunt()));
   }
 
   /**
-   * Records the local move in a byte array to prepare it 
+   * Records the local move in the turn frame to prepare it 
    * to be sent to the remote player.
    */
   public void setLocalMove(byte[] move) {
-    if(myMove == null) {
-      myMove = new byte[5];
-      System.arraycopy(move, 0, myMove, 0, 4);
-      myMove[4] = END_TURN_FLAG;
-    } else {
-      // here we're dealing with the case of a 
-      // series of jumps.  This isn't the typical case, so 
-      // it shouldn't be too inefficient to just 
-      // create a new, larger array each time 
-      // we enlarge the move payload.
-      byte[] newMove = new byte[myMove.length + 4];
-      System.arraycopy(myMove, 0, newMove, 0, myMove.length);
-      System.arraycopy(move, 0, newMove, myMove.length - 1, 4);
-      newMove[newMove.length - 1] = END_TURN_FLAG;
-      myMove = newMove;
-    }
+    myBuilder.addHop(move);
   }
 
   /**
@@ -184,18 +273,125 @@ public class SMSManager {
    * then clears the move data.
    */
   public void sendLocalMove() {
-    if(myMove != null) {
-      myMove = addTaunt(myMove);
-      mySender.setPayload(myMove);
-      myMove = null;
-      Thread thread = new Thread(mySender);
-      thread.start();
+    byte[] frame = myBuilder.finishTurn(myManager.getTaunt());
+    if(frame != null) {
+      // the check goes first so that the receiver knows 
+      // whether to play the turn:
+      int sequence = nextSequence();
+      myManager.getPosition(myPosition);
+      mySender.send(myBuilder.buildCheck(sequence, 
+          FrameCodec.hashPosition(myPosition, false)), frame);
     }
   }
 
+  /**
+   * Ask the remote player to send its board because 
+   * the two boards are out of sync.
+   */
+  public void requestResync() {
+    synchronized(this) {
+      myIsResyncPending = true;
+    }
+    mySender.send(myBuilder.build(FrameCodec.RESYNC, null));
+  }
+
+  /**
+   * Send the local board to the remote player (which
+   * has asked for it).  This is called on the worker 
+   * thread, so the board is dropped if the queue is full
+   * (see SMSSender.offer), and the remote player asks again.
+   */
+  void sendBoard() {
+    if(mySender == null) {
+      return;
+    }
+    myManager.getPosition(myBoardPosition);
+    boolean localTurn = (myManager.getState() == MoveManager.LOCAL_TURN);
+    mySender.offer(myBuilder.buildBoard(getSequence(), localTurn,
+                                        myBoardPosition));
+  }
+
+  /**
+   * Count a turn sent by the local player.
+   * @return its sequence number.
+   */
+  private synchronized int nextSequence() {
+    mySequence = (mySequence + 1) & FrameCodec.SEQUENCE_MASK;
+    return(mySequence);
+  }
+
   //--------------------------------------------------------
   //  receiving methods
 
+  /**
+   * Check the sequence number of a turn from the remote 
+   * player before it's played.  If a turn is missing, 
+   * this asks the remote player for its board.
+   * @param sequence the turn's sequence number or 
+   *        NO_SEQUENCE if it came without one.
+   * @return whether to play the turn (false if it's 
+   *         already been played or a turn is missing).
+   */
+  boolean startTurn(int sequence) {
+    synchronized(this) {
+      int distance = (sequence - mySequence) & FrameCodec.SEQUENCE_MASK;
+      if((sequence == NO_SEQUENCE) || (distance == 1)) {
+        mySequence = (mySequence + 1) & FrameCodec.SEQUENCE_MASK;
+        return(true);
+      }
+      // a turn from the past (an old message that got 
+      // delayed) is ignored:
+      if((distance == 0) || (distance > FrameCodec.SEQUENCE_MASK/2)) {
+        return(false);
+      }
+      myIsResyncPending = true;
+    }
+    // (this is called on the worker thread, so the request
+    // is dropped if the queue is full, see SMSSender.offer)
+    mySender.offer(myBuilder.build(FrameCodec.RESYNC, null));
+    return(false);
+  }
+
+  /**
+   * Pass the board hash after the remote player's turn
+   * to the game logic.
+   */
+  public void checkTurn(int hash) {
+    myManager.checkRemoteTurn(hash);
+  }
+
+  /**
+   * Pass the remote player's board to the game logic, if
+   * it was asked for (one board for each request).
+   * @param sequence the sequence number of the last turn 
+   *        the remote player played.
+   */
+  public void receiveBoard(int sequence, int[] position, 
+                           boolean localTurn) {
+    synchronized(this) {
+      if(! myIsResyncPending) {
+        return;
+      }
+      myIsResyncPending = false;
+    }
+    myManager.receivePosition(position, localTurn, sequence);
+  }
+
+  /**
+   * Start over from the remote player's board, which
+   * the game logic has taken in place of its own.
+   * @param sequence the sequence number of the last turn 
+   *        the remote player played.
+   */
+  public void acceptBoard(int sequence) {
+    synchronized(this) {
+      mySequence = sequence;
+    }
+    // any hops of the local player's that weren't sent
+    // are on the old board:
+    myBuilder.discardTurn();
+  }
+
   /**
    * Pass the remote player's move data to the game logic.
    */
@@ -217,27 +413,4 @@ public class SMSManager {
     myManager.receiveGameOver(taunt);
   }
 
-  //--------------------------------------------------------
-  //  utilities
-
-  /**
-   * Adds the taunt message data to the message being sent.
-   */
-  public byte[] addTaunt(byte[] data) {
-    String taunt = myManager.getTaunt();
-    if(taunt != null) {
-      try {
-        byte[] tauntdata = taunt.getBytes("utf-8");
-        byte[] retData = new byte[tauntdata.length + data.length];
-        System.arraycopy(data, 0, retData, 0, data.length);
-        System.arraycopy(tauntdata, 0, retData, data.length, 
-                         tauntdata.length);
-        return retData;
-      } catch (UnsupportedEncodingException e) {
-        // if the encoding is not supported, ignore message.
-      }
-    }
-    return data;
-  }
-
 }
@@ -1,16 +1,35 @@
 package net.frog_parrot.net;
 
 import java.io.*;
-import javax.microedition.io.*;
 import javax.wireless.messaging.*;
 
+import net.frog_parrot.util.WorkQueue;
+
 /**
  * This class handles listening for the SMS messages 
- * from the remote player.
+ * from the remote player.  Instead of keeping a thread
+ * blocked waiting for messages, it registers as a 
+ * listener and reads each message on the shared worker
+ * thread when the message arrives.  A frame that came in
+ * parts is put back together in a buffer that's allocated
+ * once, and then read like any other.
  *
  * @author Carol Hamer
  */
-public class SMSReceiver implements Runnable {
+public class SMSReceiver implements MessageListener, Runnable {
+
+  //--------------------------------------------------------
+  //  static fields
+
+  /**
+   * The number of milliseconds to wait for the missing
+   * parts of a frame.  (The parts of a frame are sent one
+   * right after another, so if one hasn't come by then,
+   * it has been lost, and the parts that came are dropped
+   * when the next message comes, see expireParts.  A lost
+   * turn is recovered by resynchronizing, see FrameCodec.)
+   */
+  public static final long PART_TIMEOUT = 60000;
 
   //--------------------------------------------------------
   //  game instance fields
@@ -25,6 +44,80 @@ public class SMSReceiver implements Runnable {
    */
   private MessageConnection myConnection;
 
+  /**
+   * The worker thread that reads the messages.
+   */
+  private WorkQueue myQueue;
+
+  /**
+   * The cursor that reads the frames of each message.
+   */
+  private FrameCodec myCodec = new FrameCodec();
+
+  /**
+   * The data of one hop.  (Reused for every hop.)
+   */
+  private byte[] myHop = new byte[FrameCodec.HOP_LENGTH];
+
+  /**
+   * The board of a board frame.  (Reused for every board.)
+   */
+  private int[] myPosition = new int[4];
+
+  /**
+   * Whether a check came before the turn to read next.
+   */
+  private boolean myHasCheck;
+
+  /**
+   * The sequence number of the check.
+   */
+  private int myCheckSequence;
+
+  /**
+   * The board hash of the check.
+   */
+  private int myCheckHash;
+
+  /**
+   * The buffer where the parts of a frame are put back 
+   * together.
+   */
+  private byte[] myParts = new byte[SMSSender.MAX_PARTED_LENGTH];
+
+  /**
+   * The cursor that reads the frame that was put back 
+   * together.
+   */
+  private FrameCodec myPartCodec = new FrameCodec();
+
+  /**
+   * The number of the frame whose parts are being 
+   * collected, or -1 if none are.
+   */
+  private int myPartId = -1;
+
+  /**
+   * The number of parts of the frame.
+   */
+  private int myPartCount;
+
+  /**
+   * Which of the parts have come (one bit per part).
+   */
+  private int myPartMask;
+
+  /**
+   * The length of the frame (known once the last part 
+   * has come).
+   */
+  private int myPartLength;
+
+  /**
+   * When the first part came.
+   */
+  private long myPartTime;
+
   /**
    * whether it's time to clean up.
    */
@@ -34,39 +127,36 @@ public class SMSReceiver implements Runnable {
   //  lifecycle
 
   /**
-   * Find connections and start up the listener thread.
+   * Find connections and start listening.
    */
-  boolean init(SMSManager manager) throws IOException {
+  boolean init(SMSManager manager, MessageTransport transport,
+               WorkQueue queue) throws IOException {
     myShouldStop = false;
     mySMSManager = manager;
-    boolean retVal = false;
-    // We start by checking for a connection with data to read
+    myQueue = queue;
+    myCodec.setTaunts(manager.getTaunts());
+    myPartCodec.setTaunts(manager.getTaunts());
+    // We start by checking for data to read
     // to see if the application was launched because of 
     // receiving an invitation.
-    String[] connections = PushRegistry.listConnections(true);
-    if (connections != null && connections.length > 0) {
-      retVal = true;
-    }
-    // Here we get the name of all connections that are open 
-    // to this application, whether they have data or not.
-    connections = PushRegistry.listConnections(false);
-    if (connections == null || connections.length == 0) {
-      throw(new IOException("No push-port registered"));
-    }
-    myConnection = (MessageConnection)Connector.open(connections[0]);
-    // Since listening for messages is a blocking operation, 
-    // we need to start a new thread to do it:
-    Thread thread = new Thread(this);
-    thread.start();
+    boolean retVal = transport.hasWaitingMessage();
+    myConnection = transport.openServer();
+    // Rather than tying up a thread in a blocking receive, 
+    // we ask to be told when a message arrives.  (Any 
+    // messages that are already waiting -- such as the 
+    // invitation that launched the application -- are 
+    // reported right away.)
+    myConnection.setMessageListener(this);
     return(retVal);
   }
 
   /**
-   * Set this thread to die, then close the connection.
+   * Stop listening, then close the connection.
    */
   void shutDown() {
     myShouldStop = true;
     try {
+      myConnection.setMessageListener(null);
       myConnection.close();
     } catch (IOException e) {}
   }
@@ -75,71 +165,165 @@ public class SMSReceiver implements Runnable {
   //  listen for messages
 
   /**
-   * Start the listener thread.
+   * This is called by the messaging system when a message 
+   * arrives.  It has to return quickly, so the message is 
+   * read on the worker thread.
+   */
+  public void notifyIncomingMessage(MessageConnection conn) {
+    if(! myShouldStop) {
+      myQueue.execute(this);
+    }
+  }
+
+  /**
+   * Read and handle one waiting message.
    */
   public void run() {
+    if(myShouldStop) {
+      return;
+    }
+    expireParts();
     try {
-      while(true) {
-        Message msg = myConnection.receive();
-        if (msg != null) {
-          String senderAddress = msg.getAddress();
-          // accept only binary messages from the player
-          // we're currently playing with -- ignore 
-          // messages from other players.
-          if((mySMSManager.checkPhoneNum(senderAddress))
-             && (msg instanceof BinaryMessage)) {
-            byte[] data = ((BinaryMessage)msg).getPayloadData();
-            int index = 0;
-            String taunt = null;
-            while(index < data.length) {
-              switch(data[index]) {
-                // if we've just received an invitation to 
-                // start the game, then we set the phone 
-                // number of the other player
-              case SMSManager.START_GAME_FLAG:
-                index++;
-                if(index != data.length) {
-                  taunt = new String(data, index, data.length - index);
-                }
-                index = data.length;
-                mySMSManager.receiveInvitation(taunt);
-                break;
-              case SMSManager.END_GAME_FLAG:
-                index++;
-                if(index != data.length) {
-                  taunt = new String(data, index, data.length - index);
-                }
-                index = data.length;
-                mySMSManager.receiveGameOver(taunt);
-                break;
-              case SMSManager.END_TURN_FLAG:
-                index++;
-                if(index != data.length) {
-                  taunt = new String(data, index, data.length - index);
-                }
-                index = data.length;
-                mySMSManager.endTurn(taunt);
-                break;
-              default:
-                // the default case is that we've received
-                // some move data to pass along to the 
-                // game logic.
-                byte[] move = new byte[4];
-                System.arraycopy(data, index, move, 0, 4);
-                mySMSManager.setMove(move);
-                index += 4;
-                break;
-              }
+      Message msg = myConnection.receive();
+      if (msg != null) {
+        String senderAddress = msg.getAddress();
+        // accept only binary messages from the player
+        // we're currently playing with -- ignore 
+        // messages from other players.
+        if((mySMSManager.checkPhoneNum(senderAddress))
+           && (msg instanceof BinaryMessage)) {
+          byte[] data = ((BinaryMessage)msg).getPayloadData();
+          // the message may hold several frames (and a
+          // check only counts for a turn in the same message):
+          myHasCheck = false;
+          myCodec.reset(data, 0, data.length);
+          while(myCodec.next()) {
+            if(myCodec.getType() == FrameCodec.PART) {
+              addPart();
+            } else {
+              readFrame(myCodec);
             }
           }
-        } // if (msg != null) {
-      }
+        }
+      } // if (msg != null) {
     } catch (IOException e) {
       e.printStackTrace();
-    } finally {
-      try {
-        myConnection.close();
-      } catch (Exception e) {}
+    }
+  }
+
+  /**
+   * Put the codec's current part in its place, and read
+   * the frame if it was the last part missing.
+   */
+  private void addPart() {
+    long now = System.currentTimeMillis();
+    int id = myCodec.getPartId();
+    int index = myCodec.getPartIndex();
+    int count = myCodec.getPartCount();
+    // the parts of an earlier frame that never came 
+    // together are dropped:
+    if((myPartId != -1) && (id != myPartId)) {
+      myPartId = -1;
+    }
+    if(myPartId == -1) {
+      myPartId = id;
+      myPartCount = count;
+      myPartMask = 0;
+      myPartLength = 0;
+      myPartTime = now;
+    }
+    int offset = index*SMSSender.PART_DATA_LENGTH;
+    int length = myCodec.getPartLength();
+    if((count != myPartCount) || (index >= count)
+       || (offset + length > myParts.length)
+       || ((myPartMask & (1 << index)) != 0)) {
+      // a damaged part or one that came twice:
+      return;
+    }
+    myCodec.getPart(myParts, offset);
+    myPartMask |= 1 << index;
+    if(index == count - 1) {
+      myPartLength = offset + length;
+    }
+    if(myPartMask == (1 << count) - 1) {
+      myPartId = -1;
+      myHasCheck = false;
+      myPartCodec.reset(myParts, 0, myPartLength);
+      while(myPartCodec.next()) {
+        readFrame(myPartCodec);
+      }
+    }
+  }
+
+  /**
+   * Drop the parts of a frame that haven't all come 
+   * within PART_TIMEOUT.  This is checked whenever a 
+   * message is read, whatever it holds, so the parts
+   * don't wait for the next frame that is sent in parts.
+   */
+  private void expireParts() {
+    if((myPartId != -1) 
+       && (System.currentTimeMillis() - myPartTime > PART_TIMEOUT)) {
+      myPartId = -1;
+    }
+  }
+
+  /**
+   * Pass the contents of a codec's current frame along
+   * to the game.  (The taunt of a turn is only decoded
+   * if the turn is played, since that's when it's shown.)
+   */
+  private void readFrame(FrameCodec codec) {
+    switch(codec.getType()) {
+      // if we've just received an invitation to
+      // start the game, then we set the phone
+      // number of the other player
+    case FrameCodec.INVITATION:
+      mySMSManager.receiveInvitation(codec.getTaunt());
+      break;
+    case FrameCodec.GAME_OVER:
+      mySMSManager.receiveGameOver(codec.getTaunt());
+      break;
+    case FrameCodec.CHECK:
+      // keep it for the turn that follows:
+      myHasCheck = true;
+      myCheckSequence = codec.getSequence();
+      myCheckHash = codec.getHash();
+      break;
+    case FrameCodec.TURN:
+      boolean hasCheck = myHasCheck;
+      myHasCheck = false;
+      // a turn that was already played or that comes 
+      // after a missing one is dropped, but its taunt is 
+      // remembered if later taunts may refer to it:
+      if(hasCheck && (! mySMSManager.startTurn(myCheckSequence))) {
+        codec.rememberTaunt();
+        break;
+      }
+      // pass along each hop, then end the turn:
+      int hopCount = codec.getHopCount();
+      for(int i = 0; i < hopCount; i++) {
+        codec.getHop(i, myHop);
+        mySMSManager.setMove(myHop);
+      }
+      if(hasCheck) {
+        mySMSManager.checkTurn(myCheckHash);
+      } else {
+        mySMSManager.startTurn(SMSManager.NO_SEQUENCE);
+      }
+      mySMSManager.endTurn(codec.getTaunt());
+      break;
+    case FrameCodec.RESYNC:
+      mySMSManager.sendBoard();
+      break;
+    case FrameCodec.BOARD:
+      codec.getPosition(myPosition);
+      mySMSManager.receiveBoard(codec.getSequence(), myPosition,
+                                ! codec.isSenderToMove());
+      break;
+    default:
+      // ignore frame types from later versions.
+      break;
     }
   }
 
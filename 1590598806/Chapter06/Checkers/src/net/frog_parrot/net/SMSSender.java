@@ -1,14 +1,31 @@
 package net.frog_parrot.net;
 
 import java.io.*;
-import javax.microedition.io.*;
 import javax.wireless.messaging.*;
 
-import net.frog_parrot.checkers.MoveManager;
+import net.frog_parrot.util.WorkQueue;
 
 /**
  * This class handles the details of sending the 
- * SMS message.
+ * SMS message.  One sender lasts for the whole game:
+ * the frames to send wait in a small FIFO queue, and
+ * the sender runs on the shared worker thread whenever
+ * the queue isn't empty, sending over one connection
+ * that it keeps open.  If several frames are waiting,
+ * they're sent together in one message when they fit.
+ * A frame that's too long for one message (because of a
+ * long taunt) is sent in numbered parts that the receiver
+ * puts back together (see FrameCodec), along with the 
+ * frames waiting after it unless that takes more messages
+ * than sending them separately.  A turn and its check are
+ * never separated, though, even if that costs a message:
+ * the check is what tells the receiver that no turn is 
+ * missing.  (The longest turn and its check always fit 
+ * in MAX_PARTS parts.)
+ * The frames may be in pooled buffers that are longer than
+ * the frames (see FramePool), so the buffers are returned
+ * to the pool once the frames have been copied into the 
+ * message.
  *
  * @author Carol Hamer
  */
@@ -22,6 +39,33 @@ public class SMSSender implements Runnable {
    */
   public static final String SMS_PROTOCOL = "sms://";
 
+  /**
+   * The most bytes that fit in a single binary SMS.
+   */
+  public static final int MAX_PAYLOAD = 133;
+
+  /**
+   * The longest piece of a frame that fits in one part.
+   */
+  public static final int PART_DATA_LENGTH = MAX_PAYLOAD 
+      - FrameCodec.HEADER_LENGTH - FrameCodec.PART_HEADER_LENGTH;
+
+  /**
+   * The most parts that one message is sent in (which is 
+   * enough for the longest frame).
+   */
+  public static final int MAX_PARTS = 3;
+
+  /**
+   * The longest data that's sent in parts.
+   */
+  public static final int MAX_PARTED_LENGTH = MAX_PARTS*PART_DATA_LENGTH;
+
+  /**
+   * The most frames that can wait to be sent.
+   */
+  public static final int QUEUE_SIZE = 8;
+
   //--------------------------------------------------------
   //  data fields
 
@@ -32,15 +76,102 @@ public class SMSSender implements Runnable {
   private String myAddress;
 
   /**
-   * The data to send.
+   * The class that directs the data from the communications
+   * module to game logic module and vice versa.
    */
-  private byte[] myPayload;
+  private GameListener myManager;
 
   /**
-   * The class that directs the data from the communications
-   * module to game logic module and vice versa.
+   * Where the connection comes from.
+   */
+  private MessageTransport myTransport;
+
+  /**
+   * The worker thread that does the sending.
+   */
+  private WorkQueue myQueue;
+
+  /**
+   * Where the frame buffers go back to once they're sent.
+   */
+  private FramePool myPool;
+
+  /**
+   * The connection, kept open between messages.
+   */
+  private MessageConnection myConnection;
+
+  /**
+   * The frames waiting to be sent (a ring buffer).
+   */
+  private byte[][] myFrames = new byte[QUEUE_SIZE][];
+
+  /**
+   * The times when the waiting frames were queued.
+   */
+  private long[] myQueueTimes = new long[QUEUE_SIZE];
+
+  /**
+   * Whether each waiting frame has to be sent along with 
+   * the one before it (see send(byte[], byte[])).
    */
-  private MoveManager myManager;
+  private boolean[] myIsJoined = new boolean[QUEUE_SIZE];
+
+  /**
+   * The index of the oldest waiting frame.
+   */
+  private int myHead;
+
+  /**
+   * The number of waiting frames.
+   */
+  private int myCount;
+
+  /**
+   * Whether the sender has been handed to the worker
+   * thread and hasn't finished emptying the queue.
+   */
+  private boolean myIsScheduled;
+
+  /**
+   * Whether to close the connection once the queue
+   * is empty.
+   */
+  private boolean myShouldClose;
+
+  /**
+   * The number of the last frame that was sent in parts.
+   */
+  private int myPartId;
+
+  //--------------------------------------------------------
+  //  statistics fields
+
+  /**
+   * The most frames that have been waiting at once.
+   */
+  private int myMaxQueueDepth;
+
+  /**
+   * The number of frames sent.
+   */
+  private int myFrameCount;
+
+  /**
+   * The number of messages sent.
+   */
+  private int myMessageCount;
+
+  /**
+   * The total time (in milliseconds) from queueing each
+   * frame until it was sent.
+   */
+  private long myTotalLatency;
+
+  /**
+   * The longest time from queueing a frame until it was sent.
+   */
+  private long myMaxLatency;
 
   //--------------------------------------------------------
   //  initialization and lifecycle
@@ -49,8 +180,12 @@ public class SMSSender implements Runnable {
    * Initialize the main data.
    */
   public SMSSender(String phoneNum, String portNum, 
-        MoveManager manager) {
+        GameListener manager, MessageTransport transport,
+        WorkQueue queue, FramePool pool) {
     myManager = manager;
+    myTransport = transport;
+    myQueue = queue;
+    myPool = pool;
     // Construct the address url for routing the 
     // message, of the form 
     // sms://<phonenum>:<pushportnum>
@@ -66,52 +201,305 @@ public class SMSSender implements Runnable {
   }
 
   /**
-   * Set the current move.
+   * Close the connection (once the waiting frames
+   * have been sent).
    */
-  public synchronized void setPayload(byte[] data) {
-    myPayload = data;
+  public synchronized void close() {
+    if(myIsScheduled) {
+      myShouldClose = true;
+    } else {
+      closeConnection();
+    }
   }
 
   //--------------------------------------------------------
   //  sending methods.
 
   /**
-   * Sends the move data to the remote player.
+   * Add a frame to the queue.  If the queue is full, this
+   * waits until there's room.  (So it must not be called
+   * on the worker thread, see offer.)
+   */
+  public synchronized void send(byte[] frame) {
+    waitForRoom(1);
+    add(frame, false);
+  }
+
+  /**
+   * Wait until the given number of frames fit in the queue.
+   */
+  private void waitForRoom(int count) {
+    while(myCount + count > QUEUE_SIZE) {
+      try {
+        wait();
+      } catch(InterruptedException e) {
+      }
+    }
+  }
+
+  /**
+   * Add a frame to the queue (which has room for it), and
+   * hand the sender to the worker thread if necessary.
+   * @param joined whether the frame has to be sent along
+   *        with the one before it.
+   */
+  private void add(byte[] frame, boolean joined) {
+    int index = (myHead + myCount) % QUEUE_SIZE;
+    myFrames[index] = frame;
+    myIsJoined[index] = joined;
+    myQueueTimes[index] = System.currentTimeMillis();
+    myCount++;
+    if(myCount > myMaxQueueDepth) {
+      myMaxQueueDepth = myCount;
+    }
+    if(! myIsScheduled) {
+      myIsScheduled = true;
+      myQueue.execute(this);
+    }
+  }
+
+  /**
+   * Add a frame to the queue if there's room.  This is 
+   * for the frames that are sent by the worker thread 
+   * itself (the replies to the remote player's messages), 
+   * since it can't wait for room that only it can make.
+   * A frame that doesn't fit is dropped (and its buffer 
+   * goes back to the pool), and if it's still needed, 
+   * it's asked for again.
+   * @return whether the frame was queued.
+   */
+  public synchronized boolean offer(byte[] frame) {
+    if(myCount == QUEUE_SIZE) {
+      myPool.release(frame);
+      return(false);
+    }
+    send(frame);
+    return(true);
+  }
+
+  /**
+   * Add two frames to the queue at once, so that they're 
+   * always sent in the same message (or the same parts).
+   * If the queue doesn't have room for both, this waits.
+   */
+  public synchronized void send(byte[] first, byte[] second) {
+    waitForRoom(2);
+    add(first, false);
+    add(second, true);
+  }
+
+  /**
+   * Sends the waiting frames to the remote player.
    */
   public void run() {
-    MessageConnection conn = null;
-    byte[] currentPayload = null;
-    // synchronize it so each payload 
-    // gets sent exactly once:
-    synchronized(this) {
-      if(myPayload != null) {
-        currentPayload = myPayload;
-        myPayload = null;
-      } else {
-        return;
+    while(true) {
+      byte[] payload = null;
+      int frameCount = 0;
+      long queueTimes = 0;
+      long oldestQueueTime = 0;
+      synchronized(this) {
+        if(myCount == 0) {
+          myIsScheduled = false;
+          if(myShouldClose) {
+            myShouldClose = false;
+            closeConnection();
+          }
+          return;
+        }
+        oldestQueueTime = myQueueTimes[myHead];
+        // see how many of the waiting frames can go 
+        // together in no more messages than separately 
+        // (each frame gives its own length, so they can 
+        // just be put one after another).  Frames that are
+        // joined are counted as one, and the first ones 
+        // are sent however long they are:
+        int length = 0;
+        while(frameCount < myCount) {
+          int groupCount = 1;
+          int next = FrameCodec.getLength(myFrames[(myHead + frameCount) 
+                                                   % QUEUE_SIZE]);
+          while((frameCount + groupCount < myCount)
+                && myIsJoined[(myHead + frameCount + groupCount) 
+                              % QUEUE_SIZE]) {
+            next += FrameCodec.getLength(myFrames[(myHead + frameCount 
+                + groupCount) % QUEUE_SIZE]);
+            groupCount++;
+          }
+          if((frameCount > 0) 
+             && ((length + next > MAX_PARTED_LENGTH)
+                 || (getMessageCount(length + next) 
+                     > getMessageCount(length) + getMessageCount(next)))) {
+            break;
+          }
+          length += next;
+          frameCount += groupCount;
+        }
+        payload = new byte[length];
+        int offset = 0;
+        for(int i = 0; i < frameCount; i++) {
+          byte[] frame = myFrames[(myHead + i) % QUEUE_SIZE];
+          int frameLength = FrameCodec.getLength(frame);
+          System.arraycopy(frame, 0, payload, offset, frameLength);
+          offset += frameLength;
+        }
+        for(int i = 0; i < frameCount; i++) {
+          queueTimes += myQueueTimes[myHead];
+          myPool.release(myFrames[myHead]);
+          myFrames[myHead] = null;
+          myIsJoined[myHead] = false;
+          myHead = (myHead + 1) % QUEUE_SIZE;
+        }
+        myCount -= frameCount;
+        // there's room in the queue again:
+        notifyAll();
+      }
+      int messageCount = 0;
+      if(payload.length > MAX_PAYLOAD) {
+        messageCount = sendParts(payload);
+      } else if(sendMessage(payload)) {
+        messageCount = 1;
+      }
+      if(messageCount > 0) {
+        synchronized(this) {
+          long now = System.currentTimeMillis();
+          myTotalLatency += now*frameCount - queueTimes;
+          // the oldest frame waited the longest:
+          long latency = now - oldestQueueTime;
+          if(latency > myMaxLatency) {
+            myMaxLatency = latency;
+          }
+          myFrameCount += frameCount;
+          myMessageCount += messageCount;
+        }
+        myManager.doneSending();
+      }
+    }
+  }
+
+  /**
+   * @return the number of messages it takes to send the 
+   *         given number of bytes.
+   */
+  private static int getMessageCount(int length) {
+    if(length <= MAX_PAYLOAD) {
+      return(1);
+    }
+    return((length + PART_DATA_LENGTH - 1)/PART_DATA_LENGTH);
+  }
+
+  /**
+   * Sends data that is too long for one message in parts.
+   * @return the number of messages sent, or 0 if one of
+   *         the parts couldn't be sent (in which case the 
+   *         receiver drops the others).
+   */
+  private int sendParts(byte[] data) {
+    int count = getMessageCount(data.length);
+    myPartId = (myPartId + 1) & 0xFF;
+    for(int i = 0; i < count; i++) {
+      int offset = i*PART_DATA_LENGTH;
+      int length = Math.min(PART_DATA_LENGTH, data.length - offset);
+      byte[] part = new byte[FrameCodec.HEADER_LENGTH 
+          + FrameCodec.PART_HEADER_LENGTH + length];
+      FrameCodec.finishPart(part, myPartId, i, count, data, offset,
+                            length);
+      if(! sendMessage(part)) {
+        return(0);
       }
     }
+    return(count);
+  }
+
+  /**
+   * Sends one message over the connection (opening it
+   * if necessary).
+   * @return whether the message was sent.
+   */
+  private boolean sendMessage(byte[] payload) {
     try {
-      // open the SMS connection and create the 
-      // message instance:
-      conn = (MessageConnection)Connector.open(myAddress);
-      
-      BinaryMessage msg = (BinaryMessage)conn.newMessage(
+      // open the SMS connection (the first time) and
+      // create the message instance:
+      if(myConnection == null) {
+        myConnection = myTransport.openClient(myAddress);
+      }
+      BinaryMessage msg = (BinaryMessage)myConnection.newMessage(
             MessageConnection.BINARY_MESSAGE);
       msg.setAddress(myAddress);
-      msg.setPayloadData(currentPayload);
-      conn.send(msg);
-      myManager.doneSending();
+      msg.setPayloadData(payload);
+      myConnection.send(msg);
+      return(true);
     } catch(Exception e) {
       e.printStackTrace();
+      // try again with a fresh connection next time:
+      closeConnection();
     }
-    if (conn != null) {
+    return(false);
+  }
+
+  /**
+   * Close the connection if it's open.
+   */
+  private void closeConnection() {
+    if (myConnection != null) {
       try {
-        conn.close();
+        myConnection.close();
       } catch (IOException ioe) {
         ioe.printStackTrace();
       }
+      myConnection = null;
+    }
+  }
+
+  //--------------------------------------------------------
+  //  statistics
+
+  /**
+   * @return the number of frames waiting to be sent.
+   */
+  public synchronized int getQueueDepth() {
+    return(myCount);
+  }
+
+  /**
+   * @return the most frames that have been waiting at once.
+   */
+  public synchronized int getMaxQueueDepth() {
+    return(myMaxQueueDepth);
+  }
+
+  /**
+   * @return the number of frames sent.
+   */
+  public synchronized int getFrameCount() {
+    return(myFrameCount);
+  }
+
+  /**
+   * @return the number of messages sent (which is less
+   *         than the number of frames if frames were sent
+   *         together).
+   */
+  public synchronized int getMessageCount() {
+    return(myMessageCount);
+  }
+
+  /**
+   * @return the average time (in milliseconds) from
+   *         queueing a frame until it was sent.
+   */
+  public synchronized long getAverageLatency() {
+    if(myFrameCount == 0) {
+      return(0);
     }
+    return(myTotalLatency/myFrameCount);
+  }
+
+  /**
+   * @return the longest time (in milliseconds) from
+   *         queueing a frame until it was sent.
+   */
+  public synchronized long getMaxLatency() {
+    return(myMaxLatency);
   }
 
 }
@@ -0,0 +1,43 @@
+package net.frog_parrot.net;
+
+import java.io.*;
+import javax.microedition.io.*;
+import javax.wireless.messaging.*;
+
+/**
+ * This class gets the message connections from the 
+ * handset's Wireless Messaging API, using the push port 
+ * that is registered for the application.
+ */
+public class WMATransport implements MessageTransport {
+
+  /**
+   * Check for a push connection with data to read.
+   */
+  public boolean hasWaitingMessage() {
+    String[] connections = PushRegistry.listConnections(true);
+    return((connections != null) && (connections.length > 0));
+  }
+
+  /**
+   * Open the push connection.
+   */
+  public MessageConnection openServer() throws IOException {
+    // Here we get the name of all connections that are open 
+    // to this application, whether they have data or not.
+    String[] connections = PushRegistry.listConnections(false);
+    if((connections == null) || (connections.length == 0)) {
+      throw(new IOException("No push-port registered"));
+    }
+    return((MessageConnection)Connector.open(connections[0]));
+  }
+
+  /**
+   * Open a client connection.
+   */
+  public MessageConnection openClient(String address) 
+      throws IOException {
+    return((MessageConnection)Connector.open(address));
+  }
+
+}
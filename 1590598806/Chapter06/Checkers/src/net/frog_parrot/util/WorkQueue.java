@@ -0,0 +1,115 @@
+package net.frog_parrot.util;
+
+import java.util.Vector;
+
+/**
+ * This class runs tasks on a fixed number of worker
+ * threads, in the order they were handed in.  Using it
+ * instead of starting a new thread for each task keeps
+ * the number of threads bounded no matter how many
+ * messages are sent and received.
+ */
+public class WorkQueue implements Runnable {
+
+  //--------------------------------------------------------
+  //  instance fields
+
+  /**
+   * The number of worker threads.
+   */
+  private int myThreadCount;
+
+  /**
+   * The number of worker threads currently running.
+   */
+  private int myRunningCount;
+
+  /**
+   * The tasks waiting to be run.
+   */
+  private Vector myTasks = new Vector();
+
+  /**
+   * Whether it's time for the workers to stop.
+   */
+  private boolean myShouldStop;
+
+  //--------------------------------------------------------
+  //  lifecycle
+
+  /**
+   * Set the number of worker threads.
+   */
+  public WorkQueue(int threadCount) {
+    myThreadCount = threadCount;
+  }
+
+  /**
+   * Start the worker threads (if they aren't already running).
+   */
+  public synchronized void start() {
+    myShouldStop = false;
+    while(myRunningCount < myThreadCount) {
+      myRunningCount++;
+      Thread thread = new Thread(this);
+      thread.start();
+    }
+  }
+
+  /**
+   * Set the workers to die once the waiting tasks are done.
+   */
+  public synchronized void shutDown() {
+    myShouldStop = true;
+    notifyAll();
+  }
+
+  //--------------------------------------------------------
+  //  tasks
+
+  /**
+   * Add a task to the end of the queue.  The task is run
+   * even if the queue has been shut down (by a worker that
+   * dies once it's done), so a last message can still be
+   * sent after the game has stopped listening.
+   */
+  public synchronized void execute(Runnable task) {
+    myTasks.addElement(task);
+    if(myRunningCount == 0) {
+      myRunningCount++;
+      Thread thread = new Thread(this);
+      thread.start();
+    }
+    notify();
+  }
+
+  /**
+   * Run the tasks as they come in.
+   */
+  public void run() {
+    while(true) {
+      Runnable task = null;
+      synchronized(this) {
+        while((myTasks.size() == 0) && (! myShouldStop)) {
+          try {
+            wait();
+          } catch(InterruptedException e) {
+          }
+        }
+        if(myTasks.size() == 0) {
+          myRunningCount--;
+          return;
+        }
+        task = (Runnable)myTasks.elementAt(0);
+        myTasks.removeElementAt(0);
+      }
+      try {
+        task.run();
+      } catch(RuntimeException e) {
+        // one failed task shouldn't stop the others.
+        e.printStackTrace();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,159 @@
+package net.frog_parrot.checkers;
+
+/**
+ * A reusable list of moves.  Each move is packed into
+ * a single int so that generating moves never creates
+ * any new objects:
+ * bits 0-4 = the source square
+ * bits 5-9 = the destination square
+ * bits 10-14 = the square that was jumped over (if any)
+ * bit 15 = set if the move is a jump.
+ * The squares are numbered as in CheckersGame
+ * (square = 4*y + x).
+ */
+public class MoveList {
+
+  //-------------------------------------------------------
+  //   static fields
+
+  /**
+   * The most moves that one side can ever have:  each
+   * of twelve pieces can go at most one way in each of
+   * the four directions.
+   */
+  public static final int MAX_MOVES = 48;
+
+  /**
+   * The bit that marks a move as a jump.
+   */
+  public static final int JUMP_FLAG = 0x8000;
+
+  //-------------------------------------------------------
+  //   instance fields
+
+  /**
+   * The packed moves.
+   */
+  private int[] myMoves = new int[MAX_MOVES];
+
+  /**
+   * The number of moves currently in the list.
+   */
+  private int mySize;
+
+  //-------------------------------------------------------
+  //   list methods
+
+  /**
+   * Empties the list (without releasing the storage).
+   */
+  public void clear() {
+    mySize = 0;
+  }
+
+  /**
+   * @return the number of moves in the list.
+   */
+  public int size() {
+    return(mySize);
+  }
+
+  /**
+   * @return the packed move at the given index.
+   */
+  public int get(int index) {
+    return(myMoves[index]);
+  }
+
+  /**
+   * Adds a packed move to the end of the list.
+   */
+  public void add(int move) {
+    myMoves[mySize] = move;
+    mySize++;
+  }
+
+  /**
+   * Exchanges the moves at the two given indexes.
+   */
+  public void swap(int i, int j) {
+    int move = myMoves[i];
+    myMoves[i] = myMoves[j];
+    myMoves[j] = move;
+  }
+
+  /**
+   * Finds the given move in the list.
+   * @return the index of the move or -1 if it is not there.
+   */
+  public int indexOf(int move) {
+    for(int i = 0; i < mySize; i++) {
+      if(myMoves[i] == move) {
+        return(i);
+      }
+    }
+    return(-1);
+  }
+
+  /**
+   * Finds the first move to the given destination square.
+   * @return the index of the move or -1 if there is none.
+   */
+  public int indexOfDestination(int destination) {
+    for(int i = 0; i < mySize; i++) {
+      if(getDestination(myMoves[i]) == destination) {
+        return(i);
+      }
+    }
+    return(-1);
+  }
+
+  //-------------------------------------------------------
+  //   packing utilities
+
+  /**
+   * Packs a move into an int.
+   * @param captured the square that was jumped over
+   *        or -1 if the move is not a jump.
+   */
+  public static int pack(int source, int destination, int captured) {
+    int move = source | (destination << 5);
+    if(captured >= 0) {
+      move |= (captured << 10) | JUMP_FLAG;
+    }
+    return(move);
+  }
+
+  /**
+   * @return the square the move starts from.
+   */
+  public static int getSource(int move) {
+    return(move & 0x1F);
+  }
+
+  /**
+   * @return the square the move ends on.
+   */
+  public static int getDestination(int move) {
+    return((move >> 5) & 0x1F);
+  }
+
+  /**
+   * @return the square that was jumped over or -1 if
+   *         the move is not a jump.
+   */
+  public static int getCaptured(int move) {
+    if((move & JUMP_FLAG) == 0) {
+      return(-1);
+    }
+    return((move >> 10) & 0x1F);
+  }
+
+  /**
+   * @return whether the move is a jump.
+   */
+  public static boolean isJump(int move) {
+    return((move & JUMP_FLAG) != 0);
+  }
+
+}
@@ -16,57 +16,60 @@ import net.frog_parrot.checkers.MoveManager;
  * @author Carol Hamer
  */
 public class BluetoothManager extends Thread 
-    implements DiscoveryListener {
+    implements DiscoveryListener, Transport {
 
   //--------------------------------------------------------
   //  static fields
 
   /**
-   * The int to signal that the game is to begin.
+   * A possible connection mode.
    */
-  public static final byte START_GAME_FLAG = -4;
+  public static final byte SERVER_MODE = 0;
 
   /**
-   * The byte to signal that the game is to end.
+   * A possible connection mode.
    */
-  public static final byte END_GAME_FLAG = -3;
+  public static final byte CLIENT_MODE = 1;
 
   /**
-   * The byte to signal the end of a turn.
+   * The protocol string for the bluetooth stream protocol.
    */
-  public static final byte END_TURN_FLAG = -2;
+  public static final String BLUETOOTH_PROTOCOL = "btspp://";
 
   /**
-   * The byte to signal the remote connection has 
-   * been closed.
+   * The string that uniquely identifies this Bluetooth service:
    */
-  public static final byte EOF_FLAG = -1;
+  private static final String CHECKERS_UUID 
+      = "2bbc2d287c8c11dba1500040f45842ef";
 
   /**
-   * A possible connection mode.
+   * The user-friendly name of the service:
    */
-  public static final byte SERVER_MODE = 0;
+  private static final String CHECKERS_NAME = "Checkers";
 
   /**
-   * A possible connection mode.
+   * Whether to print the debug statements.  (Set this to
+   * true to follow the connection in the emulator.  When
+   * it's false, the compiler drops the statements, so no
+   * strings are built for them in the game loop.)
    */
-  public static final byte CLIENT_MODE = 1;
+  public static final boolean DEBUG = false;
 
   /**
-   * The protocol string for the bluetooth stream protocol.
+   * A way the client found the server:  by a stored URL.
    */
-  public static final String BLUETOOTH_PROTOCOL = "btspp://";
+  public static final int CACHED_URL = 0;
 
   /**
-   * The string that uniquely identifies this Bluetooth service:
+   * A way the client found the server:  by searching the
+   * devices the Bluetooth stack already knew.
    */
-  private static final String CHECKERS_UUID 
-      = "2bbc2d287c8c11dba1500040f45842ef";
+  public static final int KNOWN_DEVICE = 1;
 
   /**
-   * The user-friendly name of the service:
+   * A way the client found the server:  by a full inquiry.
    */
-  private static final String CHECKERS_NAME = "Checkers";
+  public static final int INQUIRY = 2;
 
   //--------------------------------------------------------
   //  game instance fields
@@ -125,14 +128,38 @@ public class BluetoothManager extends Thread
    */
   private OutputStream myOutputStream;
 
+  /**
+   * The buffered frame reader and writer over the streams.
+   */
+  private FrameStream myFrameStream;
+
+  //--------------------------------------------------------
+  //  connection statistics fields
+
+  /**
+   * The time (in milliseconds) the client took to find and
+   * connect to the server.
+   */
+  private long myConnectTime;
+
+  /**
+   * How the client found the server.
+   */
+  private int myConnectMethod;
+
   //--------------------------------------------------------
   //  data exchange instance fields
 
   /**
-   * The data from the local player that is to 
-   * be sent to the opponent.
+   * The class that builds the frames to send to the 
+   * opponent, in pooled buffers.
    */
-  private byte[] myMove;
+  private FrameBuilder myBuilder = new FrameBuilder(new FramePool());
+
+  /**
+   * The frame that is to be sent to the opponent.
+   */
+  private byte[] myFrame;
 
   //--------------------------------------------------------
   //  lifecycle
@@ -174,6 +201,31 @@ public class BluetoothManager extends Thread
     notify();
   }
 
+  /**
+   * @return the frame reader and writer (which keeps the
+   *         round trip times), or null if there is no
+   *         connection yet.
+   */
+  public FrameStream getFrameStream() {
+    return(myFrameStream);
+  }
+
+  /**
+   * @return the time (in milliseconds) the client took to
+   *         find and connect to the server.
+   */
+  public long getConnectTime() {
+    return(myConnectTime);
+  }
+
+  /**
+   * @return how the client found the server:  CACHED_URL,
+   *         KNOWN_DEVICE, or INQUIRY.
+   */
+  public int getConnectMethod() {
+    return(myConnectMethod);
+  }
+
   /**
    * Close all of the streams.
    */
@@ -231,7 +283,7 @@ public class BluetoothManager extends Thread
       buff.append(";name=");
       buff.append(CHECKERS_NAME);
       buff.append(";authorize=false");
-      
+
       debug("serverRun-->url: " + buff.toString());
       // Since this is a server connection, Connector.open
       // returns a connection notifier rather than a 
@@ -245,11 +297,16 @@ public class BluetoothManager extends Thread
       debug("serverRun-->conn: " + myStreamConnection);
       myInputStream = myStreamConnection.openInputStream();
       debug("serverRun-->is: " + myInputStream);
-      // the client player starts by sending the start game 
-      // flag, triggering the server player to take a turn:
-      byte[] oneByte = new byte[1];
-      myInputStream.read(oneByte);
-      debug("serverRun-->read: " + oneByte[0]);
+      myOutputStream = myStreamConnection.openOutputStream();
+      myFrameStream = new FrameStream(myInputStream, myOutputStream);
+      // the client player starts by sending an invitation
+      // frame, triggering the server player to take a turn:
+      if((! myFrameStream.readFrame())
+         || (myFrameStream.getCodec().getType()
+             != FrameCodec.INVITATION)) {
+        throw(new IOException("no invitation"));
+      }
+      debug("serverRun-->read invitation");
       myManager.receiveInvitation();
       debug("serverRun-->myManager: " + myManager);
       // we don't want any more clients to try to connect, 
@@ -259,8 +316,7 @@ public class BluetoothManager extends Thread
       // set the server to "not discoverable" so further 
       // clients don't query this service and attempt to connect:
       localDevice.setDiscoverable(DiscoveryAgent.NOT_DISCOVERABLE);
-      myOutputStream = myStreamConnection.openOutputStream();
-      runGame(myOutputStream, myInputStream);
+      runGame(myFrameStream);
     } catch (IOException e) {
       myManager.errorMsg("failed: " + e.getMessage());
       e.printStackTrace();
@@ -276,62 +332,57 @@ public class BluetoothManager extends Thread
    */
   void clientRun() {
     debug("clientRun");
+    long startTime = System.currentTimeMillis();
     try {
-      // start looking for available Bluetooth services:
-      LocalDevice localDevice = LocalDevice.getLocalDevice();
-      DiscoveryAgent discoveryAgent = localDevice.getDiscoveryAgent();
-      debug("clientRun-->discoveryAgent: " + discoveryAgent);
-      // Set this as the discovery listener, then wait for 
-      // the inquiryCompleted call:
-      discoveryAgent.startInquiry(DiscoveryAgent.GIAC, this);
-      synchronized(this) {
-        wait();
-      }
-      if(myDiscoveryType == INQUIRY_COMPLETED) {
-        // now for each device, we search for services:
-        debug("clientRun-->myRemoteDevices: " + myRemoteDevices.size());
-        for(int i = 0; i < myRemoteDevices.size(); i++) {
-          RemoteDevice rd = (RemoteDevice)myRemoteDevices.elementAt(i);
-          // we assume that the user has arranged to have 
-          // exactly one player in range, so we search until 
-          // we find a checkers service and stop:
-          UUID[] uuids = new UUID[2];
-          // this indicates socket communications:
-          uuids[0] = new UUID(0x1101);
-          // and this is the Checkers service specifically:
-          uuids[1] = new UUID(CHECKERS_UUID, false);
-          // The return value of the search call is an id int 
-          // that can be used to cancel the search if 
-          // something goes wrong:
-          debug("clientRun-->about to search services");
-          int id = discoveryAgent.searchServices(null, uuids,
-                        rd, this);
-          // now wait to see if we found the service:
+      // first try the players we've played with before,
+      // which takes no search at all:
+      String url = openCachedURL();
+      if(url == null) {
+        // start looking for available Bluetooth services:
+        LocalDevice localDevice = LocalDevice.getLocalDevice();
+        DiscoveryAgent discoveryAgent = localDevice.getDiscoveryAgent();
+        debug("clientRun-->discoveryAgent: " + discoveryAgent);
+        // next search the devices that the Bluetooth stack
+        // already knows about, which skips the inquiry:
+        addDevices(discoveryAgent.retrieveDevices(DiscoveryAgent.PREKNOWN));
+        addDevices(discoveryAgent.retrieveDevices(DiscoveryAgent.CACHED));
+        searchServices(discoveryAgent);
+        myConnectMethod = KNOWN_DEVICE;
+        if(myRemoteServiceRecord == null) {
+          myRemoteDevices.removeAllElements();
+          // Set this as the discovery listener, then wait for
+          // the inquiryCompleted call:
+          discoveryAgent.startInquiry(DiscoveryAgent.GIAC, this);
           synchronized(this) {
             wait();
           }
-          if(myRemoteServiceRecord != null) {
-            break;
+          if(myDiscoveryType == INQUIRY_COMPLETED) {
+            searchServices(discoveryAgent);
           }
+          myConnectMethod = INQUIRY;
         }
         debug("clientRun-->myRemoteServiceRecord: " + myRemoteServiceRecord);
         if(myRemoteServiceRecord != null) {
           // now let's open the connection:
-          String url = myRemoteServiceRecord.getConnectionURL(
+          url = myRemoteServiceRecord.getConnectionURL(
               ServiceRecord.NOAUTHENTICATE_NOENCRYPT, false);
           debug("clientRun-->url: " + url);
           myStreamConnection = (StreamConnection)Connector.open(url);
-          myOutputStream = myStreamConnection.openOutputStream();
-          debug("clientRun-->os: " + myOutputStream);
-          byte[] oneByte = new byte[1];
-          oneByte[0] = (byte)START_GAME_FLAG;
-          myOutputStream.write(oneByte);
-          myManager.foundOpponent();
-          myInputStream = myStreamConnection.openInputStream();
-          runGame(myOutputStream, myInputStream);
-        } else {
-          myManager.errorMsg("failed to find remote player");
+          PeerCache.addURL(url);
         }
+      }
+      if(myStreamConnection != null) {
+        myConnectTime = System.currentTimeMillis() - startTime;
+        debug("clientRun-->connected in: " + myConnectTime);
+        myOutputStream = myStreamConnection.openOutputStream();
+        debug("clientRun-->os: " + myOutputStream);
+        myInputStream = myStreamConnection.openInputStream();
+        myFrameStream = new FrameStream(myInputStream, myOutputStream);
+        myFrameStream.write(FrameCodec.encode(FrameCodec.INVITATION,
+                                              null, 0, null));
+        myFrameStream.flush();
+        myManager.foundOpponent();
+        runGame(myFrameStream);
       } else {
         myManager.errorMsg("failed to find remote player");
       }
@@ -341,6 +392,74 @@ public class BluetoothManager extends Thread
     }
   }
 
+  /**
+   * Try to connect to each of the stored URLs in turn.
+   * @return the URL that the connection was opened to,
+   *         or null if none could be opened.
+   */
+  private String openCachedURL() {
+    String[] urls = PeerCache.getURLs();
+    for(int i = 0; i < urls.length; i++) {
+      try {
+        debug("openCachedURL-->url: " + urls[i]);
+        myStreamConnection = (StreamConnection)Connector.open(urls[i]);
+        myConnectMethod = CACHED_URL;
+        // move it to the front of the list:
+        PeerCache.addURL(urls[i]);
+        return(urls[i]);
+      } catch(IOException e) {
+        // that player isn't in range or isn't waiting
+        // for a game, so try the next one.
+      }
+    }
+    return(null);
+  }
+
+  /**
+   * Add devices to the list of devices to search.
+   */
+  private void addDevices(RemoteDevice[] devices) {
+    if(devices != null) {
+      for(int i = 0; i < devices.length; i++) {
+        myRemoteDevices.addElement(devices[i]);
+      }
+    }
+  }
+
+  /**
+   * Search the devices in the list for the checkers service
+   * until it's found.
+   */
+  private void searchServices(DiscoveryAgent discoveryAgent)
+      throws BluetoothStateException, InterruptedException {
+    // now for each device, we search for services:
+    debug("searchServices-->myRemoteDevices: " + myRemoteDevices.size());
+    for(int i = 0; i < myRemoteDevices.size(); i++) {
+      RemoteDevice rd = (RemoteDevice)myRemoteDevices.elementAt(i);
+      // we assume that the user has arranged to have
+      // exactly one player in range, so we search until
+      // we find a checkers service and stop:
+      UUID[] uuids = new UUID[2];
+      // this indicates socket communications:
+      uuids[0] = new UUID(0x1101);
+      // and this is the Checkers service specifically:
+      uuids[1] = new UUID(CHECKERS_UUID, false);
+      // The return value of the search call is an id int
+      // that can be used to cancel the search if
+      // something goes wrong:
+      debug("searchServices-->about to search services");
+      int id = discoveryAgent.searchServices(null, uuids,
+                    rd, this);
+      // now wait to see if we found the service:
+      synchronized(this) {
+        wait();
+      }
+      if(myRemoteServiceRecord != null) {
+        break;
+      }
+    }
+  }
+
   /**
    * Implementation of DiscoveryListener.
    */
@@ -369,7 +488,7 @@ public class BluetoothManager extends Thread
       notify();
     }
   }
-  
+
   /**
    * Implementation of DiscoveryListener.
    * For a given remote device, find its services.
@@ -381,7 +500,7 @@ public class BluetoothManager extends Thread
       notify();
     }
   }
-  
+
   //--------------------------------------------------------
   //  main game method
 
@@ -389,12 +508,15 @@ public class BluetoothManager extends Thread
    * This is the main loop that controls the game play
    * back and forth.
    */
-  void runGame(OutputStream os, InputStream is) throws IOException {
+  void runGame(FrameStream frames) throws IOException {
     debug("runGame");
-    byte[] fourBytes = new byte[4];
+    FrameCodec codec = frames.getCodec();
+    byte[] fourBytes = new byte[FrameCodec.HOP_LENGTH];
     while(! myShouldStop) {
       int state = myManager.getState();
-      debug("runGame-->state: " + state);
+      if(DEBUG) {
+        debug("runGame-->state: " + state);
+      }
       if(state == MoveManager.LOCAL_TURN) {
         try {
           synchronized(this) {
@@ -404,33 +526,34 @@ public class BluetoothManager extends Thread
         }
         debug("runGame-->about to write move");
         try {
-          if(myMove != null) {
-            os.write(myMove);
+          if(myFrame != null) {
+            frames.write(myFrame);
+            frames.flush();
           }
         } catch(IOException e) {
           // if we can't write anymore, the remote 
           // player has probably closed the connection:
           myManager.errorMsg("remote player has quit");
         }
-        myMove = null;
+        if(myFrame != null) {
+          myBuilder.getPool().release(myFrame);
+          myFrame = null;
+        }
       } else if(state == MoveManager.REMOTE_TURN) {
         debug("runGame-->about to read move");
-        byte moveData = (byte)is.read();
-        debug("runGame-->moveData: " + moveData);
-        if((moveData == END_GAME_FLAG) 
-            || (moveData == EOF_FLAG)) {
+        if((! frames.readFrame())
+            || (codec.getType() == FrameCodec.GAME_OVER)) {
           debug("runGame-->remote player quit");
           myShouldStop = true;
           myManager.receiveGameOver();
-        } else if (moveData == END_TURN_FLAG) {
-          myManager.endRemoteTurn();
-        } else {
-          fourBytes[0] = moveData;
-          for(int i = 1; i < 4; i++) {
-            moveData = (byte)is.read();
-            fourBytes[i] = moveData;
+        } else if(codec.getType() == FrameCodec.TURN) {
+          // the whole turn comes in one frame:
+          int hopCount = codec.getHopCount();
+          for(int i = 0; i < hopCount; i++) {
+            codec.getHop(i, fourBytes);
+            myManager.receiveRemoteMove(fourBytes);
           }
-          myManager.receiveRemoteMove(fourBytes);
+          myManager.endRemoteTurn();
         }
         debug("runGame-->done reading");
       } else {
@@ -449,42 +572,26 @@ public class BluetoothManager extends Thread
    * player that this player has quit.
    */
   public synchronized void sendGameOver() {
-    myMove = new byte[1];
-    myMove[0] = END_GAME_FLAG;
+    myFrame = myBuilder.build(FrameCodec.GAME_OVER, null);
     notify();
   }
 
   /**
-   * Records the local move in a byte array to prepare it 
+   * Records the local move in the turn frame to prepare it 
    * to be sent to the remote player.
    */
   public void setLocalMove(byte[] move) {
     debug("setLocalMove");
-    if(myMove == null) {
-      myMove = new byte[5];
-      System.arraycopy(move, 0, myMove, 0, 4);
-      myMove[4] = END_TURN_FLAG;
-    } else {
-      // here we're dealing with the case of a 
-      // series of jumps.  This isn't the typical case, so 
-      // it shouldn't be too inefficient to just 
-      // create a new, larger array each time 
-      // we enlarge the move payload.
-      byte[] newMove = new byte[myMove.length + 4];
-      System.arraycopy(myMove, 0, newMove, 0, myMove.length);
-      System.arraycopy(move, 0, newMove, myMove.length - 1, 4);
-      newMove[newMove.length - 1] = END_TURN_FLAG;
-      myMove = newMove;
-    }
+    myBuilder.addHop(move);
   }
 
   /**
    * Sends the current local move to the remote player.
    */
   public synchronized void sendLocalMove() {
-    debug("sendLocalMove-->myMove: " + myMove);
-    if(myMove != null) {
-      debug("sendLocalMove-->length: " + myMove.length);
+    byte[] frame = myBuilder.finishTurn(null);
+    if(frame != null) {
+      myFrame = frame;
     }
     notify();
   }
@@ -496,6 +603,9 @@ public class BluetoothManager extends Thread
    * print a debug statemeent.
    */
   public void debug(String message) {
+    if(! DEBUG) {
+      return;
+    }
     if(myMode == SERVER_MODE) {
       System.out.print("SERVER: ");
     } else {
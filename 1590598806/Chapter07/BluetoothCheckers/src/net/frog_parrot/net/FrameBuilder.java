@@ -0,0 +1,158 @@
+package net.frog_parrot.net;
+
+/**
+ * This class builds the frames that the local player sends.
+ * The hops of a turn are written straight into a pooled frame 
+ * buffer as they're made, in the place where the encoded 
+ * frame has them, so a turn with a series of jumps is built
+ * without copying or reallocating anything.
+ */
+public class FrameBuilder {
+
+  //--------------------------------------------------------
+  //  instance fields
+
+  /**
+   * Where the frame buffers come from.
+   */
+  private FramePool myPool;
+
+  /**
+   * The turn being built (or null if no hops have been
+   * made yet).
+   */
+  private byte[] myTurn;
+
+  /**
+   * The number of hops in the turn being built.
+   */
+  private int myHopCount;
+
+  /**
+   * The taunts sent so far (or null to send every taunt
+   * in full).
+   */
+  private TauntCodec myTaunts;
+
+  //--------------------------------------------------------
+  //  initialization
+
+  /**
+   * Initialize the main data.
+   */
+  public FrameBuilder(FramePool pool) {
+    myPool = pool;
+  }
+
+  /**
+   * @return the pool to return the frames to once they've
+   *         been sent.
+   */
+  public FramePool getPool() {
+    return(myPool);
+  }
+
+  /**
+   * Sets where to remember the taunts that are sent, so
+   * that a taunt that is sent again is sent as just its id.
+   */
+  public void setTaunts(TauntCodec taunts) {
+    myTaunts = taunts;
+  }
+
+  //--------------------------------------------------------
+  //  building
+
+  /**
+   * Add a hop to the turn being built.  (It has to start
+   * where the last hop ended, see FrameCodec.putHop.)
+   * @param move four bytes:  source x, source y, destination 
+   *        x, destination y.
+   */
+  public synchronized void addHop(byte[] move) {
+    if(myTurn == null) {
+      myTurn = myPool.obtain();
+    }
+    // no turn in checkers comes close to filling a frame:
+    if(myHopCount < FrameCodec.MAX_HOPS) {
+      FrameCodec.putHop(myTurn, myHopCount, move, 0);
+      myHopCount++;
+    }
+  }
+
+  /**
+   * Finish the turn being built and start a new one.
+   * @param taunt the taunt to send with the turn (or null).
+   * @return the frame (in a pooled buffer) or null if 
+   *         there were no hops.
+   */
+  public synchronized byte[] finishTurn(String taunt) {
+    byte[] frame = myTurn;
+    if(frame != null) {
+      FrameCodec.finish(frame, FrameCodec.TURN, myHopCount,
+          encodeTaunt(taunt, FrameCodec.MAX_BODY - 1
+                      - FrameCodec.getHopsLength(myHopCount)));
+      myTurn = null;
+      myHopCount = 0;
+    }
+    return(frame);
+  }
+
+  /**
+   * Drop the turn being built (because the board has been
+   * replaced by the remote player's).
+   */
+  public synchronized void discardTurn() {
+    if(myTurn != null) {
+      myPool.release(myTurn);
+      myTurn = null;
+      myHopCount = 0;
+    }
+  }
+
+  /**
+   * Build a check (see FrameCodec.finishCheck).
+   * @return the frame (in a pooled buffer).
+   */
+  public byte[] buildCheck(int sequence, int hash) {
+    byte[] frame = myPool.obtain();
+    FrameCodec.finishCheck(frame, sequence, hash);
+    return(frame);
+  }
+
+  /**
+   * Build a board (see FrameCodec.finishBoard).
+   * @return the frame (in a pooled buffer).
+   */
+  public byte[] buildBoard(int sequence, boolean senderToMove,
+                           int[] position) {
+    byte[] frame = myPool.obtain();
+    FrameCodec.finishBoard(frame, sequence, senderToMove, position);
+    return(frame);
+  }
+
+  /**
+   * Build a frame that has no hops.
+   * @param type the frame type.
+   * @param taunt the taunt (or null).
+   * @return the frame (in a pooled buffer).
+   */
+  public byte[] build(byte type, String taunt) {
+    byte[] frame = myPool.obtain();
+    FrameCodec.finish(frame, type, 0, 
+                      encodeTaunt(taunt, FrameCodec.MAX_BODY));
+    return(frame);
+  }
+
+  /**
+   * @param maxLength the room left in the frame.
+   * @return the encoded taunt (see TauntCodec).
+   */
+  private byte[] encodeTaunt(String taunt, int maxLength) {
+    if(myTaunts == null) {
+      return(TauntCodec.encodeText(taunt));
+    }
+    return(myTaunts.encode(taunt, maxLength));
+  }
+
+}
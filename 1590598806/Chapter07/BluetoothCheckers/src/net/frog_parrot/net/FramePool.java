@@ -0,0 +1,75 @@
+package net.frog_parrot.net;
+
+/**
+ * This class keeps a few frame buffers for reuse, so that
+ * sending a turn doesn't create garbage.  Each buffer is
+ * long enough for any frame, and the frame gives its own 
+ * length (see FrameCodec.getLength), so a buffer can be 
+ * passed around in place of the frame.
+ */
+public class FramePool {
+
+  //--------------------------------------------------------
+  //  static fields
+
+  /**
+   * The most buffers to keep.
+   */
+  public static final int POOL_SIZE = 4;
+
+  //--------------------------------------------------------
+  //  instance fields
+
+  /**
+   * The buffers that are free.
+   */
+  private byte[][] myBuffers = new byte[POOL_SIZE][];
+
+  /**
+   * The number of free buffers.
+   */
+  private int myCount;
+
+  /**
+   * The number of buffers that have been created.
+   */
+  private int myCreatedCount;
+
+  //--------------------------------------------------------
+  //  buffers
+
+  /**
+   * @return a free buffer (a new one if none are free).
+   */
+  public synchronized byte[] obtain() {
+    if(myCount == 0) {
+      myCreatedCount++;
+      return(new byte[FrameCodec.MAX_FRAME_LENGTH]);
+    }
+    myCount--;
+    byte[] buffer = myBuffers[myCount];
+    myBuffers[myCount] = null;
+    return(buffer);
+  }
+
+  /**
+   * Return a buffer to the pool once its frame has been 
+   * sent.  (An array that didn't come from a pool, such 
+   * as one from FrameCodec.encode, is just ignored.)
+   */
+  public synchronized void release(byte[] buffer) {
+    if((buffer.length == FrameCodec.MAX_FRAME_LENGTH)
+       && (myCount < POOL_SIZE)) {
+      myBuffers[myCount] = buffer;
+      myCount++;
+    }
+  }
+
+  /**
+   * @return the number of buffers that have been created.
+   */
+  public synchronized int getCreatedCount() {
+    return(myCreatedCount);
+  }
+
+}
@@ -0,0 +1,277 @@
+package net.frog_parrot.net;
+
+import java.io.*;
+
+/**
+ * This class reads and writes frames over the two streams
+ * of a Bluetooth connection.  Bytes are read in bulk into
+ * a buffer (as many as have arrived, rather than one read 
+ * per byte), and the frames are parsed in place from there.
+ * Outgoing frames are collected in a buffer so that 
+ * several can go out in one write.
+ *
+ * Each turn frame that arrives is answered right away with
+ * an acknowledgement frame, and when the acknowledgement 
+ * of a turn comes back, the time since the turn was 
+ * written is recorded as the round trip time.
+ */
+public class FrameStream {
+
+  //--------------------------------------------------------
+  //  static fields
+
+  /**
+   * The size of the buffers: room for two of the longest
+   * frames.
+   */
+  public static final int BUFFER_SIZE
+      = 2*(FrameCodec.HEADER_LENGTH + FrameCodec.MAX_BODY);
+
+  //--------------------------------------------------------
+  //  instance fields
+
+  /**
+   * The stream to read from.
+   */
+  private InputStream myInputStream;
+
+  /**
+   * The stream to write to.
+   */
+  private OutputStream myOutputStream;
+
+  /**
+   * The bytes that have been read but not parsed yet.
+   */
+  private byte[] myInBuffer = new byte[BUFFER_SIZE];
+
+  /**
+   * Where the unparsed bytes start.
+   */
+  private int myInStart;
+
+  /**
+   * Where the unparsed bytes end.
+   */
+  private int myInEnd;
+
+  /**
+   * The cursor that parses the frames.
+   */
+  private FrameCodec myCodec = new FrameCodec();
+
+  /**
+   * The frames waiting to be written.
+   */
+  private byte[] myOutBuffer = new byte[BUFFER_SIZE];
+
+  /**
+   * The number of bytes waiting to be written.
+   */
+  private int myOutLength;
+
+  /**
+   * Whether the frames waiting to be written include a turn.
+   */
+  private boolean myHasTurn;
+
+  /**
+   * The acknowledgement frame.  (The same one every time.)
+   */
+  private byte[] myAck = FrameCodec.encode(FrameCodec.ACK, null, 0, null);
+
+  //--------------------------------------------------------
+  //  statistics fields
+
+  /**
+   * When the last turn was written, or 0 if its 
+   * acknowledgement has come back.
+   */
+  private long mySentTime;
+
+  /**
+   * The number of round trips timed.
+   */
+  private int myRoundTripCount;
+
+  /**
+   * The total of the round trip times.
+   */
+  private long myTotalRoundTrip;
+
+  /**
+   * The last round trip time.
+   */
+  private long myLastRoundTrip;
+
+  /**
+   * The longest round trip time.
+   */
+  private long myMaxRoundTrip;
+
+  //--------------------------------------------------------
+  //  initialization
+
+  /**
+   * Initialize the main data.
+   */
+  public FrameStream(InputStream is, OutputStream os) {
+    myInputStream = is;
+    myOutputStream = os;
+  }
+
+  //--------------------------------------------------------
+  //  reading
+
+  /**
+   * Reads the next frame, skipping acknowledgements (which 
+   * are timed) and acknowledging turns.  The frame can be 
+   * read with the codec until the next call.
+   * @return false if the connection was closed or the
+   *         frame can't be read.
+   */
+  public boolean readFrame() throws IOException {
+    while(true) {
+      if(! fill(FrameCodec.HEADER_LENGTH)) {
+        return(false);
+      }
+      int length = FrameCodec.HEADER_LENGTH 
+          + (myInBuffer[myInStart + 2] & 0xFF);
+      if(! fill(length)) {
+        return(false);
+      }
+      myCodec.reset(myInBuffer, myInStart, myInStart + length);
+      myInStart += length;
+      if(! myCodec.next()) {
+        return(false);
+      }
+      if(myCodec.getType() == FrameCodec.ACK) {
+        recordRoundTrip();
+      } else {
+        if(myCodec.getType() == FrameCodec.TURN) {
+          write(myAck);
+          flush();
+        }
+        return(true);
+      }
+    }
+  }
+
+  /**
+   * @return the cursor pointing to the frame just read.
+   */
+  public FrameCodec getCodec() {
+    return(myCodec);
+  }
+
+  /**
+   * Reads until the buffer holds at least the given number
+   * of unparsed bytes.
+   * @return false if the stream ended first.
+   */
+  private boolean fill(int length) throws IOException {
+    if(myInStart + length > myInBuffer.length) {
+      // move the unparsed bytes to the front to make room:
+      System.arraycopy(myInBuffer, myInStart, myInBuffer, 0, 
+                       myInEnd - myInStart);
+      myInEnd -= myInStart;
+      myInStart = 0;
+    }
+    while(myInEnd - myInStart < length) {
+      // take whatever has arrived, up to the end of 
+      // the buffer:
+      int count = myInputStream.read(myInBuffer, myInEnd, 
+                                     myInBuffer.length - myInEnd);
+      if(count == -1) {
+        return(false);
+      }
+      myInEnd += count;
+    }
+    return(true);
+  }
+
+  //--------------------------------------------------------
+  //  writing
+
+  /**
+   * Add a frame to the ones waiting to be written.
+   */
+  public void write(byte[] frame) throws IOException {
+    // the frame may be in a longer buffer:
+    int length = FrameCodec.getLength(frame);
+    if(myOutLength + length > myOutBuffer.length) {
+      flush();
+    }
+    System.arraycopy(frame, 0, myOutBuffer, myOutLength, length);
+    myOutLength += length;
+    if(frame[1] == FrameCodec.TURN) {
+      myHasTurn = true;
+    }
+  }
+
+  /**
+   * Write the waiting frames in one write.
+   */
+  public void flush() throws IOException {
+    if(myOutLength == 0) {
+      return;
+    }
+    if(myHasTurn) {
+      mySentTime = System.currentTimeMillis();
+      myHasTurn = false;
+    }
+    myOutputStream.write(myOutBuffer, 0, myOutLength);
+    myOutputStream.flush();
+    myOutLength = 0;
+  }
+
+  //--------------------------------------------------------
+  //  statistics
+
+  /**
+   * Time the round trip of the last turn written.
+   */
+  private synchronized void recordRoundTrip() {
+    if(mySentTime != 0) {
+      myLastRoundTrip = System.currentTimeMillis() - mySentTime;
+      mySentTime = 0;
+      myRoundTripCount++;
+      myTotalRoundTrip += myLastRoundTrip;
+      if(myLastRoundTrip > myMaxRoundTrip) {
+        myMaxRoundTrip = myLastRoundTrip;
+      }
+    }
+  }
+
+  /**
+   * @return the number of round trips timed.
+   */
+  public synchronized int getRoundTripCount() {
+    return(myRoundTripCount);
+  }
+
+  /**
+   * @return the last round trip time in milliseconds.
+   */
+  public synchronized long getLastRoundTrip() {
+    return(myLastRoundTrip);
+  }
+
+  /**
+   * @return the average round trip time in milliseconds.
+   */
+  public synchronized long getAverageRoundTrip() {
+    if(myRoundTripCount == 0) {
+      return(0);
+    }
+    return(myTotalRoundTrip/myRoundTripCount);
+  }
+
+  /**
+   * @return the longest round trip time in milliseconds.
+   */
+  public synchronized long getMaxRoundTrip() {
+    return(myMaxRoundTrip);
+  }
+
+}
@@ -0,0 +1,116 @@
+package net.frog_parrot.net;
+
+import java.io.*;
+import javax.microedition.rms.*;
+
+/**
+ * This class stores the connection URLs of the checkers
+ * services that the client has connected to before, most 
+ * recent first, so that the next game can try them before 
+ * searching for devices.  A search takes ten seconds or 
+ * more, while opening a known URL is nearly immediate when 
+ * the other player is in range.
+ *
+ * This is a utility class that does not contain instance data, 
+ * so to simplify acess all of the methods are static.
+ */
+public class PeerCache {
+
+  //---------------------------------------------------------
+  //   static fields
+
+  /**
+   * The name of the datastore.
+   */
+  public static final String STORE = "CheckersPeers";
+
+  /**
+   * The most URLs to keep.
+   */
+  public static final int MAX_PEERS = 4;
+
+  //---------------------------------------------------------
+  //   business methods
+
+  /**
+   * This gets the stored URLs, most recently used first.
+   */
+  static String[] getURLs() {
+    // if data retrieval fails, there are no URLs:
+    String[] retArray = new String[0];
+    RecordStore store = null;
+    try {
+      // if the record store does not yet exist, we 
+      // send "false" so it won't bother to create it.
+      store = RecordStore.openRecordStore(STORE, false);
+      if((store != null) && (store.getNumRecords() > 0)) {
+        // the one record holds the count, then the URLs:
+        DataInputStream dis = new DataInputStream(
+            new ByteArrayInputStream(store.getRecord(1)));
+        String[] urls = new String[dis.readByte()];
+        for(int i = 0; i < urls.length; i++) {
+          urls[i] = dis.readUTF();
+        }
+        retArray = urls;
+      }
+    } catch(Exception e) {
+      // the cache only saves time, so if data retrieval 
+      // fails, the client just searches as usual.
+    } finally {
+      try {
+        store.closeRecordStore();
+      } catch(Exception e) {
+        // if the record store is open this shouldn't throw.
+      }
+    }
+    return(retArray);
+  }
+
+  /**
+   * This puts the URL at the front of the stored list (and
+   * drops the oldest one if the list is full).
+   */
+  static void addURL(String url) {
+    String[] oldURLs = getURLs();
+    RecordStore store = null;
+    try {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      DataOutputStream dos = new DataOutputStream(baos);
+      int count = 1;
+      for(int i = 0; (i < oldURLs.length) && (count < MAX_PEERS); i++) {
+        if(! oldURLs[i].equals(url)) {
+          count++;
+        }
+      }
+      dos.writeByte(count);
+      dos.writeUTF(url);
+      count = 1;
+      for(int i = 0; (i < oldURLs.length) && (count < MAX_PEERS); i++) {
+        if(! oldURLs[i].equals(url)) {
+          dos.writeUTF(oldURLs[i]);
+          count++;
+        }
+      }
+      dos.close();
+      byte[] record = baos.toByteArray();
+      // if the record store does not yet exist, the second 
+      // arg "true" tells it to create.
+      store = RecordStore.openRecordStore(STORE, true);
+      if(store.getNumRecords() > 0) {
+        store.setRecord(1, record, 0, record.length);
+      } else {
+        store.addRecord(record, 0, record.length);
+      }
+    } catch(Exception e) {
+      // the cache only saves time, so if data storage 
+      // fails, we just skip it and move on.
+    } finally {
+      try {
+        store.closeRecordStore();
+      } catch(Exception e) {
+        // if the record store is open this shouldn't throw.
+      }
+    }
+  }
+
+}
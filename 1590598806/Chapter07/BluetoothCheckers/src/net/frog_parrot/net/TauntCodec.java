@@ -0,0 +1,398 @@
+package net.frog_parrot.net;
+
+import java.io.*;
+import java.util.Hashtable;
+
+/**
+ * This class encodes the taunts that go along with the
+ * frames (see FrameCodec), so that the usual ones don't
+ * cost a byte per letter.  The first byte of an encoded
+ * taunt says what kind it is:
+ *
+ * 1 to 63 = one of the standard taunts in DICTIONARY
+ *           (and that's the whole taunt)
+ * 64 to 127 = the id (plus 64) of a taunt that was sent
+ *           earlier in the game (and that's the whole taunt)
+ * 128 to 191 = the id (plus 128) to remember the taunt
+ *           by, then the taunt in UTF-8
+ * 192 = the taunt in UTF-8, not to be remembered
+ *
+ * An instance remembers the taunts sent and received
+ * during one game, in CACHE_SIZE places that are reused
+ * in turn.  If the message that gave a taunt its id is
+ * lost, the receiver just doesn't show the taunt when
+ * the id comes again.  An instance also counts the bytes
+ * saved compared with sending every taunt as UTF-8.
+ */
+public class TauntCodec {
+
+  //--------------------------------------------------------
+  //  static fields
+
+  /**
+   * The standard taunts.  (Both players have to have the
+   * same list, so new ones can only be added at the end,
+   * and only with a new version of the frame format.)
+   */
+  public static final String[] DICTIONARY = {
+    "You Win!",
+    "Your turn",
+    "Good move!",
+    "Nice try",
+    "Ha ha!",
+    "Oops!",
+    "Hurry up!",
+    "King me!",
+    "Gotcha!",
+    "Lucky move",
+    "Too easy",
+    "Watch this!",
+    "Well played",
+    "Good game",
+    "Rematch?",
+    "Thanks!",
+  };
+
+  /**
+   * The first byte of a taunt that was sent earlier.
+   */
+  public static final int CACHED = 0x40;
+
+  /**
+   * The first byte of a taunt to remember.
+   */
+  public static final int NEW = 0x80;
+
+  /**
+   * The first byte of a taunt not to remember.
+   */
+  public static final int TEXT = 0xC0;
+
+  /**
+   * The number of taunts remembered in each direction.
+   */
+  public static final int CACHE_SIZE = 64;
+
+  //--------------------------------------------------------
+  //  instance fields
+
+  /**
+   * The ids of the taunts sent, by taunt.
+   */
+  private Hashtable mySentIds = new Hashtable();
+
+  /**
+   * The taunts sent, by id.
+   */
+  private String[] mySent = new String[CACHE_SIZE];
+
+  /**
+   * The id to give the next taunt that is sent for the
+   * first time.
+   */
+  private int myNextId;
+
+  /**
+   * The taunts received, by id.
+   */
+  private String[] myReceived = new String[CACHE_SIZE];
+
+  /**
+   * The number of taunts encoded.
+   */
+  private int myTauntCount;
+
+  /**
+   * The number of bytes the taunts would have taken
+   * in UTF-8.
+   */
+  private int myTextLength;
+
+  /**
+   * The number of bytes the taunts took.
+   */
+  private int myEncodedLength;
+
+  //--------------------------------------------------------
+  //  encoding
+
+  /**
+   * Encodes a taunt that isn't remembered (for sending
+   * without an instance of this class).
+   * @return the encoded taunt (empty if there's no taunt).
+   */
+  public static byte[] encodeText(String taunt) {
+    if((taunt == null) || (taunt.length() == 0)) {
+      return(new byte[0]);
+    }
+    int code = getCode(taunt);
+    if(code != -1) {
+      return(new byte[] { (byte)code });
+    }
+    return(prefix(TEXT, toUTF8(taunt)));
+  }
+
+  /**
+   * Encodes a taunt, giving it an id if it isn't one of
+   * the standard taunts and hasn't been sent before.
+   * @param maxLength the most bytes the encoded taunt may
+   *        take.  A taunt that's too long is cut before it
+   *        is given an id, so that the receiver remembers
+   *        the same text as the sender.
+   * @return the encoded taunt (empty if there's no taunt).
+   */
+  public synchronized byte[] encode(String taunt, int maxLength) {
+    if((taunt == null) || (taunt.length() == 0)) {
+      return(new byte[0]);
+    }
+    byte[] text = toUTF8(taunt);
+    if(text.length >= maxLength) {
+      // (one byte is left for the kind of taunt)
+      int cut = getCut(text, maxLength - 1);
+      if(cut <= 0) {
+        return(new byte[0]);
+      }
+      taunt = fromUTF8(text, 0, cut);
+      text = toUTF8(taunt);
+    }
+    byte[] retVal;
+    int code = getCode(taunt);
+    Integer id = (Integer)(mySentIds.get(taunt));
+    if(code != -1) {
+      retVal = new byte[] { (byte)code };
+    } else if(id != null) {
+      retVal = new byte[] { (byte)(CACHED + id.intValue()) };
+    } else {
+      // the place is taken from the oldest taunt:
+      if(mySent[myNextId] != null) {
+        mySentIds.remove(mySent[myNextId]);
+      }
+      mySent[myNextId] = taunt;
+      mySentIds.put(taunt, new Integer(myNextId));
+      retVal = prefix(NEW + myNextId, text);
+      myNextId = (myNextId + 1) % CACHE_SIZE;
+    }
+    myTauntCount++;
+    myTextLength += text.length;
+    myEncodedLength += retVal.length;
+    return(retVal);
+  }
+
+  /**
+   * @return the code of a standard taunt, or -1 if the
+   *         taunt isn't one.
+   */
+  private static int getCode(String taunt) {
+    for(int i = 0; i < DICTIONARY.length; i++) {
+      if(DICTIONARY[i].equals(taunt)) {
+        return(i + 1);
+      }
+    }
+    return(-1);
+  }
+
+  /**
+   * @return the data with the given byte in front.
+   */
+  private static byte[] prefix(int first, byte[] data) {
+    byte[] retVal = new byte[data.length + 1];
+    retVal[0] = (byte)first;
+    System.arraycopy(data, 0, retVal, 1, data.length);
+    return(retVal);
+  }
+
+  /**
+   * @return the length to cut UTF-8 text to so that it 
+   *         fits in the given number of bytes, at the 
+   *         start of a character (a byte of the form 
+   *         10xxxxxx is in the middle of a character).
+   */
+  private static int getCut(byte[] text, int maxLength) {
+    int retVal = maxLength;
+    while((retVal > 0) && ((text[retVal] & 0xC0) == 0x80)) {
+      retVal--;
+    }
+    return(retVal);
+  }
+
+  /**
+   * @return the UTF-8 bytes of the text.
+   */
+  private static byte[] toUTF8(String text) {
+    try {
+      return(text.getBytes("utf-8"));
+    } catch (UnsupportedEncodingException e) {
+      return(text.getBytes());
+    }
+  }
+
+  //--------------------------------------------------------
+  //  decoding
+
+  /**
+   * Decodes a taunt, remembering it if it has an id.
+   * @param cache the taunts received so far, or null to
+   *        decode without remembering anything.
+   * @return the taunt or null if there is none (or if
+   *         it's one that was never received).
+   */
+  public static String decode(TauntCodec cache, byte[] data, int offset,
+                              int length) {
+    if(length == 0) {
+      return(null);
+    }
+    int first = data[offset] & 0xFF;
+    if(first < CACHED) {
+      if((first == 0) || (first > DICTIONARY.length)) {
+        return(null);
+      }
+      return(DICTIONARY[first - 1]);
+    } else if(first < NEW) {
+      if(cache == null) {
+        return(null);
+      }
+      return(cache.getReceived(first - CACHED));
+    }
+    String taunt = fromUTF8(data, offset + 1, length - 1);
+    if((first < TEXT) && (cache != null)) {
+      cache.setReceived(first - NEW, taunt);
+    }
+    return(taunt);
+  }
+
+  /**
+   * @param first the first byte of an encoded taunt.
+   * @return whether decoding the taunt gives it an id
+   *         (which later taunts may refer to).
+   */
+  public static boolean isRemembered(byte first) {
+    int kind = first & 0xFF;
+    return((kind >= NEW) && (kind < TEXT));
+  }
+
+  /**
+   * @return the taunt received with the given id.
+   */
+  private synchronized String getReceived(int id) {
+    return(myReceived[id]);
+  }
+
+  /**
+   * Remember a taunt received with the given id.
+   */
+  private synchronized void setReceived(int id, String taunt) {
+    myReceived[id] = taunt;
+  }
+
+  /**
+   * @return the text of the UTF-8 bytes.
+   */
+  private static String fromUTF8(byte[] data, int offset, int length) {
+    try {
+      return(new String(data, offset, length, "utf-8"));
+    } catch (UnsupportedEncodingException e) {
+      return(new String(data, offset, length));
+    }
+  }
+
+  //--------------------------------------------------------
+  //  saving
+
+  /**
+   * Writes the taunts remembered in each direction, so 
+   * that a game that is picked up again (see read) can 
+   * still send and show them by id.  The data is:  the 
+   * id to give the next taunt sent, then the taunts sent 
+   * and the taunts received, each as the number of 
+   * taunts and then the id and text (as by writeUTF) of 
+   * each.
+   */
+  public synchronized void write(DataOutputStream dos) throws IOException {
+    dos.writeByte(myNextId);
+    writeTaunts(dos, mySent);
+    writeTaunts(dos, myReceived);
+  }
+
+  /**
+   * Writes the taunts that have an id.
+   */
+  private static void writeTaunts(DataOutputStream dos, String[] taunts) 
+      throws IOException {
+    int count = 0;
+    for(int i = 0; i < taunts.length; i++) {
+      if(taunts[i] != null) {
+        count++;
+      }
+    }
+    dos.writeByte(count);
+    for(int i = 0; i < taunts.length; i++) {
+      if(taunts[i] != null) {
+        dos.writeByte(i);
+        dos.writeUTF(taunts[i]);
+      }
+    }
+  }
+
+  /**
+   * Reads the taunts written by write.
+   * @return an instance that remembers them (without
+   *         the statistics).
+   * @throws IOException if the data is damaged.
+   */
+  public static TauntCodec read(DataInputStream dis) throws IOException {
+    TauntCodec retVal = new TauntCodec();
+    retVal.myNextId = readId(dis);
+    readTaunts(dis, retVal.mySent);
+    for(int i = 0; i < CACHE_SIZE; i++) {
+      if(retVal.mySent[i] != null) {
+        retVal.mySentIds.put(retVal.mySent[i], new Integer(i));
+      }
+    }
+    readTaunts(dis, retVal.myReceived);
+    return(retVal);
+  }
+
+  /**
+   * Reads the taunts that have an id.
+   */
+  private static void readTaunts(DataInputStream dis, String[] taunts) 
+      throws IOException {
+    int count = dis.readByte();
+    if((count < 0) || (count > CACHE_SIZE)) {
+      throw(new IOException("damaged taunts"));
+    }
+    for(int i = 0; i < count; i++) {
+      taunts[readId(dis)] = dis.readUTF();
+    }
+  }
+
+  /**
+   * @return an id (checked to be in range).
+   */
+  private static int readId(DataInputStream dis) throws IOException {
+    int retVal = dis.readByte();
+    if((retVal < 0) || (retVal >= CACHE_SIZE)) {
+      throw(new IOException("damaged taunts"));
+    }
+    return(retVal);
+  }
+
+  //--------------------------------------------------------
+  //  statistics
+
+  /**
+   * @return the number of taunts sent.
+   */
+  public synchronized int getTauntCount() {
+    return(myTauntCount);
+  }
+
+  /**
+   * @return the number of bytes saved by sending the
+   *         taunts encoded rather than as UTF-8.
+   */
+  public synchronized int getBytesSaved() {
+    return(myTextLength - myEncodedLength);
+  }
+
+}
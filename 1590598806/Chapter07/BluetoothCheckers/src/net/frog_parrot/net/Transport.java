@@ -0,0 +1,35 @@
+package net.frog_parrot.net;
+
+/**
+ * This is the interface through which the game logic sends
+ * the local player's moves to the remote player, whatever
+ * carries them (SMS or Bluetooth).  (The way the game is
+ * started differs too much between the two to be part of
+ * it.)  Both implementations build their frames with a
+ * FrameBuilder, in the FrameCodec format.
+ */
+public interface Transport {
+
+  /**
+   * Add one hop to the local player's turn.
+   * @param move four bytes:  source x, source y, destination 
+   *        x, destination y.
+   */
+  public void setLocalMove(byte[] move);
+
+  /**
+   * Send the local player's turn to the remote player.
+   */
+  public void sendLocalMove();
+
+  /**
+   * Tell the remote player that the local player has quit.
+   */
+  public void sendGameOver();
+
+  /**
+   * Stop communicating.
+   */
+  public void shutDown();
+
+}
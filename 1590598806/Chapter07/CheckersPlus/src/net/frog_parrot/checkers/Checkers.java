@@ -39,7 +39,13 @@ public class Checkers extends MIDlet implements CommandListener,
   /**
    * The vector listing the contacts' phone numbers.
    */
-  private Vector myPhoneNumbers;
+  private Vector myPhoneNumbers = new Vector();
+
+  /**
+   * The index for finding contacts by name (once the 
+   * contact list has been loaded).
+   */
+  private ContactIndex myContactIndex;
 
   /**
    * The list of the user's initial choices.
@@ -63,6 +69,12 @@ public class Checkers extends MIDlet implements CommandListener,
    */
   private TextBox myTauntBox;
 
+  /**
+   * The screen where the user types the beginning of a 
+   * contact's name.
+   */
+  private TextBox myFindBox;
+
   //-----------------------------------------------------
   //    command fields
 
@@ -87,6 +99,11 @@ public class Checkers extends MIDlet implements CommandListener,
   private Command myTauntCommand = new Command("add message", 
       Command.SCREEN, 1);
 
+  /**
+   * The button to find a contact by name.
+   */
+  private Command myFindCommand = new Command("find", Command.SCREEN, 1);
+
   //-----------------------------------------------------
   //    initialization and data
 
@@ -183,7 +200,7 @@ public class Checkers extends MIDlet implements CommandListener,
    * End the program now.
    */
   public void quit() {
-    try {
+    try { 
       destroyApp(false);
       notifyDestroyed();
     } catch (MIDletStateChangeException ex) {
@@ -208,7 +225,15 @@ public class Checkers extends MIDlet implements CommandListener,
     if(c == myCancelCommand) {
       myTauntBox.setString(null);
     }
-    if(s == myTauntBox) {
+    if(s == myFindBox) {
+      // select the first contact whose name starts
+      // with the text the user entered:
+      int position = myContactIndex.find(myFindBox.getString());
+      if(position != -1) {
+        myContactMenu.setSelectedIndex(position, true);
+      }
+      Display.getDisplay(this).setCurrent(myContactMenu);
+    } else if(s == myTauntBox) {
       if(myMoveManager.getState() == MoveManager.NOT_STARTED) {
         myMoveManager.sendInvitation(myPhoneNumberField.getString());
         myPhoneNumberField = null;
@@ -218,7 +243,7 @@ public class Checkers extends MIDlet implements CommandListener,
         myCanvas.serviceRepaints();
         Display.getDisplay(this).setCurrent(myCanvas);  
       } else {
-        Display.getDisplay(this).setCurrent(myCanvas);
+        Display.getDisplay(this).setCurrent(myCanvas);  
       }
     } else if((c == myExitCommand) || (c == Alert.DISMISS_COMMAND)) {
       if((myMoveManager != null) 
@@ -231,6 +256,8 @@ public class Checkers extends MIDlet implements CommandListener,
       Display.getDisplay(this).setCurrent(myTauntBox);      
     } else if(c == myTauntCommand) {
       Display.getDisplay(this).setCurrent(myTauntBox);      
+    } else if(c == myFindCommand) {
+      Display.getDisplay(this).setCurrent(myFindBox);
     } else if(s == myStartList) {
       // since we've already checked for the exit command, 
       // a command action means that the user has selected
@@ -274,17 +301,44 @@ public class Checkers extends MIDlet implements CommandListener,
   }
   
   /**
-   * Set the contact list.
+   * Add a batch of contacts to the contact list.  The
+   * list is displayed as soon as the first batch arrives.
+   */
+  public void addContacts(String[] names, String[] phoneNumbers,
+                          int count) {
+    createContactMenu();
+    for(int i = 0; i < count; i++) {
+      myContactMenu.append(names[i], null);
+      myPhoneNumbers.addElement(phoneNumbers[i]);
+    }
+  }
+
+  /**
+   * Set the index of the contacts' names, so the user 
+   * can find a contact by typing the beginning of the name.
    */
-  public void setContactList(Vector names, Vector phoneNumbers) {
-    myPhoneNumbers = phoneNumbers;
-    String[] nameArray = new String[names.size()];
-    names.copyInto(nameArray);
-    myContactMenu = new List("select an opponent", List.IMPLICIT, 
-                             nameArray, null);
-    myContactMenu.addCommand(myExitCommand);
-    myContactMenu.setCommandListener(this);
-    Display.getDisplay(this).setCurrent(myContactMenu);
+  public void setContactIndex(ContactIndex index) {
+    System.out.println("contacts loaded in " + myPIMRunner.getLoadTime()
+                       + " ms, cached: " + myPIMRunner.isCached());
+    myContactIndex = index;
+    createContactMenu();
+    myFindBox = new TextBox("find", null, 32, TextField.ANY);
+    myFindBox.addCommand(myOkCommand);
+    myFindBox.setCommandListener(this);
+    myContactMenu.addCommand(myFindCommand);
+  }
+
+  /**
+   * Create the menu of contacts and display it (the
+   * first time this is called).
+   */
+  private void createContactMenu() {
+    if(myContactMenu == null) {
+      myContactMenu = new List("select an opponent", List.IMPLICIT);
+      myContactMenu.addCommand(myExitCommand);
+      myContactMenu.setCommandListener(this);
+      Display.getDisplay(this).setCurrent(myContactMenu);
+    }
   }
 
   //-------------------------------------------------------
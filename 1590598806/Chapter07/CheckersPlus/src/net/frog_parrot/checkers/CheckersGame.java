@@ -1,6 +1,6 @@
 package net.frog_parrot.checkers;
 
-import java.util.Vector;
+import java.util.Random;
 
 /**
  * This class takes care of the underlying logic and data of 
@@ -8,6 +8,19 @@ import java.util.Vector;
  * all of the pieces are on the board and where it is okay 
  * for them to move to.  
  *
+ * The board is stored as a set of bitboards:  each of the
+ * 32 dark squares corresponds to one bit of an int,
+ * numbered from the top left of the board, four squares
+ * per row:  square = 4*y + x.
+ *
+ * This file is kept identical in the Checkers, CheckersPlus
+ * and BluetoothCheckers projects, so that a fix to the rules 
+ * only has to be copied, not merged.  So the other two have
+ * a few methods that only Checkers' MoveManager calls (the
+ * ones to save and replace the board and to pick up a 
+ * series of jumps:  getPosition, setPosition, selectMove,
+ * getJumpingSquare and resumeJump).
+ *
  * @author Carol Hamer
  */
 public class CheckersGame {
@@ -20,11 +33,163 @@ public class CheckersGame {
    */
   public static final byte X_LENGTH = 4;
 
+  /**
+   * A constant for optimizing calculations.
+   */
+  public static final byte X_LENGTH_MINUS_1 = 3;
+
   /**
    * The length of the checkerboard in the y-direction.
    */
   public static final byte Y_LENGTH = 8;
 
+  /**
+   * A constant for optimizing calculations.
+   */
+  public static final byte Y_LENGTH_MINUS_1 = 7;
+
+  /**
+   * The number of squares that pieces can stand on.
+   */
+  public static final int SQUARE_COUNT = 32;
+
+  /**
+   * The squares of the even rows (0, 2, 4, 6).  In these
+   * rows the dark square is on the left of its pair of
+   * screen squares.
+   */
+  static final int EVEN_ROWS = 0x0F0F0F0F;
+
+  /**
+   * The squares of the odd rows (1, 3, 5, 7).  In these
+   * rows the dark square is on the right of its pair of
+   * screen squares.
+   */
+  static final int ODD_ROWS = 0xF0F0F0F0;
+
+  /**
+   * The squares with x = 0.
+   */
+  static final int LEFT_COLUMN = 0x11111111;
+
+  /**
+   * The squares with x = 3.
+   */
+  static final int RIGHT_COLUMN = 0x88888888;
+
+  /**
+   * The squares of row 0, where the local player's
+   * men are crowned.
+   */
+  static final int TOP_ROW = 0x0000000F;
+
+  /**
+   * The squares of row 7, where the remote player's
+   * men are crowned.
+   */
+  static final int BOTTOM_ROW = 0xF0000000;
+
+  /**
+   * For each square and each of the four corners
+   * (0 = top left, 1 = top right, 2 = bottom left,
+   * 3 = bottom right), the index of the adjoining
+   * square, or -1 if that corner is off the board.
+   * The entry for square s and corner c is at 4*s + c.
+   */
+  static final byte[] NEIGHBORS = new byte[SQUARE_COUNT*4];
+
+  /**
+   * For each square and each of the four corners,
+   * the landing square of a jump in that direction,
+   * or -1 if the landing square is off the board.
+   * Indexed like NEIGHBORS.
+   */
+  static final byte[] JUMPS = new byte[SQUARE_COUNT*4];
+
+  /**
+   * A kind of piece:  the local player's uncrowned piece.
+   */
+  static final int LOCAL_MAN = 0;
+
+  /**
+   * A kind of piece:  the local player's king.
+   */
+  static final int LOCAL_KING = 1;
+
+  /**
+   * A kind of piece:  the remote player's uncrowned piece.
+   */
+  static final int REMOTE_MAN = 2;
+
+  /**
+   * A kind of piece:  the remote player's king.
+   */
+  static final int REMOTE_KING = 3;
+
+  /**
+   * The random numbers for Zobrist hashing:  one for each
+   * kind of piece on each square, indexed by
+   * SQUARE_COUNT*kind + square.  The hash key of a
+   * position is the XOR of the numbers of all of its pieces,
+   * so moving a piece changes the key with two XORs.
+   */
+  static final long[] ZOBRIST_PIECES = new long[4*SQUARE_COUNT];
+
+  /**
+   * The random numbers that mark a piece that is in
+   * the middle of a multiple jump (used by the search).
+   */
+  static final long[] ZOBRIST_JUMPING = new long[SQUARE_COUNT];
+
+  /**
+   * The random number that marks the positions where it
+   * is the remote player's turn (used by the search).
+   */
+  static final long ZOBRIST_REMOTE_TO_MOVE;
+
+  /**
+   * A lookup table to find the index of a single set
+   * bit (using a de Bruijn sequence), since CLDC has no
+   * Integer.numberOfTrailingZeros.
+   */
+  private static final byte[] BIT_INDEX = {
+    0, 1, 28, 2, 29, 14, 24, 3, 30, 22, 20, 15, 25, 17, 4, 8,
+    31, 27, 13, 23, 21, 19, 16, 7, 26, 12, 18, 6, 11, 5, 10, 9
+  };
+
+  /**
+   * The corner (square) tables are filled in once
+   * when the class is loaded so that the game never
+   * needs to calculate a neighboring square again.
+   */
+  static {
+    for(int i = 0; i < SQUARE_COUNT; i++) {
+      for(int j = 0; j < 4; j++) {
+        NEIGHBORS[4*i + j] = getCornerSquare(i, j);
+      }
+    }
+    for(int i = 0; i < SQUARE_COUNT; i++) {
+      for(int j = 0; j < 4; j++) {
+        byte neighbor = NEIGHBORS[4*i + j];
+        if(neighbor == -1) {
+          JUMPS[4*i + j] = -1;
+        } else {
+          JUMPS[4*i + j] = NEIGHBORS[4*neighbor + j];
+        }
+      }
+    }
+    // the seed is fixed so that both players (and any
+    // stored tables) agree on the keys:
+    Random random = new Random(0x436865636B657273L);
+    for(int i = 0; i < ZOBRIST_PIECES.length; i++) {
+      ZOBRIST_PIECES[i] = random.nextLong();
+    }
+    for(int i = 0; i < ZOBRIST_JUMPING.length; i++) {
+      ZOBRIST_JUMPING[i] = random.nextLong();
+    }
+    ZOBRIST_REMOTE_TO_MOVE = random.nextLong();
+  }
+
   //-------------------------------------------------------
   //   instance fields
 
@@ -35,18 +200,44 @@ public class CheckersGame {
   private MoveManager myMoveManager;
 
   /**
-   * This array represents the black squares of the 
-   * checkerboard.  The two dimensions of the array 
-   * represent the two dimensions of the checkerboard.
-   * The value represents what type of piece is on 
-   * the square.
-   * 0 = empty
-   * 1 = local player's piece
-   * 2 = local player's king
-   * -1 = remote player's piece
-   * -2 = remote player's king
+   * The squares that hold the local player's uncrowned pieces.
+   */
+  private int myLocalMen;
+
+  /**
+   * The squares that hold the local player's kings.
+   */
+  private int myLocalKings;
+
+  /**
+   * The squares that hold the remote player's uncrowned pieces.
+   */
+  private int myRemoteMen;
+
+  /**
+   * The squares that hold the remote player's kings.
+   */
+  private int myRemoteKings;
+
+  /**
+   * The Zobrist hash key of the current arrangement of
+   * the pieces.  It is updated with every move, so two
+   * positions can be compared by comparing their keys.
    */
-  private byte[][] myGrid;
+  private long myHashKey;
+
+  /**
+   * The squares that hold a local piece that can move.
+   * This is brought up to date whenever the pieces move, 
+   * so the selection cursor can find the next piece to 
+   * move without testing the squares one by one.
+   */
+  private int myLocalMovers;
+
+  /**
+   * The squares that hold a local piece that can jump.
+   */
+  private int myLocalJumpers;
 
   /**
    * If the user has currently selected a piece to move, 
@@ -75,10 +266,10 @@ public class CheckersGame {
   private byte myDestinationY = -1;
 
   /**
-   * This Vector contains the coordinates of all of the 
-   * squares that the player could currently move to.
+   * This list contains all of the moves that the 
+   * currently selected piece could make.
    */
-  private Vector myPossibleMoves = new Vector(4);
+  private MoveList myPossibleMoves = new MoveList();
 
   /**
    * This is true if the player has just jumped and can 
@@ -88,12 +279,27 @@ public class CheckersGame {
 
   //-------------------------------------------------------
   //   get/set data
-  
+
   /**
    * get the piece on the given grid square.
+   * 0 = empty
+   * 1 = local player's piece
+   * 2 = local player's king
+   * -1 = remote player's piece
+   * -2 = remote player's king
    */
   byte getPiece(byte x, byte y) {
-    return(myGrid[x][y]);
+    int bit = 1 << getSquare(x, y);
+    if((myLocalMen & bit) != 0) {
+      return(1);
+    } else if((myLocalKings & bit) != 0) {
+      return(2);
+    } else if((myRemoteMen & bit) != 0) {
+      return(-1);
+    } else if((myRemoteKings & bit) != 0) {
+      return(-2);
+    }
+    return(0);
   }
 
   /**
@@ -123,11 +329,59 @@ public class CheckersGame {
    * This tells whether or not the game has ended.
    */
   boolean getGameOver() {
-    //System.out.println("getGameOver-->returning: " 
-    //    + (myMoveManager.getState() == MoveManager.GAME_OVER));
     return(myMoveManager.getState() == MoveManager.GAME_OVER);
   }
 
+  /**
+   * @return the squares holding the local player's men.
+   */
+  int getLocalMen() {
+    return(myLocalMen);
+  }
+
+  /**
+   * @return the squares holding the local player's kings.
+   */
+  int getLocalKings() {
+    return(myLocalKings);
+  }
+
+  /**
+   * @return the squares holding the remote player's men.
+   */
+  int getRemoteMen() {
+    return(myRemoteMen);
+  }
+
+  /**
+   * @return the squares holding the remote player's kings.
+   */
+  int getRemoteKings() {
+    return(myRemoteKings);
+  }
+
+  /**
+   * Copies the pieces into the given array:  the local men,
+   * local kings, remote men and remote kings.  This may be
+   * called from any thread, since the copy is made under
+   * the lock that moving a piece holds, so it never has 
+   * half of a hop.
+   */
+  synchronized void getPosition(int[] position) {
+    position[0] = myLocalMen;
+    position[1] = myLocalKings;
+    position[2] = myRemoteMen;
+    position[3] = myRemoteKings;
+  }
+
+  /**
+   * @return the Zobrist hash key of the current position
+   *         (the pieces only, not whose turn it is).
+   */
+  long getHashKey() {
+    return(myHashKey);
+  }
+
   /**
    * set the MoveManager object.
    */
@@ -135,26 +389,41 @@ public class CheckersGame {
     myMoveManager = manager;
   }
 
+  /**
+   * Replaces the pieces with the given position (to 
+   * restore a recorded game).  Any selection is cleared.
+   */
+  synchronized void setPosition(int localMen, int localKings, 
+                                int remoteMen, int remoteKings) {
+    myLocalMen = localMen;
+    myLocalKings = localKings;
+    myRemoteMen = remoteMen;
+    myRemoteKings = remoteKings;
+    myHashKey = computeHashKey(myLocalMen, myLocalKings,
+                               myRemoteMen, myRemoteKings);
+    mySelectedX = -1;
+    mySelectedY = -1;
+    myDestinationX = -1;
+    myDestinationY = -1;
+    myPossibleMoves.clear();
+    myIsJumping = false;
+    updateMovers();
+  }
+
   //-------------------------------------------------------
   //   initialization
 
   /**
    * Constructor puts the pieces in their initial positions:
+   * the remote player's pieces fill the top three rows
+   * and the local player's pieces fill the bottom three.
    */
   CheckersGame() {
-    myGrid = new byte[X_LENGTH][];
-    for(byte i = 0; i < myGrid.length; i++) {
-      myGrid[i] = new byte[Y_LENGTH];
-      for(byte j = 0; j < myGrid[i].length; j++) {
-	if(j < 3) {
-	  // fill the top of the board with remote players
-	  myGrid[i][j] = -1;
-	} else if(j > 4) {
-	  // fill the bottom of the board with local players
-	  myGrid[i][j] = 1;
-	}
-      }
-    }
+    myRemoteMen = 0x00000FFF;
+    myLocalMen = 0xFFF00000;
+    myHashKey = computeHashKey(myLocalMen, myLocalKings,
+                               myRemoteMen, myRemoteKings);
+    updateMovers();
   }
 
   /**
@@ -164,7 +433,7 @@ public class CheckersGame {
   void start() {
     mySelectedX = 0;
     mySelectedY = 5;
-    getMoves(mySelectedX, mySelectedY, myPossibleMoves, false);
+    getMoves(getSquare(mySelectedX, mySelectedY), false, myPossibleMoves);
   }
 
   //-------------------------------------------------------
@@ -182,33 +451,17 @@ public class CheckersGame {
    */
   void moveOpponent(byte[] moveData) {
     // since both players appear on their own screens 
-    // as the red side (bottom of the screen), we need 
+    // as the red side (bottom of the screen), you need 
     // to invert the opponent's move:
-    moveData[0] = (new Integer(X_LENGTH - moveData[0] - 1)).byteValue();
-    moveData[2] = (new Integer(X_LENGTH - moveData[2] - 1)).byteValue();
-    moveData[1] = (new Integer(Y_LENGTH - moveData[1] - 1)).byteValue();
-    moveData[3] = (new Integer(Y_LENGTH - moveData[3] - 1)).byteValue();
-    myGrid[moveData[2]][moveData[3]] 
-      = myGrid[moveData[0]][moveData[1]];
-    myGrid[moveData[0]][moveData[1]] = 0;
-    // deal with an opponent's jump:
-    if((moveData[1] - moveData[3] > 1) || 
-       (moveData[3] - moveData[1] > 1)) {
-      int jumpedY = (moveData[1] + moveData[3])/2;
-      int jumpedX = moveData[0];
-      int parity = moveData[1] % 2;
-      if((parity > 0) && (moveData[2] > moveData[0])) {
-	jumpedX++;
-      } else if((parity == 0) && (moveData[0] > moveData[2])) {
-	jumpedX--;
-      }
-      myGrid[jumpedX][jumpedY] = 0;
-    }
-    // if the opponent reaches the far side, 
+    moveData[0] = (byte)(X_LENGTH_MINUS_1 - moveData[0]);
+    moveData[2] = (byte)(X_LENGTH_MINUS_1 - moveData[2]);
+    moveData[1] = (byte)(Y_LENGTH_MINUS_1 - moveData[1]);
+    moveData[3] = (byte)(Y_LENGTH_MINUS_1 - moveData[3]);
+    // move the piece, deal with an opponent's jump,
+    // and if the opponent reaches the far side,
     // make him a king:
-    if(moveData[3] == Y_LENGTH - 1) {
-      myGrid[moveData[2]][moveData[3]] = -2;
-    }
+    movePiece(getSquare(moveData[0], moveData[1]),
+              getSquare(moveData[2], moveData[3]));
   }
 
   /**
@@ -218,7 +471,6 @@ public class CheckersGame {
    * a double or triple jump.
    */
   void endOpponentTurn() {
-    //myTurn = true;
     // Now begin the local player's turn: 
     // First select the first local piece that can be 
     // moved. (rightPressed will select an appropriate 
@@ -229,10 +481,69 @@ public class CheckersGame {
     myDestinationX = -1;
     myDestinationY = -1;
     rightPressed();
-    // the local player's thread has been waiting 
-    // for the opponent's turn to end.  
-    synchronized(this) {
-      notify();
+  }
+
+  /**
+   * This selects a suggested move at the start of the local
+   * player's turn, so that pressing the up key plays it
+   * right away (and the left and right keys go on to
+   * the piece's other moves as usual).
+   * @param move the packed move (see MoveList), which is
+   *        ignored if it isn't one of the moves the local
+   *        player can make.
+   */
+  void selectMove(int move) {
+    if((move == -1) || (myIsJumping)) {
+      return;
+    }
+    int source = MoveList.getSource(move);
+    if((myLocalMovers & (1 << source)) == 0) {
+      return;
+    }
+    selectSquare(source);
+    if(myPossibleMoves.indexOfDestination(MoveList.getDestination(move))
+       != -1) {
+      setDestination(MoveList.getDestination(move));
+    } else {
+      myDestinationX = -1;
+      myDestinationY = -1;
+    }
+  }
+
+  /**
+   * @return the square of the local piece that is in the
+   *         middle of a series of jumps, or -1 if none is.
+   */
+  int getJumpingSquare() {
+    if(! myIsJumping) {
+      return(-1);
+    }
+    return(getSquare(mySelectedX, mySelectedY));
+  }
+
+  /**
+   * This picks up a series of jumps where it was left off
+   * (when a game is restored), so the local player can go
+   * on jumping with the piece on the given square.  The
+   * turn ends if the piece can't jump any further.
+   */
+  void resumeJump(int square) {
+    mySelectedX = (byte)(square & 3);
+    mySelectedY = (byte)(square >> 2);
+    myDestinationX = -1;
+    myDestinationY = -1;
+    myPossibleMoves.clear();
+    if((myLocalJumpers & (1 << square)) != 0) {
+      getMoves(square, true, myPossibleMoves);
+    }
+    if(myPossibleMoves.size() != 0) {
+      myIsJumping = true;
+      setDestination(MoveList.getDestination(myPossibleMoves.get(0)));
+    } else {
+      mySelectedX = -1;
+      mySelectedY = -1;
+      myIsJumping = false;
+      myMoveManager.endTurn();
     }
   }
 
@@ -251,28 +562,19 @@ public class CheckersGame {
       // find the next possible piece (to the left) 
       // that can move:
       selectPrevious();
-      // if selectPrevious fails to fill myPossibleMoves, that 
-      // means that the local player cannot move, so the game
-      // is over:
-      if(myPossibleMoves.size() == 0) {
-	//System.out.println("leftPressed-->setting game over");
-	myMoveManager.loseGame();
-	//System.out.println("leftPressed-->state: " + myMoveManager.getState());
+      // if no piece can move, that means that the local 
+      // player has lost, so the game is over:
+      if(myLocalMovers == 0) {
+        myMoveManager.loseGame();
       }
     } else {
       // if the user has already selected a piece to move, 
-      // we give the options of where the piece can move to:
-      for(byte i = 0; i < myPossibleMoves.size(); i++) {
-	byte[] coordinates = (byte[])myPossibleMoves.elementAt(i);
-	if((coordinates[0] == myDestinationX) && 
-	   (coordinates[1] == myDestinationY)) {
-	  i++;
-	  i = (new Integer(i % myPossibleMoves.size())).byteValue();
-	  coordinates = (byte[])myPossibleMoves.elementAt(i);
-	  myDestinationX = coordinates[0];
-	  myDestinationY = coordinates[1];
-	  break;
-	}
+      // you give the options of where the piece can move to:
+      int i = myPossibleMoves.indexOfDestination(
+          getSquare(myDestinationX, myDestinationY));
+      if(i != -1) {
+        i = (i + 1) % myPossibleMoves.size();
+        setDestination(MoveList.getDestination(myPossibleMoves.get(i)));
       }
     }
   }
@@ -288,35 +590,26 @@ public class CheckersGame {
       // find the next possible piece that can 
       // move:
       selectNext();
-      // if selectNext fails to fill myPossibleMoves, that 
-      // means that the local player cannot move, so the game
-      // is over:
-      if(myPossibleMoves.size() == 0) {
-	//System.out.println("rightPressed-->setting game over");
-	myMoveManager.loseGame();
-	//System.out.println("rightPressed-->state: " + myMoveManager.getState());
+      // if no piece can move, that means that the local 
+      // player has lost, so the game is over:
+      if(myLocalMovers == 0) {
+        myMoveManager.loseGame();
       }
     } else {
       // if the user has already selected a piece to move, 
-      // we give the options of where the piece can move to:
-      for(byte i = 0; i < myPossibleMoves.size(); i++) {
-	byte[] coordinates = (byte[])myPossibleMoves.elementAt(i);
-	if((coordinates[0] == myDestinationX) && 
-	   (coordinates[1] == myDestinationY)) {
-	  i++;
-	  i = (new Integer(i % myPossibleMoves.size())).byteValue();
-	  coordinates = (byte[])myPossibleMoves.elementAt(i);
-	  myDestinationX = coordinates[0];
-	  myDestinationY = coordinates[1];
-	  break;
-	}
+      // you give the options of where the piece can move to:
+      int i = myPossibleMoves.indexOfDestination(
+          getSquare(myDestinationX, myDestinationY));
+      if(i != -1) {
+        i = (i + 1) % myPossibleMoves.size();
+        setDestination(MoveList.getDestination(myPossibleMoves.get(i)));
       }
     }
   }
 
   /**
-   * If no piece is selected, we select one.  If a piece 
-   * is selected, we move it.
+   * If no piece is selected, you select one.  If a piece 
+   * is selected, you move it.
    */
   void upPressed() {
     // in the first case the user has not yet selected a 
@@ -325,7 +618,7 @@ public class CheckersGame {
       fixSelection();
     } else {
       // if the source square and destination square 
-      // have been chosen, we move the piece:
+      // have been chosen, you move the piece:
       move();
     }
   }
@@ -366,13 +659,11 @@ public class CheckersGame {
    * the player selects the destination square of the move.
    */
   private void fixSelection() {
-    byte[] destination = (byte[])myPossibleMoves.elementAt(0);
     // setting the destination coordinates to valid 
     // coordinates is the signal that the user is done 
     // selecting the piece to move and now is choosing 
     // the destination square:
-    myDestinationX = destination[0];
-    myDestinationY = destination[1];
+    setDestination(MoveList.getDestination(myPossibleMoves.get(0)));
   }
 
   /**
@@ -381,26 +672,21 @@ public class CheckersGame {
    * the player can move.
    */
   private void selectNext() {
-    // Test the squares one by one (starting from the 
-    // currently selected square) until we find a square 
-    // that contains one of the local player's pieces 
-    // that can move:
-    byte testX = mySelectedX;
-    byte testY = mySelectedY;
-    while(true) {
-      testX++;
-      if(testX >= X_LENGTH) {
-	testX = 0;
-	testY++;
-	testY = (new Integer(testY % Y_LENGTH)).byteValue();
-      }
-      getMoves(testX, testY, myPossibleMoves, false);
-      if((myPossibleMoves.size() != 0) || 
-	   ((testX == mySelectedX) && (testY == mySelectedY))) {
-	mySelectedX = testX;
-	mySelectedY = testY;
-	break;
-      }
+    // The squares are numbered in the order that the 
+    // cursor visits them, so the next piece that can
+    // move is the lowest mover above the selected square
+    // (or the lowest of all, going around the board):
+    int square = getSquare(mySelectedX, mySelectedY);
+    int after = 0;
+    if(square < SQUARE_COUNT - 1) {
+      after = myLocalMovers & (-2 << square);
+    }
+    if(after != 0) {
+      selectSquare(lowestSquare(after));
+    } else if(myLocalMovers != 0) {
+      selectSquare(lowestSquare(myLocalMovers));
+    } else {
+      myPossibleMoves.clear();
     }
   }
 
@@ -410,31 +696,30 @@ public class CheckersGame {
    * a piece that the player can move.
    */
   private void selectPrevious() {
-    // Test the squares one by one (starting from the 
-    // currently selected square) until we find a square 
-    // that contains one of the local player's pieces 
-    // that can move:
-    byte testX = mySelectedX;
-    byte testY = mySelectedY;
-    while(true) {
-      testX--;
-      if(testX < 0) {
-	testX += X_LENGTH;
-	testY--;
-	if(testY < 0) {
-	  testY += Y_LENGTH;
-	}
-      }
-      getMoves(testX, testY, myPossibleMoves, false);
-      if((myPossibleMoves.size() != 0) || 
-	 ((testX == mySelectedX) && (testY == mySelectedY))) {
-	mySelectedX = testX;
-	mySelectedY = testY;
-	break;
-      }
+    // the previous piece that can move is the highest 
+    // mover below the selected square (or the highest 
+    // of all, going around the board):
+    int square = getSquare(mySelectedX, mySelectedY);
+    int before = myLocalMovers & ((1 << square) - 1);
+    if(before != 0) {
+      selectSquare(highestSquare(before));
+    } else if(myLocalMovers != 0) {
+      selectSquare(highestSquare(myLocalMovers));
+    } else {
+      myPossibleMoves.clear();
     }
   }
 
+  /**
+   * Selects the piece on the given square and finds
+   * its moves.
+   */
+  private void selectSquare(int square) {
+    mySelectedX = (byte)(square & 3);
+    mySelectedY = (byte)(square >> 2);
+    getMoves(square, false, myPossibleMoves);
+  }
+
   //-------------------------------------------------------
   //   internal utilities
 
@@ -443,34 +728,19 @@ public class CheckersGame {
    * updates the data accordingly.
    */
   private void move() {
+    int destination = getSquare(myDestinationX, myDestinationY);
     // the piece that was on the source square is 
-    // now on the destination square:
-    myGrid[myDestinationX][myDestinationY] 
-      = myGrid[mySelectedX][mySelectedY];
-    // the source square is emptied:
-    myGrid[mySelectedX][mySelectedY] = 0;
-    if(myDestinationY == 0) {
-      myGrid[myDestinationX][myDestinationY] = 2;
-    }
+    // now on the destination square (and is crowned if
+    // it reached the top), and any piece that was jumped
+    // over is removed:
+    int jumped = movePiece(getSquare(mySelectedX, mySelectedY),
+                           destination);
     // tell the communicator to inform the other player 
     // of this move:
     myMoveManager.move(mySelectedX, mySelectedY, 
-			myDestinationX, myDestinationY);
+                        myDestinationX, myDestinationY);
     // deal with the special rules for jumps::
-    if((mySelectedY - myDestinationY > 1) || 
-       (myDestinationY - mySelectedY > 1)) {
-      int jumpedY = (mySelectedY + myDestinationY)/2;
-      int jumpedX = mySelectedX;
-      int parity = mySelectedY % 2;
-      // the coordinates of the jumped square depend on 
-      // what row we're in:
-      if((parity > 0) && (myDestinationX > mySelectedX)) {
-	jumpedX++;
-      } else if((parity == 0) && (mySelectedX > myDestinationX)) {
-	jumpedX--;
-      }
-      // remove the piece that was jumped over:
-      myGrid[jumpedX][jumpedY] = 0;
+    if(jumped != -1) {
       // now get ready to jump again if possible:
       mySelectedX = myDestinationX;
       mySelectedY = myDestinationY;
@@ -480,44 +750,417 @@ public class CheckersGame {
       // The "true" argument tells the program to return 
       // only jumps because the player can go again ONLY 
       // if there's a jump:
-      getMoves(mySelectedX, mySelectedY, myPossibleMoves, true);
+      myPossibleMoves.clear();
+      if((myLocalJumpers & (1 << destination)) != 0) {
+        getMoves(destination, true, myPossibleMoves);
+      }
       // if there's another jump possible with the same piece, 
       // allow the player to continue jumping:
       if(myPossibleMoves.size() != 0) {
-	myIsJumping = true;
-	byte[] landing = (byte[])myPossibleMoves.elementAt(0);
-	myDestinationX = landing[0];
-	myDestinationY = landing[1];
+        myIsJumping = true;
+        setDestination(MoveList.getDestination(myPossibleMoves.get(0)));
       } else {
-	myIsJumping = false;
-	myMoveManager.endTurn();
+        myIsJumping = false;
+        myMoveManager.endTurn();
       }
     } else {
-      // since it's not a jump, we just end the turn 
+      // since it's not a jump, you just end the turn 
       // by deselecting everything.
       mySelectedX = -1;
       mySelectedY = -1;
       myDestinationX = -1;
       myDestinationY = -1;
-      myPossibleMoves.removeAllElements();
-      // tell the other player we're done:
+      myPossibleMoves.clear();
+      // tell the other player you're done:
       myIsJumping = false;
       myMoveManager.endTurn();
     }
   }
-  
+
+  /**
+   * Moves the piece on the source square to the
+   * destination square, removes the piece that was jumped
+   * over (if any), and crowns the piece if it has reached
+   * the far side.  The hash key is updated along with
+   * the bitboards, all under the lock that getPosition 
+   * holds.
+   * @return the square that was jumped over or -1 if the
+   *         move is not a jump.
+   */
+  private synchronized int movePiece(int source, int destination) {
+    int kind = getKind(source);
+    togglePiece(kind, source);
+    togglePiece(kind, destination);
+    int jumped = getJumpedSquare(source, destination);
+    if(jumped != -1) {
+      togglePiece(getKind(jumped), jumped);
+    }
+    if((kind == LOCAL_MAN) && ((TOP_ROW & (1 << destination)) != 0)) {
+      togglePiece(LOCAL_MAN, destination);
+      togglePiece(LOCAL_KING, destination);
+    } else if((kind == REMOTE_MAN)
+              && ((BOTTOM_ROW & (1 << destination)) != 0)) {
+      togglePiece(REMOTE_MAN, destination);
+      togglePiece(REMOTE_KING, destination);
+    }
+    updateMovers();
+    return(jumped);
+  }
+
+  /**
+   * Adds or removes a piece of the given kind on
+   * the given square, and updates the hash key.
+   */
+  private void togglePiece(int kind, int square) {
+    int bit = 1 << square;
+    switch(kind) {
+    case LOCAL_MAN:
+      myLocalMen ^= bit;
+      break;
+    case LOCAL_KING:
+      myLocalKings ^= bit;
+      break;
+    case REMOTE_MAN:
+      myRemoteMen ^= bit;
+      break;
+    default:
+      myRemoteKings ^= bit;
+      break;
+    }
+    myHashKey ^= ZOBRIST_PIECES[SQUARE_COUNT*kind + square];
+  }
+
+  /**
+   * @return the kind of piece on the given square,
+   *         or -1 if the square is empty.
+   */
+  private int getKind(int square) {
+    int bit = 1 << square;
+    if((myLocalMen & bit) != 0) {
+      return(LOCAL_MAN);
+    } else if((myLocalKings & bit) != 0) {
+      return(LOCAL_KING);
+    } else if((myRemoteMen & bit) != 0) {
+      return(REMOTE_MAN);
+    } else if((myRemoteKings & bit) != 0) {
+      return(REMOTE_KING);
+    }
+    return(-1);
+  }
+
+  /**
+   * Sets the destination square selected by the user.
+   */
+  private void setDestination(int square) {
+    myDestinationX = (byte)(square & 3);
+    myDestinationY = (byte)(square >> 2);
+  }
+
+  /**
+   * Determines where the piece on the given 
+   * square can move.  Clears the list
+   * and fills it with the moves that 
+   * the piece can make.
+   * @param jumpsOnly if you should return only moves that 
+   *        are jumps.
+   */
+  private void getMoves(int square, boolean jumpsOnly, MoveList toFill) {
+    int bit = 1 << square;
+    // if the square does not contain one of the local player's 
+    // pieces, then there are no corresponding moves and you just
+    // return an empty list.
+    getMoves(myLocalMen & bit, myLocalKings & bit, 
+             myRemoteMen | myRemoteKings, getEmpty(), 
+             true, jumpsOnly, toFill);
+  }
+
+  /**
+   * Fills the list with every move that one side 
+   * can make in the current position:  jumps first, 
+   * then ordinary moves.
+   * @param local whether to find the moves of the local 
+   *        player or of the remote player.
+   * @param jumpsOnly if you should return only moves that 
+   *        are jumps.
+   */
+  void getAllMoves(boolean local, boolean jumpsOnly, MoveList toFill) {
+    if(local) {
+      getMoves(myLocalMen, myLocalKings, myRemoteMen | myRemoteKings, 
+               getEmpty(), true, jumpsOnly, toFill);
+    } else {
+      getMoves(myRemoteMen, myRemoteKings, myLocalMen | myLocalKings, 
+               getEmpty(), false, jumpsOnly, toFill);
+    }
+  }
+
+  /**
+   * @return the squares that have no piece on them.
+   */
+  private int getEmpty() {
+    return(~(myLocalMen | myLocalKings | myRemoteMen | myRemoteKings));
+  }
+
+  //-------------------------------------------------------
+  //   bitboard utilities
+
+  /**
+   * Converts grid coordinates to the index of the
+   * corresponding bit.
+   */
+  static int getSquare(int x, int y) {
+    return((y << 2) | x);
+  }
+
+  /**
+   * Gets the index of the lowest set bit of a
+   * (non-zero) bitboard.
+   */
+  static int lowestSquare(int bitboard) {
+    return(BIT_INDEX[((bitboard & -bitboard) * 0x077CB531) >>> 27]);
+  }
+
+  /**
+   * Gets the index of the highest set bit of a
+   * (non-zero) bitboard.
+   */
+  static int highestSquare(int bitboard) {
+    // set every bit below the highest one, so that only 
+    // the highest one differs from its neighbor:
+    bitboard |= bitboard >>> 1;
+    bitboard |= bitboard >>> 2;
+    bitboard |= bitboard >>> 4;
+    bitboard |= bitboard >>> 8;
+    bitboard |= bitboard >>> 16;
+    return(lowestSquare(bitboard ^ (bitboard >>> 1)));
+  }
+
+  /**
+   * Computes the Zobrist hash key of a position from
+   * scratch.  (The game itself only needs this once, for
+   * the starting position.)
+   */
+  static long computeHashKey(int localMen, int localKings,
+                             int remoteMen, int remoteKings) {
+    // (each bitboard is hashed separately, so that no
+    // array is created:)
+    return(hashSquares(localMen, LOCAL_MAN)
+           ^ hashSquares(localKings, LOCAL_KING)
+           ^ hashSquares(remoteMen, REMOTE_MAN)
+           ^ hashSquares(remoteKings, REMOTE_KING));
+  }
+
+  /**
+   * @return the Zobrist keys of the squares in the given
+   *         bitboard combined, for the given kind of piece
+   *         (see LOCAL_MAN etc.).
+   */
+  private static long hashSquares(int squares, int kind) {
+    long key = 0;
+    while(squares != 0) {
+      key ^= ZOBRIST_PIECES[SQUARE_COUNT*kind + lowestSquare(squares)];
+      squares &= squares - 1;
+    }
+    return(key);
+  }
+
+  /**
+   * Counts the squares in a bitboard.
+   */
+  static int countSquares(int bitboard) {
+    bitboard -= (bitboard >>> 1) & 0x55555555;
+    bitboard = (bitboard & 0x33333333) + ((bitboard >>> 2) & 0x33333333);
+    bitboard = (bitboard + (bitboard >>> 4)) & 0x0F0F0F0F;
+    return((bitboard * 0x01010101) >>> 24);
+  }
+
+  /**
+   * If the move between the two given squares is a
+   * jump, this finds the square that was jumped over.
+   * @return the jumped square or -1 if the move is not a jump.
+   */
+  static int getJumpedSquare(int source, int destination) {
+    for(int i = 0; i < 4; i++) {
+      if(JUMPS[4*source + i] == destination) {
+        return(NEIGHBORS[4*source + i]);
+      }
+    }
+    return(-1);
+  }
+
+  /**
+   * Shifts every piece in the bitboard to the square
+   * adjoining its top left corner.  (Pieces that would
+   * leave the board are dropped.)
+   */
+  static int shiftUpLeft(int bitboard) {
+    return(((bitboard & EVEN_ROWS & ~LEFT_COLUMN) >>> 5)
+           | ((bitboard & ODD_ROWS) >>> 4));
+  }
+
+  /**
+   * Shifts every piece in the bitboard to the square
+   * adjoining its top right corner.
+   */
+  static int shiftUpRight(int bitboard) {
+    return(((bitboard & EVEN_ROWS) >>> 4)
+           | ((bitboard & ODD_ROWS & ~RIGHT_COLUMN) >>> 3));
+  }
+
+  /**
+   * Shifts every piece in the bitboard to the square
+   * adjoining its bottom left corner.
+   */
+  static int shiftDownLeft(int bitboard) {
+    return(((bitboard & EVEN_ROWS & ~LEFT_COLUMN) << 3)
+           | ((bitboard & ODD_ROWS) << 4));
+  }
+
+  /**
+   * Shifts every piece in the bitboard to the square
+   * adjoining its bottom right corner.
+   */
+  static int shiftDownRight(int bitboard) {
+    return(((bitboard & EVEN_ROWS) << 4)
+           | ((bitboard & ODD_ROWS & ~RIGHT_COLUMN) << 5));
+  }
+
+  /**
+   * Shifts every piece in the bitboard to the square
+   * adjoining the given corner.
+   */
+  static int shift(int bitboard, int corner) {
+    switch(corner) {
+    case 0:
+      return(shiftUpLeft(bitboard));
+    case 1:
+      return(shiftUpRight(bitboard));
+    case 2:
+      return(shiftDownLeft(bitboard));
+    default:
+      return(shiftDownRight(bitboard));
+    }
+  }
+
+  /**
+   * @return the squares holding a local piece that
+   *         has at least one legal move.
+   */
+  int getLocalMovers() {
+    return(myLocalMovers);
+  }
+
+  /**
+   * @return the squares holding a local piece that
+   *         can jump.
+   */
+  int getLocalJumpers() {
+    return(myLocalJumpers);
+  }
+
+  /**
+   * Finds all of the squares holding a local piece
+   * that has at least one legal move (and the ones that 
+   * can jump), using whole-board shifts rather than testing 
+   * the squares one by one.  This is called each time the 
+   * pieces move, which costs the same few dozen operations 
+   * however many pieces are on the board.
+   */
+  private void updateMovers() {
+    int empty = ~(myLocalMen | myLocalKings | myRemoteMen | myRemoteKings);
+    int remote = myRemoteMen | myRemoteKings;
+    int pieces = myLocalMen | myLocalKings;
+    int movers = 0;
+    int jumpers = 0;
+    for(int i = 0; i < 4; i++) {
+      if(i == 2) {
+        // only kings can move toward the bottom:
+        pieces = myLocalKings;
+      }
+      // a piece can jump if the adjoining square holds 
+      // an opponent with an empty square behind, and it
+      // can move if it can jump or the adjoining square 
+      // is empty (shifting the targets back onto the 
+      // pieces that reach them):
+      jumpers |= pieces & shift(remote & shift(empty, 3 - i), 3 - i);
+      movers |= pieces & shift(empty, 3 - i);
+    }
+    myLocalJumpers = jumpers;
+    myLocalMovers = movers | jumpers;
+  }
+
+  /**
+   * Generates the moves of one side for the given 
+   * bitboards and adds them to the list.  The moves 
+   * are found one direction at a time for all of the 
+   * pieces at once, so no square is tested individually.
+   * @param men the moving side's uncrowned pieces.
+   * @param kings the moving side's kings.
+   * @param opponents all of the other side's pieces.
+   * @param empty the unoccupied squares.
+   * @param towardTop whether the uncrowned pieces move 
+   *        toward the top of the board (local player) or 
+   *        toward the bottom (remote player).
+   * @param jumpsOnly if you should return only moves that 
+   *        are jumps.
+   */
+  static void getMoves(int men, int kings, int opponents, int empty, 
+                       boolean towardTop, boolean jumpsOnly, 
+                       MoveList toFill) {
+    toFill.clear();
+    int forward = 0;
+    if(! towardTop) {
+      forward = 2;
+    }
+    // first the jumps, since they are the most 
+    // interesting moves:
+    for(int i = 0; i < 4; i++) {
+      int pieces = kings;
+      if((i & 2) == forward) {
+        pieces |= men;
+      }
+      int back = 3 - i;
+      int landings = shift(shift(pieces, i) & opponents, i) & empty;
+      while(landings != 0) {
+        int landing = lowestSquare(landings);
+        landings &= landings - 1;
+        int captured = NEIGHBORS[4*landing + back];
+        toFill.add(MoveList.pack(NEIGHBORS[4*captured + back], 
+                                 landing, captured));
+      }
+    }
+    if(jumpsOnly) {
+      return;
+    }
+    for(int i = 0; i < 4; i++) {
+      int pieces = kings;
+      if((i & 2) == forward) {
+        pieces |= men;
+      }
+      int back = 3 - i;
+      int destinations = shift(pieces, i) & empty;
+      while(destinations != 0) {
+        int destination = lowestSquare(destinations);
+        destinations &= destinations - 1;
+        toFill.add(MoveList.pack(NEIGHBORS[4*destination + back], 
+                                 destination, -1));
+      }
+    }
+  }
+
   /**
-   * Given a square on the grid, get the coordinates 
-   * of one of the adjoining (diagonal) squares.
+   * Given a square index and a corner, get the index
+   * of the adjoining (diagonal) square.  This is only used
+   * to fill the lookup tables when the class is loaded.
    * 0 = top left
    * 1 = top right
    * 2 = bottom left
    * 3 = bottom right.
-   * @return the coordinates or null if the desired corner 
+   * @return the index or -1 if the desired corner
    * is off the board.
    */
-  private byte[] getCornerCoordinates(byte x, byte y, byte corner) {
-    byte[] retArray = null;
+  private static byte getCornerSquare(int square, int corner) {
+    int x = square & 3;
+    int y = square >> 2;
     if(corner < 2) {
       y--;
     } else {
@@ -530,71 +1173,10 @@ public class CheckersGame {
     } else if((corner % 2 != 0) && (y % 2 == 0)) {
       x++;
     }
-    try {
-      if(myGrid[x][y] > -15) {
-	// we don't really care about the value, this
-	// if statement is just there to get it to 
-	// throw if the coordinates aren't on the board.
-	retArray = new byte[2];
-	retArray[0] = x;
-	retArray[1] = y;
-      }
-    } catch(ArrayIndexOutOfBoundsException e) {
-      // this throws if the coordinates do not correspond 
-      // to a square on the board. It's not a problem, 
-      // so we do nothing--we just return null instead 
-      // of returning coordinates since no valid 
-      // coordinates correspond to the desired corner.
-    }
-    return(retArray);
-  }
-  
-  /**
-   * Determines where the piece in the given 
-   * grid location can move.  Clears the Vector
-   * and fills it with the locations that 
-   * the piece can move to.
-   * @param jumpsOnly if we should return only moves that 
-   *        are jumps.
-   */
-  private void getMoves(byte x, byte y, Vector toFill, boolean jumpsOnly) {
-    toFill.removeAllElements();
-    // if the square does not contain one of the local player's 
-    // pieces, then there are no corresponding moves and we just
-    // return an empty vector.
-    if(myGrid[x][y] <= 0) {
-      return;
+    if((x < 0) || (x >= X_LENGTH) || (y < 0) || (y >= Y_LENGTH)) {
+      return(-1);
     }
-    // check each of the four corners to see if the 
-    // piece can move there:
-    for(byte i = 0; i < 4; i++) {
-      byte[] coordinates = getCornerCoordinates(x, y, i);
-      // if the coordinate array is null, then the corresponding 
-      // corner is off the board and we don't deal with it.
-      // The later two conditions in the following if statement
-      // ensure that either the move is a forward move or the 
-      // current piece is a king:
-      if((coordinates != null) &&
-	 ((myGrid[x][y] > 1) || (i < 2))) {
-	// if the corner is empty (and we're not looking 
-	// for just jumps), then this is a possible move
-	// so we add it to the vector of moves:
-	if((myGrid[coordinates[0]][coordinates[1]] == 0) && (! jumpsOnly)) {
-	  toFill.addElement(coordinates);
-	  // if the space is occupied by an opponent, see if we can jump it:
-	} else if(myGrid[coordinates[0]][coordinates[1]] < 0) {
-	  byte[] jumpLanding = getCornerCoordinates(coordinates[0], 
-						 coordinates[1], i);
-	  // if the space on the far side of the opponent's piece
-	  // is on the board and is unoccupied, then a jump 
-	  // is possible, so we add it to the vector of moves:
-	  if((jumpLanding != null) && 
-	     (myGrid[jumpLanding[0]][jumpLanding[1]] == 0)) {
-	    toFill.addElement(jumpLanding);
-	  }
-	}
-      }
-    } // end for loop
+    return((byte)getSquare(x, y));
   }
-  
+
 }
@@ -0,0 +1,120 @@
+package net.frog_parrot.net;
+
+import java.io.*;
+import java.util.Vector;
+import javax.microedition.rms.*;
+
+/**
+ * This class stores the names and mobile numbers that were
+ * last read from the addressbook, so that the next time the
+ * contact list is opened they can be read back in one record
+ * instead of reading every field of every contact through
+ * the PIM API.  The record also holds the number of items
+ * in the addressbook and a hash of their revision dates
+ * (see PIMRunner), which change if a contact is added,
+ * removed or edited, so a stale snapshot isn't used.
+ *
+ * This is a utility class that does not contain instance data,
+ * so to simplify acess all of the methods are static.
+ */
+public class ContactCache {
+
+  //---------------------------------------------------------
+  //   static fields
+
+  /**
+   * The name of the datastore.
+   */
+  public static final String STORE = "CheckersContacts";
+
+  //---------------------------------------------------------
+  //   business methods
+
+  /**
+   * This hands the stored contacts to the runner if the
+   * snapshot was taken of the addressbook as it is now.
+   * @param itemCount the number of items in the addressbook.
+   * @param hash the hash of the items' revision dates.
+   * @return whether the contacts were loaded.
+   */
+  static boolean load(int itemCount, int hash, PIMRunner runner) {
+    boolean retVal = false;
+    RecordStore store = null;
+    try {
+      // if the record store does not yet exist, we
+      // send "false" so it won't bother to create it.
+      store = RecordStore.openRecordStore(STORE, false);
+      if((store != null) && (store.getNumRecords() > 0)) {
+        // the one record holds the item count and hash,
+        // then the number of contacts and the contacts:
+        DataInputStream dis = new DataInputStream(
+            new ByteArrayInputStream(store.getRecord(1)));
+        if((dis.readInt() == itemCount) && (dis.readInt() == hash)) {
+          // decode the whole record before handing over
+          // any contacts, in case it's damaged:
+          String[] names = new String[dis.readInt()];
+          String[] phoneNumbers = new String[names.length];
+          for(int i = 0; i < names.length; i++) {
+            names[i] = dis.readUTF();
+            phoneNumbers[i] = dis.readUTF();
+          }
+          for(int i = 0; i < names.length; i++) {
+            runner.addContact(names[i], phoneNumbers[i]);
+          }
+          retVal = true;
+        }
+      }
+    } catch(Exception e) {
+      // the cache only saves time, so if data retrieval
+      // fails, the addressbook is just read as usual.
+    } finally {
+      try {
+        store.closeRecordStore();
+      } catch(Exception e) {
+        // if the record store is open this shouldn't throw.
+      }
+    }
+    return(retVal);
+  }
+
+  /**
+   * This replaces the stored snapshot.
+   * @param itemCount the number of items in the addressbook.
+   * @param hash the hash of the items' revision dates.
+   */
+  static void save(int itemCount, int hash, Vector names,
+                   Vector phoneNumbers) {
+    RecordStore store = null;
+    try {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      DataOutputStream dos = new DataOutputStream(baos);
+      dos.writeInt(itemCount);
+      dos.writeInt(hash);
+      dos.writeInt(names.size());
+      for(int i = 0; i < names.size(); i++) {
+        dos.writeUTF((String)(names.elementAt(i)));
+        dos.writeUTF((String)(phoneNumbers.elementAt(i)));
+      }
+      dos.close();
+      byte[] record = baos.toByteArray();
+      // if the record store does not yet exist, the second
+      // arg "true" tells it to create.
+      store = RecordStore.openRecordStore(STORE, true);
+      if(store.getNumRecords() > 0) {
+        store.setRecord(1, record, 0, record.length);
+      } else {
+        store.addRecord(record, 0, record.length);
+      }
+    } catch(Exception e) {
+      // the cache only saves time, so if data storage
+      // fails, we just skip it and move on.
+    } finally {
+      try {
+        store.closeRecordStore();
+      } catch(Exception e) {
+        // if the record store is open this shouldn't throw.
+      }
+    }
+  }
+
+}
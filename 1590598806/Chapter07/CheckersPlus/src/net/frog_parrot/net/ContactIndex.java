@@ -0,0 +1,140 @@
+package net.frog_parrot.net;
+
+/**
+ * This class finds contacts by the beginning of their
+ * names.  The names are added in the order they appear in
+ * the contact list, then sorted once (case-insensitively),
+ * so that each search is a binary search that takes about
+ * log2(n) comparisons, no matter how many contacts
+ * there are.
+ */
+public class ContactIndex {
+
+  //--------------------------------------------------------
+  //  instance fields
+
+  /**
+   * The names in lower case (sorted once sort is called).
+   */
+  private String[] myKeys;
+
+  /**
+   * The place of each name in the contact list.
+   */
+  private int[] myPositions;
+
+  /**
+   * The number of names.
+   */
+  private int myCount;
+
+  //--------------------------------------------------------
+  //  initialization
+
+  /**
+   * Start an empty index.
+   * @param capacity the number of names to make room for
+   *        (the index grows if more are added).
+   */
+  public ContactIndex(int capacity) {
+    myKeys = new String[capacity];
+    myPositions = new int[capacity];
+  }
+
+  /**
+   * Add the next name of the contact list.
+   */
+  public void add(String name) {
+    if(myCount == myKeys.length) {
+      String[] keys = new String[2*myCount + 1];
+      System.arraycopy(myKeys, 0, keys, 0, myCount);
+      myKeys = keys;
+      int[] positions = new int[keys.length];
+      System.arraycopy(myPositions, 0, positions, 0, myCount);
+      myPositions = positions;
+    }
+    myKeys[myCount] = name.toLowerCase();
+    myPositions[myCount] = myCount;
+    myCount++;
+  }
+
+  /**
+   * Sort the names so that they can be searched.
+   * (This is a merge sort, so contacts with the same name
+   * stay in the order of the contact list.)
+   */
+  public void sort() {
+    String[] keys = new String[myCount];
+    int[] positions = new int[myCount];
+    sort(0, myCount, keys, positions);
+  }
+
+  /**
+   * Sort one part of the names.
+   * @param keys space to merge the keys in.
+   * @param positions space to merge the positions in.
+   */
+  private void sort(int start, int end, String[] keys, int[] positions) {
+    if(end - start < 2) {
+      return;
+    }
+    int middle = (start + end) >>> 1;
+    sort(start, middle, keys, positions);
+    sort(middle, end, keys, positions);
+    // merge the two sorted halves:
+    int i = start;
+    int j = middle;
+    int k = start;
+    while(k < end) {
+      if((j == end)
+         || ((i < middle) && (myKeys[i].compareTo(myKeys[j]) <= 0))) {
+        keys[k] = myKeys[i];
+        positions[k] = myPositions[i];
+        i++;
+      } else {
+        keys[k] = myKeys[j];
+        positions[k] = myPositions[j];
+        j++;
+      }
+      k++;
+    }
+    System.arraycopy(keys, start, myKeys, start, end - start);
+    System.arraycopy(positions, start, myPositions, start, end - start);
+  }
+
+  //--------------------------------------------------------
+  //  search
+
+  /**
+   * @return the number of names.
+   */
+  public int getCount() {
+    return(myCount);
+  }
+
+  /**
+   * Find the first contact (in alphabetical order) whose
+   * name starts with the given text.
+   * @return the contact's place in the contact list or
+   *         -1 if no name starts with the text.
+   */
+  public int find(String prefix) {
+    prefix = prefix.toLowerCase();
+    // find the first name that isn't before the prefix:
+    int low = 0;
+    int high = myCount;
+    while(low < high) {
+      int middle = (low + high) >>> 1;
+      if(myKeys[middle].compareTo(prefix) < 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    if((low < myCount) && myKeys[low].startsWith(prefix)) {
+      return(myPositions[low]);
+    }
+    return(-1);
+  }
+
+}
@@ -1,7 +1,5 @@
 package net.frog_parrot.net;
 
-import java.util.Vector;
-
 /**
  * This is a small interface to provide a callback method 
  * for the contact list loading code.
@@ -11,10 +9,17 @@ import java.util.Vector;
 public interface ContactListener {
 
   /**
-   * Set the contact list.
+   * Add the next batch of contacts to the contact list.
+   * (The arrays are reused for the next batch.)
+   * @param count the number of contacts in the batch.
    */
-  public void setContactList(Vector names, Vector phoneNumbers);
-
-}
+  public void addContacts(String[] names, String[] phoneNumbers,
+                          int count);
 
+  /**
+   * Set the index of the contacts' names, once all of the
+   * contacts have been added.
+   */
+  public void setContactIndex(ContactIndex index);
 
+}
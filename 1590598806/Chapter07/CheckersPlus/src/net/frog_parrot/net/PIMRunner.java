@@ -7,15 +7,82 @@ import javax.microedition.pim.*;
 
 /**
  * A simple PIM utility to load a list of contacts.
+ * The contacts are handed to the listener in small batches
+ * as they're read, so the user can see the beginning of the 
+ * list while the rest is still loading.  Then the listener 
+ * gets an index for finding contacts by name.
+ *
+ * The contacts are also saved in a ContactCache.  If the
+ * addressbook hasn't changed since then (the same number of
+ * items with the same revision dates or identifiers), the
+ * next run reads the contacts back from the cache instead of 
+ * reading every contact's fields through the PIM API.
  */
 public class PIMRunner extends Thread {
 
+  /**
+   * The number of contacts in each batch.
+   */
+  public static final int BATCH_SIZE = 16;
+
   /**
    * A callback listener for this 
    * class to call when the PIM list is filled.
    */
   ContactListener myListener;
 
+  /**
+   * The names of the current batch.
+   */
+  String[] myNames = new String[BATCH_SIZE];
+
+  /**
+   * The phone numbers of the current batch.
+   */
+  String[] myPhoneNumbers = new String[BATCH_SIZE];
+
+  /**
+   * The number of contacts in the current batch.
+   */
+  int myBatchCount;
+
+  /**
+   * The index of the names of all the contacts.
+   */
+  ContactIndex myIndex = new ContactIndex(BATCH_SIZE);
+
+  /**
+   * All of the names, to save in the cache (or null
+   * if they don't need to be saved).
+   */
+  Vector myAllNames;
+
+  /**
+   * All of the phone numbers, to save in the cache.
+   */
+  Vector myAllPhoneNumbers;
+
+  /**
+   * The number of items in the addressbook.
+   */
+  int myItemCount;
+
+  /**
+   * The hash of the identifiers of the items in the 
+   * addressbook.
+   */
+  int myHash;
+
+  /**
+   * Whether the contacts were read from the cache.
+   */
+  boolean myIsCached;
+
+  /**
+   * The number of milliseconds it took to load the contacts.
+   */
+  long myLoadTime;
+
   /**
    * The list of name fields to check to try to find the name
    * to display to the user.
@@ -35,23 +102,98 @@ public class PIMRunner extends Thread {
     myListener = listener;
   }
 
+  /**
+   * @return whether the contacts were read from the cache.
+   */
+  public boolean isCached() {
+    return(myIsCached);
+  }
+
+  /**
+   * @return the number of milliseconds it took to load the 
+   *         contacts.
+   */
+  public long getLoadTime() {
+    return(myLoadTime);
+  }
+
   /**
    * The method that fills the data fields.
    */
   public void run() {
+    long startTime = System.currentTimeMillis();
     ContactList addressbook = null;
-    Contact contact = null;
-    Enumeration items = null;
-    Vector names = new Vector();
-    Vector phoneNumbers = new Vector();
     try {
       addressbook = (ContactList)(PIM.getInstance(
           ).openPIMList(PIM.CONTACT_LIST, PIM.READ_ONLY));
-      items = addressbook.items();
+      // the snapshot can only be checked if the handset
+      // gives the items identifiers or revision dates:
+      if(addressbook.isSupportedField(Contact.UID)
+         || addressbook.isSupportedField(Contact.REVISION)) {
+        computeHash(addressbook);
+        myIsCached = ContactCache.load(myItemCount, myHash, this);
+        if(! myIsCached) {
+          myAllNames = new Vector();
+          myAllPhoneNumbers = new Vector();
+        }
+      }
+      if(! myIsCached) {
+        readContacts(addressbook);
+      }
     } catch(Exception e) {
-      // if the addressbook can't be opened, then we're done.
-      myListener.setContactList(names, phoneNumbers);
+      // if the addressbook can't be opened (or read), then
+      // we're done, and what was read isn't worth saving.
+      myAllNames = null;
     }
+    sendBatch();
+    if(addressbook != null) {
+      try {
+        addressbook.close();
+      } catch(Exception e) {
+      }
+    }
+    if(myAllNames != null) {
+      ContactCache.save(myItemCount, myHash, myAllNames, 
+                        myAllPhoneNumbers);
+      myAllNames = null;
+      myAllPhoneNumbers = null;
+    }
+    myIndex.sort();
+    myLoadTime = System.currentTimeMillis() - startTime;
+    myListener.setContactIndex(myIndex);
+  }
+
+  /**
+   * Finds the number of items in the addressbook and the
+   * hash of their revision dates, or of their identifiers if 
+   * the handset doesn't keep revision dates (without reading 
+   * any of the other fields).  A revision date changes when
+   * a contact is edited, so it's the better check.
+   */
+  private void computeHash(ContactList addressbook) throws PIMException {
+    boolean hasRevision = addressbook.isSupportedField(Contact.REVISION);
+    Enumeration items = addressbook.items();
+    while(items.hasMoreElements()) {
+      Contact contact = (Contact)(items.nextElement());
+      myItemCount++;
+      if(hasRevision) {
+        if(contact.countValues(Contact.REVISION) > 0) {
+          long revision = contact.getDate(Contact.REVISION, 0);
+          myHash = 31*myHash + (int)(revision ^ (revision >>> 32));
+        }
+      } else if(contact.countValues(Contact.UID) > 0) {
+        myHash = 31*myHash + contact.getString(Contact.UID, 0).hashCode();
+      }
+    }
+  }
+
+  /**
+   * Reads the names and mobile numbers of the contacts 
+   * from the addressbook.
+   */
+  private void readContacts(ContactList addressbook) throws PIMException {
+    Contact contact = null;
+    Enumeration items = addressbook.items();
     // Now load the contents of the addressbook:
     while(items.hasMoreElements()) {
       try {
@@ -90,8 +232,7 @@ public class PIMRunner extends Thread {
               // logically each type of name field will have 
               // only one entry, so we take the first one, 
               // of index 0:
-              names.addElement(contact.getString(fieldIndex, 0));
-              phoneNumbers.addElement(phoneNum);
+              addContact(contact.getString(fieldIndex, 0), phoneNum);
             }
           }
         }
@@ -101,7 +242,34 @@ public class PIMRunner extends Thread {
         // we skip it and move on.
       }
     } // while(items.hasMoreElements())
-    myListener.setContactList(names, phoneNumbers);
+  }
+
+  /**
+   * Add one contact to the current batch (and send the
+   * batch if it's full).
+   */
+  void addContact(String name, String phoneNum) {
+    myIndex.add(name);
+    if(myAllNames != null) {
+      myAllNames.addElement(name);
+      myAllPhoneNumbers.addElement(phoneNum);
+    }
+    myNames[myBatchCount] = name;
+    myPhoneNumbers[myBatchCount] = phoneNum;
+    myBatchCount++;
+    if(myBatchCount == BATCH_SIZE) {
+      sendBatch();
+    }
+  }
+
+  /**
+   * Hand the current batch (if any) to the listener.
+   */
+  private void sendBatch() {
+    if(myBatchCount > 0) {
+      myListener.addContacts(myNames, myPhoneNumbers, myBatchCount);
+      myBatchCount = 0;
+    }
   }
 
 }
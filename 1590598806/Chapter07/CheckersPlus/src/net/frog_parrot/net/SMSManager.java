@@ -8,6 +8,15 @@ import net.frog_parrot.checkers.MoveManager;
  * This class keeps track of transferring local and 
  * remote moves from one player to the other..
  *
+ * The messages keep the game's original format (a flag 
+ * byte, four bytes per hop, and the taunt in UTF-8), 
+ * rather than the frames of the Checkers project's
+ * SMSManager (see FrameBuilder and TauntCodec there).  
+ * That's on purpose:  this version only plays against
+ * other copies of itself, and its MoveManager has none of
+ * the turn checks and board resyncs that those frames
+ * carry.
+ *
  * @author Carol Hamer
  */
 public class SMSManager {